@@ -1,7 +1,6 @@
 package winsome_DB;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import winsome_communication.WinJsonRegistry;
 import winsome_communication.CommentRepr;
 
 import java.io.File;
@@ -52,14 +51,11 @@ public class Comment_DB extends User_interaction {
 
 	// JSON Methods
 	public static Comment_DB JSON_read(String filePath) throws IOException {
-		ObjectMapper mapper = new ObjectMapper();
-		return mapper.readValue(new File(filePath), Comment_DB.class);
+		return WinJsonRegistry.reader_for(Comment_DB.class).readValue(new File(filePath));
 	}
 	@Override
 	public void JSON_write(String filePath) throws IOException {
-		ObjectMapper mapper = new ObjectMapper();
-		mapper.enable(SerializationFeature.INDENT_OUTPUT);
-		mapper.writeValue(new File(filePath), this);
+		WinJsonRegistry.pretty_writer_for(getClass()).writeValue(new File(filePath), this);
 	}
 
 	// Getters
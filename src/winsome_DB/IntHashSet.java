@@ -0,0 +1,138 @@
+package winsome_DB;
+
+import java.util.Arrays;
+
+/**
+ * This class is a set of non-negative ints (the ids of the users), without boxing.
+ * <p></p>
+ * It is an open-addressing hash table with linear probing: the values are stored as value + 1,
+ * so a 0 slot is empty and a new table needs no initialization; the removals shift back the following values
+ * of the same cluster, so there are no tombstones.
+ * <p></p>
+ * This class is not thread safe, the set of a user is guarded by the lock of the user (see WinsomeDB_Locks).
+ * This class is available only to the Winsome_Database
+ */
+class IntHashSet {
+	// class constants
+	private static final int MIN_CAPACITY = 4;
+
+	// member variables
+	private int[] slots;
+	private int size = 0;
+
+	// constructors
+	IntHashSet() {
+		this.slots = new int[MIN_CAPACITY];
+	}
+
+	private static int index(int value, int mask) {
+		int h = value * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	// methods
+
+	/**
+	 * @return true if the value has been added, false if it was already in the set
+	 */
+	boolean add(int value) {
+		if (value < 0)
+			throw new IllegalArgumentException("Negative value: " + value);
+		if ((this.size + 1) > this.slots.length * 3 / 4)
+			rehash(this.slots.length << 1);
+
+		int stored = value + 1;
+		int mask = this.slots.length - 1;
+		for (int i = index(value, mask); ; i = (i + 1) & mask) {
+			if (this.slots[i] == stored)
+				return false;
+			if (this.slots[i] == 0) {
+				this.slots[i] = stored;
+				this.size++;
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * @return true if the value is in the set
+	 */
+	boolean contains(int value) {
+		if (value < 0)
+			return false;
+		int[] slots = this.slots;
+		int stored = value + 1;
+		int mask = slots.length - 1;
+		for (int i = index(value, mask), probes = 0; probes < slots.length; i = (i + 1) & mask, probes++) {
+			if (slots[i] == stored)
+				return true;
+			if (slots[i] == 0)
+				return false;
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if the value has been removed, false if it was not in the set
+	 */
+	boolean remove(int value) {
+		if (value < 0)
+			return false;
+		int stored = value + 1;
+		int mask = this.slots.length - 1;
+		int i = index(value, mask);
+		while (this.slots[i] != stored) {
+			if (this.slots[i] == 0)
+				return false;
+			i = (i + 1) & mask;
+		}
+
+		// shift back the following values of the cluster that would not be found anymore
+		int hole = i;
+		for (int j = (i + 1) & mask; this.slots[j] != 0; j = (j + 1) & mask) {
+			int home = index(this.slots[j] - 1, mask);
+			if (((j - home) & mask) >= ((j - hole) & mask)) {
+				this.slots[hole] = this.slots[j];
+				hole = j;
+			}
+		}
+		this.slots[hole] = 0;
+		this.size--;
+		return true;
+	}
+
+	int size() {
+		return this.size;
+	}
+
+	boolean is_empty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * @return the values of the set (in no particular order)
+	 */
+	int[] to_array() {
+		int[] slots = this.slots;
+		int[] ret = new int[slots.length];
+		int n = 0;
+		for (int slot : slots)
+			if (slot != 0 && n < ret.length)
+				ret[n++] = slot - 1;
+		return Arrays.copyOf(ret, n);
+	}
+
+	private void rehash(int capacity) {
+		int[] old = this.slots;
+		this.slots = new int[capacity];
+		this.size = 0;
+		for (int slot : old)
+			if (slot != 0)
+				add(slot - 1);
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(to_array());
+	}
+}
@@ -0,0 +1,127 @@
+package winsome_DB;
+
+import java.util.Arrays;
+
+/**
+ * This class is a sorted set of non-negative longs (the ids of the posts of a user), without boxing.
+ * <p></p>
+ * The values are kept in ascending order in an array: the lookups are binary searches, and the newest posts
+ * (the highest ids) are read from the end of the array without sorting.
+ * The ids of the posts are assigned in increasing order, so the new posts of a user are appended at the end;
+ * only a rewin of an older post or a removal shifts the following values.
+ * <p></p>
+ * This class is not thread safe, the set of a user is guarded by the lock of the user (see WinsomeDB_Locks).
+ * This class is available only to the Winsome_Database
+ */
+class LongSortedSet {
+	// class constants
+	private static final int MIN_CAPACITY = 4;
+
+	// member variables
+	private long[] values = new long[MIN_CAPACITY];
+	private int size = 0;
+
+	// methods
+
+	/**
+	 * @return true if the value has been added, false if it was already in the set
+	 */
+	boolean add(long value) {
+		if (value < 0)
+			throw new IllegalArgumentException("Negative value: " + value);
+
+		// (the new posts have the highest ids, they are appended)
+		int i = this.size > 0 && this.values[this.size - 1] < value ? this.size : Arrays.binarySearch(this.values, 0, this.size, value);
+		if (i >= 0 && i < this.size)
+			return false;
+		i = i < 0 ? -i - 1 : i;
+
+		if (this.size == this.values.length)
+			this.values = Arrays.copyOf(this.values, this.values.length << 1);
+		System.arraycopy(this.values, i, this.values, i + 1, this.size - i);
+		this.values[i] = value;
+		this.size++;
+		return true;
+	}
+
+	/**
+	 * @return true if the value is in the set
+	 */
+	boolean contains(long value) {
+		return value >= 0 && Arrays.binarySearch(this.values, 0, this.size, value) >= 0;
+	}
+
+	/**
+	 * @return true if the value has been removed, false if it was not in the set
+	 */
+	boolean remove(long value) {
+		int i = value >= 0 ? Arrays.binarySearch(this.values, 0, this.size, value) : -1;
+		if (i < 0)
+			return false;
+		System.arraycopy(this.values, i + 1, this.values, i, this.size - i - 1);
+		this.size--;
+		return true;
+	}
+
+	/**
+	 * @return the lowest value of the set (the set must not be empty)
+	 */
+	long first() {
+		if (this.size == 0)
+			throw new IllegalStateException("Empty set");
+		return this.values[0];
+	}
+
+	void clear() {
+		this.size = 0;
+	}
+
+	int size() {
+		return this.size;
+	}
+
+	boolean is_empty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * @return the values of the set, in ascending order
+	 */
+	long[] to_array() {
+		return Arrays.copyOf(this.values, this.size);
+	}
+
+	/**
+	 * @return the number of values lower than the given one (the position of the first value not lower)
+	 */
+	int count_below(long value) {
+		int i = Arrays.binarySearch(this.values, 0, this.size, value);
+		return i < 0 ? -i - 1 : i;
+	}
+
+	/**
+	 * @return the value at the given position, in ascending order
+	 */
+	long get(int index) {
+		if (index < 0 || index >= this.size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + this.size);
+		return this.values[index];
+	}
+
+	/**
+	 * @return the highest values lower than before (at most limit), in descending order
+	 */
+	long[] newest(long before, int limit) {
+		int end = count_below(before);
+		int n = Math.max(0, Math.min(limit, end));
+		long[] ret = new long[n];
+		for (int i = 0; i < n; i++)
+			ret[i] = this.values[end - 1 - i];
+		return ret;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(to_array());
+	}
+}
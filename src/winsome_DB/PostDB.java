@@ -1,16 +1,17 @@
 package winsome_DB;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import winsome_communication.CommentRepr;
 import winsome_communication.PostReprDetailed;
 import winsome_communication.PostReprSimple;
+import winsome_communication.WinJsonRegistry;
 import winsome_server.*;
 
 import java.io.File;
 import java.io.IOException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 
 /**
@@ -25,26 +26,38 @@ import java.util.List;
  * 7. The votes of the post.
  * 8. The number of times the post was rewarded.
  * 9. The last time the post was rewarded.
+ * 10. The ids of the users that rewined the post (not saved, rebuilt when the database is loaded).
+ * 11. The number of votes and comments already rewarded (not saved, rebuilt from the last time the post was rewarded).
+ * 12. The number of upvotes and downvotes and the number of comments of every user (not saved, counted when
+ *     the votes and the comments are read from the JSON file), so they are never counted by scanning the lists.
+ * <p>
+ * The votes and the comments are only appended, so the ones to reward are the ones after the rewarded ones.
  * <p>
  * This class is available only to the Winsome_Database.
  */
 public class PostDB extends User_interaction implements JSON_Serializable {
 
 	// Member variables
-	private String id;
+	private long id;
 	private String title;
 	private String text;
 	private ArrayList<Comment_DB> comments;
 	private ArrayList<RateDB> rates;
 	private int n_rewards;
 	private Timestamp time_last_reward;
+	private final IntHashSet rewinners = new IntHashSet();
+	private int rewarded_rates = 0;
+	private int rewarded_comments = 0;
+	private int upvotes = 0;
+	private int downvotes = 0;
+	private final HashMap<String, Integer> comments_of_user = new HashMap<>();
 
 	public static final int TITLE_MAX_LENGTH = 20;
 	public static final int CONTENT_MAX_LENGTH = 500;
 
 	// Constructors
 	// Default Constructor
-	public PostDB(String id, String author, String title, String text) {
+	public PostDB(long id, String author, String title, String text) {
 		/*
 		 * This constructor is used when we want to create a new post.
 		 *
@@ -94,18 +107,19 @@ public class PostDB extends User_interaction implements JSON_Serializable {
 
 	// JSON Methods
 	public static PostDB JSON_read(String filePath) throws IOException {
-		ObjectMapper mapper = new ObjectMapper();
-		return mapper.readValue(new File(filePath), PostDB.class);
+		return WinJsonRegistry.reader_for(PostDB.class).readValue(new File(filePath));
 	}
 	@Override
 	public void JSON_write(String filePath) throws IOException {
-		ObjectMapper mapper = new ObjectMapper();
-		mapper.enable(SerializationFeature.INDENT_OUTPUT);
-		mapper.writeValue(new File(filePath), this);
+		WinJsonRegistry.pretty_writer_for(getClass()).writeValue(new File(filePath), this);
 	}
 
 	// Getters
 	public String getId() {
+		return Long.toString(id);
+	}
+	@JsonIgnore
+	public long get_id() {
 		return id;
 	}
 	public String getTitle() {
@@ -126,10 +140,13 @@ public class PostDB extends User_interaction implements JSON_Serializable {
 	public int getN_rewards() {
 		return n_rewards;
 	}
+	IntHashSet rewinner_ids() {
+		return this.rewinners;
+	}
 	
 	// Setters
 	public void setId(String id) {
-		this.id = id;
+		this.id = WinsomeDB_Posts.parse_id(id);
 	}
 	public void setTitle(String title) {
 		this.title = title;
@@ -139,9 +156,20 @@ public class PostDB extends User_interaction implements JSON_Serializable {
 	}
 	public void setComments(ArrayList<Comment_DB> comments) {
 		this.comments = comments;
+		this.comments_of_user.clear();
+		for (Comment_DB comment : comments)
+			this.comments_of_user.merge(comment.getAuthor(), 1, Integer::sum);
 	}
 	public void setRates(ArrayList<RateDB> rates) {
 		this.rates = rates;
+		this.upvotes = 0;
+		this.downvotes = 0;
+		for (RateDB vote : rates) {
+			if (vote.getRate())
+				this.upvotes++;
+			else
+				this.downvotes++;
+		}
 	}
 	public void setTime_created(Timestamp time_created) {
 		this.time_created = time_created;
@@ -159,20 +187,54 @@ public class PostDB extends User_interaction implements JSON_Serializable {
 		 * This method is used to add a comment to the list of comments of this post.
 		 *
 		 * 1. Add the comment to the list of comments of this post.
+		 * 2. Count the comment of its author.
 		 */
 
 		// 1. Add the comment to the list of comments of this post.
 		this.comments.add(comment);
+
+		// 2. Count the comment of its author.
+		this.comments_of_user.merge(comment.getAuthor(), 1, Integer::sum);
 	}
 	public void addVote(RateDB vote) {
 		/*
 		 * This method is used to add a vote to the list of votes of this post.
 		 *
 		 * 1. Add the vote to the list of votes of this post.
+		 * 2. Count the vote.
 		 */
 
 		// 1. Add the vote to the list of votes of this post.
 		this.rates.add(vote);
+
+		// 2. Count the vote.
+		if (vote.getRate())
+			this.upvotes++;
+		else
+			this.downvotes++;
+	}
+	void add_rewinner(int user_id) {
+		this.rewinners.add(user_id);
+	}
+
+	// Removers
+	void remove_rewinner(int user_id) {
+		this.rewinners.remove(user_id);
+	}
+
+	/**
+	 * This method finds the votes and the comments already rewarded (those not newer than the last reward),
+	 * it must be called once the post has been read from the JSON file.
+	 * @return true if the post has votes or comments not rewarded yet
+	 */
+	boolean resolve_rewarded() {
+		this.rewarded_rates = 0;
+		while (this.rewarded_rates < this.rates.size() && !this.rates.get(this.rewarded_rates).getTime_created().after(this.time_last_reward))
+			this.rewarded_rates++;
+		this.rewarded_comments = 0;
+		while (this.rewarded_comments < this.comments.size() && !this.comments.get(this.rewarded_comments).getTime_created().after(this.time_last_reward))
+			this.rewarded_comments++;
+		return this.rewarded_rates < this.rates.size() || this.rewarded_comments < this.comments.size();
 	}
 	
 	// Representation
@@ -184,7 +246,7 @@ public class PostDB extends User_interaction implements JSON_Serializable {
 		 */
 
 		// 1. Return the Post_simple object.
-		return new PostReprSimple(this.title, this.text, this.author, this.id);
+		return new PostReprSimple(this.title, this.text, this.author, Long.toString(this.id));
 	}
 	public PostReprDetailed representation_detailed() {
 		/*
@@ -194,20 +256,12 @@ public class PostDB extends User_interaction implements JSON_Serializable {
 		 */
 
 		// 1. Return the Post_detailed object.
-		int upvotes = 0;
-		int downvotes = 0;
-		for (RateDB vote : this.rates) {
-			if (vote.getRate()) {
-				upvotes++;
-			} else {
-				downvotes++;
-			}
-		}
+		// (the votes are counted when they are added)
 		ArrayList<CommentRepr> comments = new ArrayList<>();
 		for (Comment_DB comment : this.comments) {
 			comments.add(comment.representation());
 		}
-		return new PostReprDetailed(this.title, this.text, this.author, this.id, upvotes, downvotes, comments);
+		return new PostReprDetailed(this.title, this.text, this.author, Long.toString(this.id), this.upvotes, this.downvotes, comments);
 	}
 
 	// Checkers
@@ -230,40 +284,93 @@ public class PostDB extends User_interaction implements JSON_Serializable {
 	}
 
 	// Other Methods
-	public List<WinsomeReward> calculate_rewards(double author_reward) {
-		/*
-		 * This method is used to calculate the reward of this post.
-		 *
-		 * 1. Get the list of votes and comments newer than the time_last_reward.
-		 * 2. Calculate the rewards of this post divided by the author and the curators.
-		 *  (the author gets 80% of the rewards and the curators get 20% of the rewards)
-		 * 3. Return the list of rewards.
-		 */
 
-		// 1. Get the list of votes and comments newer than the time_last_reward.
-		List<RateDB> votes = new ArrayList<>();
-		for (RateDB vote : this.rates) {
-			if (vote.getTime_created().after(this.time_last_reward)) {
-				votes.add(vote);
+	/**
+	 * The votes and the comments of a post not rewarded yet, copied under the lock of the post (see snapshot_rewards):
+	 * the rewards are calculated from it without holding any lock.
+	 */
+	static final class RewardSnapshot {
+		final long post_id;
+		final String author;
+		final int n_rewards;
+		final String[] voters;
+		final boolean[] votes;
+		final String[] commenters;
+		final int[] comments_of_commenter; // the comments of each commenter on the post, when the snapshot was taken
+		final int[] rewinners;
+
+		private RewardSnapshot(PostDB post, List<RateDB> votes, List<Comment_DB> comments) {
+			this.post_id = post.id;
+			this.author = post.author;
+			this.n_rewards = post.n_rewards;
+			this.voters = new String[votes.size()];
+			this.votes = new boolean[votes.size()];
+			for (int i = 0; i < votes.size(); i++) {
+				this.voters[i] = votes.get(i).getAuthor();
+				this.votes[i] = votes.get(i).getRate();
 			}
-		}
-		List<Comment_DB> comments = new ArrayList<>();
-		for (Comment_DB comment : this.comments) {
-			if (comment.getTime_created().after(this.time_last_reward)) {
-				comments.add(comment);
+			this.commenters = new String[comments.size()];
+			this.comments_of_commenter = new int[comments.size()];
+			for (int i = 0; i < comments.size(); i++) {
+				this.commenters[i] = comments.get(i).getAuthor();
+				this.comments_of_commenter[i] = post.get_ncomment_of_user(this.commenters[i]);
 			}
+			this.rewinners = post.rewinners.to_array();
 		}
+	}
+
+	/**
+	 * This method takes the votes and the comments added after the last reward and marks them as rewarded
+	 * (the caller holds the write lock of the post).
+	 * @return the snapshot to calculate the rewards from, null if there is nothing to reward
+	 */
+	RewardSnapshot snapshot_rewards() {
+		/*
+		 * 1. Get the list of votes and comments added after the last reward.
+		 * 2. Mark them as rewarded.
+		 * 3. Return a copy of them.
+		 */
+
+		// 1. Get the list of votes and comments added after the last reward.
+		// (they are the ones after the rewarded ones, the older ones are not visited)
+		List<RateDB> votes = this.rates.subList(this.rewarded_rates, this.rates.size());
+		List<Comment_DB> comments = this.comments.subList(this.rewarded_comments, this.comments.size());
 
 		// If there are no votes or comments, return null.
 		if (votes.size() == 0 && comments.size() == 0) {
 			return null;
 		}
 
-		// Otherwise, calculate the rewards.
+		// 2. Mark them as rewarded.
+		// (the time of the last reward is saved, the rewarded votes and comments are found from it when the post is loaded)
 		this.time_last_reward = new Timestamp(System.currentTimeMillis());
 		this.n_rewards++;
 
-		// 2. Calculate the rewards of this post divided by the author and the curators.
+		// 3. Return a copy of them.
+		RewardSnapshot snapshot = new RewardSnapshot(this, votes, comments);
+		this.rewarded_rates = this.rates.size();
+		this.rewarded_comments = this.comments.size();
+		return snapshot;
+	}
+
+	public List<WinsomeReward> calculate_rewards(double author_reward) {
+		/*
+		 * This method is used to calculate the reward of this post (the votes and the comments are marked as rewarded).
+		 */
+		RewardSnapshot snapshot = snapshot_rewards();
+		return snapshot == null ? null : calculate_rewards(snapshot, author_reward);
+	}
+
+	static List<WinsomeReward> calculate_rewards(RewardSnapshot snapshot, double author_reward) {
+		/*
+		 * This method is used to calculate the reward of a post from its snapshot (no lock is needed).
+		 *
+		 * 1. Calculate the rewards of this post divided by the author and the curators.
+		 *  (the author gets 80% of the rewards and the curators get 20% of the rewards)
+		 * 2. Return the list of rewards.
+		 */
+
+		// 1. Calculate the rewards of this post divided by the author and the curators.
 		//    (the author gets 80% of the rewards and the curators get 20% of the rewards)
 		// Only positive votes and comments are rewarded.
 		// The rewards are calculated as follows:
@@ -280,29 +387,29 @@ public class PostDB extends User_interaction implements JSON_Serializable {
 		// Calculate the total reward.
 		double total_reward = 0;
 		List<WinsomeReward> rewards = new ArrayList<>();
-		rewards.add(new WinsomeReward(0, this.author)); // The author is the first reward.
+		rewards.add(new WinsomeReward(0, snapshot.author)); // The author is the first reward.
 
 		// Calculate the reward for the votes.
 		double sum_votes = 0;
-		for (RateDB vote : votes) {
-			if (vote.getRate()) {
+		for (int i = 0; i < snapshot.votes.length; i++) {
+			if (snapshot.votes[i]) {
 				sum_votes++;
-				rewards.add(new WinsomeReward(1, vote.getAuthor()));
+				rewards.add(new WinsomeReward(1, snapshot.voters[i]));
 			} else {
 				sum_votes--;
 			}
 		}
-		total_reward += Math.log(Math.max(0, sum_votes) + 1) / this.n_rewards;
+		total_reward += Math.log(Math.max(0, sum_votes) + 1) / snapshot.n_rewards;
 
 		// Calculate the reward for the comments.
 		double sum_comments = 0;
 		int cp;
-		for (Comment_DB comment : comments) {
-			cp = get_ncomment_of_user(comment.getAuthor());
+		for (int i = 0; i < snapshot.commenters.length; i++) {
+			cp = snapshot.comments_of_commenter[i];
 			sum_comments += 2 / (1 + Math.exp(-cp + 1));
-			rewards.add(new WinsomeReward(cp, comment.getAuthor()));
+			rewards.add(new WinsomeReward(cp, snapshot.commenters[i]));
 		}
-		total_reward += Math.log(sum_comments + 1) / this.n_rewards;
+		total_reward += Math.log(sum_comments + 1) / snapshot.n_rewards;
 
 		// Calculate the rewards for the author and the curators.
 		double reward_author = total_reward * author_reward;
@@ -346,30 +453,18 @@ public class PostDB extends User_interaction implements JSON_Serializable {
 		}
 
 		// Debug
-		System.out.printf("Rewards for post %s : %s\n", this.id, rewards);
-		
+		System.out.printf("Rewards for post %s : %s\n", snapshot.post_id, rewards);
+
+		// 2. Return the list of rewards.
 		return rewards;
 	}
 
 	private int get_ncomment_of_user(String username) {
 		/*
 		 * This method is used to get the number of comments of a user on this post.
-		 *
-		 * 1. Loop through the list of comments.
-		 * 2. If the user has commented on this post, increase the counter.
-		 * 3. Return the counter.
+		 * (the comments are counted when they are added, the list is not scanned)
 		 */
-
-		// 1. Loop through the list of comments.
-		int counter = 0;
-		for (Comment_DB comment : this.comments) {
-			// 2. If the user has commented on this post, increase the counter.
-			if (comment.getAuthor().equals(username)) {
-				counter++;
-			}
-		}
-		// 3. Return the counter.
-		return counter;
+		return this.comments_of_user.getOrDefault(username, 0);
 	}
 
 	@Override
@@ -1,7 +1,7 @@
 package winsome_DB;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+
+import winsome_communication.WinJsonRegistry;
 
 import java.io.File;
 import java.io.IOException;
@@ -49,16 +49,13 @@ public class RateDB extends User_interaction {
 	}
 	@Override
 	public void JSON_write(String filePath) throws IOException {
-		ObjectMapper mapper = new ObjectMapper();
-		mapper.enable(SerializationFeature.INDENT_OUTPUT);
-		mapper.writeValue(new File(filePath), this);
+		WinJsonRegistry.pretty_writer_for(getClass()).writeValue(new File(filePath), this);
 	}
 	
 	
 	// JSON Methods
 	public static RateDB JSON_read(String filePath) throws IOException {
-		ObjectMapper mapper = new ObjectMapper();
-		return mapper.readValue(new File(filePath), RateDB.class);
+		return WinJsonRegistry.reader_for(RateDB.class).readValue(new File(filePath));
 	}
 
 	// Getters
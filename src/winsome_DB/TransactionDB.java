@@ -1,7 +1,6 @@
 package winsome_DB;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import winsome_communication.WinJsonRegistry;
 import winsome_communication.TransactionRepr;
 
 import java.io.File;
@@ -47,14 +46,11 @@ public class TransactionDB implements JSON_Serializable {
 
 	// JSON Methods
 	public static TransactionDB JSON_read(String filePath) throws IOException {
-		ObjectMapper mapper = new ObjectMapper();
-		return mapper.readValue(new File(filePath), TransactionDB.class);
+		return WinJsonRegistry.reader_for(TransactionDB.class).readValue(new File(filePath));
 	}
 	@Override
 	public void JSON_write(String filePath) throws IOException {
-		ObjectMapper mapper = new ObjectMapper();
-		mapper.enable(SerializationFeature.INDENT_OUTPUT);
-		mapper.writeValue(new File(filePath), this);
+		WinJsonRegistry.pretty_writer_for(getClass()).writeValue(new File(filePath), this);
 	}
 
 	// Getters
@@ -1,14 +1,13 @@
 package winsome_DB;
 
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import winsome_communication.UserRepr;
+import winsome_communication.WinJsonRegistry;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.HashSet;
 
 /**
  * This class represents a user in the database.
@@ -21,6 +20,11 @@ import java.util.HashSet;
  * 6. The usernames that the user is Following.
  * 6. The Wallet of the user.
  * <p></p>
+ * Inside the database a user is identified by its id, a dense int assigned by WinsomeDB_Users (not saved,
+ * it is assigned again when the users are loaded): the posts are kept as a sorted set of post ids and the followers
+ * and the following as sets of user ids, the usernames are used only in the JSON file.
+ * Every user also has its materialized feed (see WinsomeDB_Timeline), that is not saved.
+ * <p></p>
  * This class is available only to the Winsome_Database
  */
 public class UserDB implements JSON_Serializable {
@@ -29,9 +33,15 @@ public class UserDB implements JSON_Serializable {
 	private String password;
 	private String[] tags;
 	private WalletDB wallet;
-	private HashSet<String> posts;
-	private HashSet<String> following;
-	private HashSet<String> followers;
+	private int id = -1;
+	private WinsomeDB_Users directory = null;
+	private LongSortedSet posts;
+	private IntHashSet following;
+	private IntHashSet followers;
+	private final WinsomeDB_Timeline timeline = new WinsomeDB_Timeline();
+	private volatile boolean celebrity = false;
+	private String[] pending_following = null;
+	private String[] pending_followers = null;
 
 	// Constructors
 
@@ -62,32 +72,64 @@ public class UserDB implements JSON_Serializable {
 		this.wallet = new WalletDB(username);
 
 		// 5. Create a new list of posts for this user.
-		this.posts = new HashSet<>();
+		this.posts = new LongSortedSet();
 
 		// 6. Create a new list of following for this user.
-		this.following = new HashSet<>();
+		this.following = new IntHashSet();
 
 		// 7. Create a new list of followers for this user.
-		this.followers = new HashSet<>();
+		this.followers = new IntHashSet();
 	}
 
 	// Jackson constructor
 	public UserDB() {
 		/*
 		 * This constructor is used by Jackson when it reads a JSON file.
+		 * (the followers and the following are resolved to ids by resolve, when every user has an id)
+		 */
+		this.posts = new LongSortedSet();
+		this.following = new IntHashSet();
+		this.followers = new IntHashSet();
+	}
+
+	void link(int id, WinsomeDB_Users directory) {
+		/*
+		 * This method is used to give an id to the user, once it is in the users' collection
+		 * (the users' collection is used to get the usernames of the ids).
+		 */
+		this.id = id;
+		this.directory = directory;
+	}
+
+	void resolve() {
+		/*
+		 * This method is used to resolve the followers and the following read from the JSON file to user ids,
+		 * after every user has been linked (the users that do not exist anymore are dropped).
 		 */
+		if (this.pending_following != null)
+			for (String username : this.pending_following) {
+				UserDB user = this.directory.get(username);
+				if (user != null)
+					this.following.add(user.id);
+			}
+		if (this.pending_followers != null)
+			for (String username : this.pending_followers) {
+				UserDB user = this.directory.get(username);
+				if (user != null)
+					this.followers.add(user.id);
+			}
+		this.pending_following = null;
+		this.pending_followers = null;
+		this.celebrity = this.followers.size() >= WinsomeDB_Timeline.CELEBRITY_FOLLOWERS;
 	}
 
 	// JSON Methods
 	public static UserDB JSON_read(String filePath) throws IOException {
-		ObjectMapper mapper = new ObjectMapper();
-		return mapper.readValue(new File(filePath), UserDB.class);
+		return WinJsonRegistry.reader_for(UserDB.class).readValue(new File(filePath));
 	}
 	@Override
 	public void JSON_write(String filePath) throws IOException {
-		ObjectMapper mapper = new ObjectMapper();
-		mapper.enable(SerializationFeature.INDENT_OUTPUT);
-		mapper.writeValue(new File(filePath), this);
+		WinJsonRegistry.pretty_writer_for(getClass()).writeValue(new File(filePath), this);
 	}
 
 	// Getters
@@ -99,15 +141,46 @@ public class UserDB implements JSON_Serializable {
 	public WalletDB getWallet() {
 		return this.wallet;
 	}
-	public HashSet<String> getPosts() {
+	// (the JSON representation of the posts, the following and the followers, the database uses the ids)
+	public String[] getPosts() {
+		long[] ids = this.posts.to_array();
+		String[] ret = new String[ids.length];
+		for (int i = 0; i < ids.length; i++)
+			ret[i] = Long.toString(ids[i]);
+		return ret;
+	}
+	public String[] getFollowing() {
+		return this.pending_following != null ? this.pending_following : usernames(this.following);
+	}
+	public String[] getFollowers() {
+		return this.pending_followers != null ? this.pending_followers : usernames(this.followers);
+	}
+	private String[] usernames(IntHashSet ids) {
+		return this.directory != null ? this.directory.usernames_of(ids.to_array()) : new String[0];
+	}
+
+	@JsonIgnore
+	public int get_id() {
+		return this.id;
+	}
+	LongSortedSet post_ids() {
 		return this.posts;
 	}
-	public HashSet<String> getFollowing() {
+	IntHashSet following_ids() {
 		return this.following;
 	}
-	public HashSet<String> getFollowers() {
+	IntHashSet follower_ids() {
 		return this.followers;
 	}
+	WinsomeDB_Timeline timeline() {
+		return this.timeline;
+	}
+	/**
+	 * @return true if the user has (or has had) at least CELEBRITY_FOLLOWERS followers, see WinsomeDB_Timeline
+	 */
+	boolean celebrity() {
+		return this.celebrity;
+	}
 
 	// Setters
 	public void setUsername(String username) {
@@ -122,36 +195,49 @@ public class UserDB implements JSON_Serializable {
 	public void setWallet(WalletDB wallet) {
 		this.wallet = wallet;
 	}
-	public void setPosts(HashSet<String> posts) {
-		this.posts = posts;
+	public void setPosts(String[] posts) {
+		this.posts = new LongSortedSet();
+		for (String post_id : posts) {
+			long id = WinsomeDB_Posts.parse_id(post_id);
+			if (id >= 0)
+				this.posts.add(id);
+		}
 	}
-	public void setFollowing(HashSet<String> following) {
-		this.following = following;
+	public void setFollowing(String[] following) {
+		this.pending_following = following;
 	}
-	public void setFollowers(HashSet<String> followers) {
-		this.followers = followers;
+	public void setFollowers(String[] followers) {
+		this.pending_followers = followers;
 	}
 
 	// Adders
-	public void add_follower(String follower) {
+	/**
+	 * @return true if the user has become a celebrity with this follower
+	 */
+	boolean add_follower(int follower) {
 		this.followers.add(follower);
+		if (this.celebrity || this.followers.size() < WinsomeDB_Timeline.CELEBRITY_FOLLOWERS)
+			return false;
+		// (a celebrity stays a celebrity, its posts are never added to the timelines again)
+		this.celebrity = true;
+		return true;
 	}
-	public void add_following(String following) {
+	void add_following(int following) {
 		this.following.add(following);
 	}
-	void add_post(String postID) {
-		this.posts.add(postID);
+	void add_post(long post_id) {
+		this.posts.add(post_id);
 	}
 
 	// Removers
-	public void remove_follower(String follower) {
+	void remove_follower(int follower) {
 		this.followers.remove(follower);
 	}
-	public void remove_following(String following) {
+	void remove_following(int following) {
 		this.following.remove(following);
 	}
-	public void remove_post(String postID) {
-		this.posts.remove(postID);
+	void remove_post(long post_id) {
+		this.posts.remove(post_id);
 	}
 
 	// Representation
@@ -162,7 +248,8 @@ public class UserDB implements JSON_Serializable {
 	@Override
 	public String toString() {
 		return "User{" +
-				"username='" + username + '\'' +
+				"id=" + id +
+				", username='" + username + '\'' +
 				", password='" + password + '\'' +
 				", tags=" + Arrays.toString(tags) +
 				", wallet=" + wallet +
@@ -1,7 +1,6 @@
 package winsome_DB;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import winsome_communication.WinJsonRegistry;
 import winsome_communication.TransactionRepr;
 import winsome_communication.WalletRepr;
 
@@ -56,14 +55,11 @@ public class WalletDB implements JSON_Serializable {
 
 	// JSON Methods
 	public static WalletDB JSON_read(String filePath) throws IOException {
-		ObjectMapper mapper = new ObjectMapper();
-		return mapper.readValue(new File(filePath), WalletDB.class);
+		return WinJsonRegistry.reader_for(WalletDB.class).readValue(new File(filePath));
 	}
 	@Override
 	public void JSON_write(String filePath) throws IOException {
-		ObjectMapper mapper = new ObjectMapper();
-		mapper.enable(SerializationFeature.INDENT_OUTPUT);
-		mapper.writeValue(new File(filePath), this);
+		WinJsonRegistry.pretty_writer_for(getClass()).writeValue(new File(filePath), this);
 	}
 
 	// Getters
@@ -0,0 +1,44 @@
+package winsome_DB;
+
+import java.util.Arrays;
+
+/**
+ * This class is the set of the posts with new votes or comments since the last reward (see WinsomeDatabase.reward_everyone).
+ * <p></p>
+ * A post is added when it is rated or commented, and the reward thread drains the set at every cycle: the posts
+ * without new interactions are never visited, so the cost of a cycle depends on the new interactions only.
+ * A post rated while the reward is running is added again and visited in the next cycle (if the new vote was
+ * already rewarded in this cycle, the post has nothing new to reward and is skipped).
+ * <p></p>
+ * The set has its own lock (its monitor), that is taken last: it is updated while holding the lock of the post,
+ * and it never takes other locks.
+ * This class is available only to the Winsome_Database
+ */
+class WinsomeDB_Activity {
+	// member variables
+	private LongHashSet active = new LongHashSet(); // guarded by this
+
+	// methods
+
+	/**
+	 * This method marks the post as active (it has new votes or comments).
+	 */
+	synchronized void add(long post_id) {
+		this.active.add(post_id);
+	}
+
+	/**
+	 * This method empties the set.
+	 * @return the posts that were active, in order of id
+	 */
+	long[] drain() {
+		LongHashSet drained;
+		synchronized (this) {
+			drained = this.active;
+			this.active = new LongHashSet();
+		}
+		long[] ret = drained.to_array();
+		Arrays.sort(ret);
+		return ret;
+	}
+}
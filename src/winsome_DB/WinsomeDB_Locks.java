@@ -0,0 +1,297 @@
+package winsome_DB;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * This class holds the locks of the Winsome_Database.
+ * <p></p>
+ * The users and the posts are protected by striped StampedLocks: the lock of a user (post) is the one of the
+ * stripe of its id (the ids are dense, so they are spread evenly over the stripes),
+ * so operations on different users (posts) usually run in parallel.
+ * The stripes support three ways of access:
+ * 1. read/write locks (users, posts), for the operations that always read or always modify.
+ * 2. optimistic reads (optimistic), for the queries: no lock is taken, the stripes are validated after the read.
+ * 3. upgradable locks (upgradable), for the mutations that check some conditions first: the stripes are read-locked
+ *    for the checks and converted to write locks for the update, without releasing them in between.
+ * The stripes are not reentrant, a thread never takes the same stripe twice (the lock getters remove the duplicates).
+ * Every operation also holds the read lock of the global lock, that is taken in write mode only to save the whole
+ * database to the files or to close it (so the files are a consistent snapshot).
+ * <p></p>
+ * Lock ordering (to avoid deadlocks):
+ * 1. the global lock.
+ * 2. the user stripes, in ascending order of stripe index.
+ * 3. the post stripes, in ascending order of stripe index.
+ * The methods that return more locks already return them in this order, without duplicates.
+ * <p></p>
+ * This class is available only to the Winsome_Database
+ */
+class WinsomeDB_Locks {
+	// class constants
+	static final int STRIPES = 64;
+
+	// member variables
+	private final ReentrantReadWriteLock global = new ReentrantReadWriteLock();
+	private final StampedLock[] user_stripes = new StampedLock[STRIPES];
+	private final StampedLock[] post_stripes = new StampedLock[STRIPES];
+
+	// constructor
+	WinsomeDB_Locks() {
+		for (int i = 0; i < STRIPES; i++) {
+			this.user_stripes[i] = new StampedLock();
+			this.post_stripes[i] = new StampedLock();
+		}
+	}
+
+	private static int stripe(long id) {
+		return (int) (id & (STRIPES - 1));
+	}
+
+	private static int[] stripes_of(int[] ids) {
+		int[] indexes = new int[ids.length];
+		for (int i = 0; i < ids.length; i++)
+			indexes[i] = stripe(ids[i]);
+		return indexes;
+	}
+
+	private static int[] stripes_of(long[] ids) {
+		int[] indexes = new int[ids.length];
+		for (int i = 0; i < ids.length; i++)
+			indexes[i] = stripe(ids[i]);
+		return indexes;
+	}
+
+	private static StampedLock[] stripes_of(StampedLock[] stripes, int[] indexes) {
+		/*
+		 * the stripes with the given indexes, in ascending order of stripe index and without duplicates
+		 */
+		Arrays.sort(indexes);
+
+		StampedLock[] ret = new StampedLock[indexes.length];
+		int n = 0;
+		for (int i = 0; i < indexes.length; i++) {
+			if (i > 0 && indexes[i] == indexes[i - 1])
+				continue;
+			ret[n++] = stripes[indexes[i]];
+		}
+		return Arrays.copyOf(ret, n);
+	}
+
+	private static Lock[] of(StampedLock[] stripes, int[] indexes, boolean write) {
+		/*
+		 * the locks of the stripes with the given indexes, in ascending order of stripe index and without duplicates
+		 */
+		StampedLock[] ordered = stripes_of(stripes, indexes);
+		Lock[] locks = new Lock[ordered.length];
+		for (int i = 0; i < ordered.length; i++)
+			locks[i] = write ? ordered[i].asWriteLock() : ordered[i].asReadLock();
+		return locks;
+	}
+
+	// lock getters
+
+	/**
+	 * @return the lock of the users (in order)
+	 */
+	Lock[] users(boolean write, int... user_ids) {
+		return of(this.user_stripes, stripes_of(user_ids), write);
+	}
+
+	/**
+	 * @return the locks of the posts (in order)
+	 */
+	Lock[] posts(boolean write, long... post_ids) {
+		return of(this.post_stripes, stripes_of(post_ids), write);
+	}
+
+	/**
+	 * @return the locks of the users followed by the locks of the posts (in order)
+	 */
+	static Lock[] both(Lock[] users, Lock[] posts) {
+		Lock[] locks = Arrays.copyOf(users, users.length + posts.length);
+		System.arraycopy(posts, 0, locks, users.length, posts.length);
+		return locks;
+	}
+
+	/**
+	 * @return a new optimistic read, see Optimistic
+	 */
+	Optimistic optimistic() {
+		return new Optimistic();
+	}
+
+	/**
+	 * This method takes the read lock of the global lock and the read locks of the stripes of the users and of the posts
+	 * (in order), they can be converted to write locks later.
+	 * @return the upgradable locks, they must be released with release.
+	 */
+	Upgradable upgradable(int[] user_ids, long[] post_ids) {
+		StampedLock[] users = stripes_of(this.user_stripes, stripes_of(user_ids));
+		StampedLock[] posts = stripes_of(this.post_stripes, stripes_of(post_ids));
+		StampedLock[] stripes = Arrays.copyOf(users, users.length + posts.length);
+		System.arraycopy(posts, 0, stripes, users.length, posts.length);
+		return new Upgradable(stripes);
+	}
+
+	// methods
+
+	/**
+	 * This method takes the read lock of the global lock and then the given locks (in order).
+	 * @param locks the locks returned by users, posts or both.
+	 */
+	void lock(Lock... locks) {
+		this.global.readLock().lock();
+		lock_nested(locks);
+	}
+
+	/**
+	 * This method releases the locks taken by lock (in reverse order).
+	 * @param locks the same locks given to lock.
+	 */
+	void unlock(Lock... locks) {
+		unlock_nested(locks);
+		this.global.readLock().unlock();
+	}
+
+	/**
+	 * This method takes only the given locks (in order), the caller must already hold the global lock
+	 * and only locks that come later in the lock ordering.
+	 * @param locks the locks returned by users, posts or both.
+	 */
+	static void lock_nested(Lock... locks) {
+		for (Lock lock : locks)
+			lock.lock();
+	}
+
+	/**
+	 * This method releases the locks taken by lock_nested (in reverse order).
+	 * @param locks the same locks given to lock_nested.
+	 */
+	static void unlock_nested(Lock... locks) {
+		for (int i = locks.length - 1; i >= 0; i--)
+			locks[i].unlock();
+	}
+
+	/**
+	 * This method takes the write lock of the global lock, no other operation runs until unlock_all.
+	 */
+	void lock_all() {
+		this.global.writeLock().lock();
+	}
+
+	void unlock_all() {
+		this.global.writeLock().unlock();
+	}
+
+	/**
+	 * An optimistic read of some users and posts, no lock is taken.
+	 * <p></p>
+	 * Usage: call user (post) before reading a user (post), then read the data without modifying anything and
+	 * call validate: if it returns true no writer has modified the users and the posts read, and the data can be used;
+	 * otherwise (or if the read has thrown a RuntimeException, as the data may be changing meanwhile) the data must be
+	 * discarded and read again under the read locks.
+	 * The global lock is not needed: it only excludes the writers while the database is saved.
+	 */
+	class Optimistic {
+		private StampedLock[] stripes = new StampedLock[4];
+		private long[] stamps = new long[4];
+		private int n = 0;
+		private boolean valid = true;
+
+		void user(int user_id) {
+			add(user_stripes[stripe(user_id)]);
+		}
+
+		void post(long post_id) {
+			add(post_stripes[stripe(post_id)]);
+		}
+
+		private void add(StampedLock stripe) {
+			long stamp = stripe.tryOptimisticRead();
+			if (stamp == 0) {
+				// the stripe is write-locked
+				this.valid = false;
+				return;
+			}
+			if (this.n == this.stripes.length) {
+				this.stripes = Arrays.copyOf(this.stripes, this.n * 2);
+				this.stamps = Arrays.copyOf(this.stamps, this.n * 2);
+			}
+			this.stripes[this.n] = stripe;
+			this.stamps[this.n++] = stamp;
+		}
+
+		/**
+		 * @return true if no stripe read has been write-locked since the read began
+		 */
+		boolean validate() {
+			if (!this.valid)
+				return false;
+			for (int i = 0; i < this.n; i++)
+				if (!this.stripes[i].validate(this.stamps[i]))
+					return false;
+			return true;
+		}
+	}
+
+	/**
+	 * Read locks of some stripes (and of the global lock) that can be converted to write locks.
+	 * <p></p>
+	 * Usage: do the checks, then call upgrade: if it returns true the stripes are now write-locked and the checks still hold;
+	 * if it returns false the read locks had to be released to take the write locks, so the checks must be done again
+	 * (the next upgrade returns true, the stripes are already write-locked).
+	 */
+	class Upgradable {
+		private final StampedLock[] stripes;
+		private final long[] stamps;
+		private boolean write = false;
+
+		private Upgradable(StampedLock[] stripes) {
+			this.stripes = stripes;
+			this.stamps = new long[stripes.length];
+			global.readLock().lock();
+			for (int i = 0; i < stripes.length; i++)
+				this.stamps[i] = stripes[i].readLock();
+		}
+
+		/**
+		 * @return true if the stripes have been write-locked without releasing them, false if the checks must be done again.
+		 */
+		boolean upgrade() {
+			if (this.write)
+				return true;
+			this.write = true;
+
+			// 1. try to convert every read lock in place
+			boolean converted = true;
+			for (int i = 0; i < this.stripes.length; i++) {
+				long stamp = this.stripes[i].tryConvertToWriteLock(this.stamps[i]);
+				if (stamp == 0) {
+					converted = false;
+					break;
+				}
+				this.stamps[i] = stamp;
+			}
+			if (converted)
+				return true;
+
+			// 2. another reader holds a stripe: release everything and take the write locks (in order)
+			for (int i = this.stripes.length - 1; i >= 0; i--)
+				this.stripes[i].unlock(this.stamps[i]);
+			for (int i = 0; i < this.stripes.length; i++)
+				this.stamps[i] = this.stripes[i].writeLock();
+			return false;
+		}
+
+		/**
+		 * This method releases the stripes (read or write locked) and the global lock.
+		 */
+		void release() {
+			for (int i = this.stripes.length - 1; i >= 0; i--)
+				this.stripes[i].unlock(this.stamps[i]);
+			global.readLock().unlock();
+		}
+	}
+}
@@ -1,12 +1,13 @@
 package winsome_DB;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+
+import winsome_communication.WinJsonRegistry;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class represents all the posts in the database.
@@ -14,12 +15,16 @@ import java.util.Map;
  * 1. A map of all the posts in the database.
  * 2. The id of the last post created.
  * <p></p>
+ * The ids are longs generated atomically and the posts are kept in a table indexed by id, so posts can be added
+ * and read without a global lock (the content of a post is guarded by the lock of its stripe, see WinsomeDB_Locks).
+ * The ids are strings only in the JSON file and in the requests (see parse_id).
+ * <p></p>
  * This class is available only to the Winsome_Database
  */
 public class WinsomeDB_Posts implements JSON_Serializable {
 	// Member variables
-	private HashMap<String, PostDB> posts = new HashMap<>();
-	private String last_post_id;
+	private final WinsomeDB_Table<PostDB> posts = new WinsomeDB_Table<>();
+	private final AtomicLong last_post_id = new AtomicLong(-1);
 
 	// Constructors
 
@@ -29,57 +34,83 @@ public class WinsomeDB_Posts implements JSON_Serializable {
 
 	// JSON Methods
 	public static WinsomeDB_Posts JSON_read(String filePath) throws IOException {
-		ObjectMapper mapper = new ObjectMapper();
-		return mapper.readValue(new File(filePath), WinsomeDB_Posts.class);
+		return WinJsonRegistry.reader_for(WinsomeDB_Posts.class).readValue(new File(filePath));
 	}
 	@Override
 	public void JSON_write(String filePath) throws IOException {
-		ObjectMapper mapper = new ObjectMapper();
-		mapper.enable(SerializationFeature.INDENT_OUTPUT);
-		mapper.writeValue(new File(filePath), this);
+		WinJsonRegistry.pretty_writer_for(getClass()).writeValue(new File(filePath), this);
 	}
 
 	// Getters
 	public String getLast_post_id() {
-		return last_post_id;
+		long last = this.last_post_id.get();
+		return last < 0 ? null : Long.toString(last);
 	}
+	// (the JSON representation of the posts, in order of id)
 	public Map<String, PostDB> getPosts() {
-		return posts;
+		Map<String, PostDB> ret = new LinkedHashMap<>();
+		for (PostDB post : this.posts)
+			ret.put(post.getId(), post);
+		return ret;
 	}
 
 	// Setters
 	public void setLast_post_id(String last_post_id) {
-		this.last_post_id = last_post_id;
+		this.last_post_id.set(last_post_id == null ? -1 : Long.parseLong(last_post_id));
 	}
-	public void setPosts(HashMap<String, PostDB> posts) {
-		this.posts = posts;
+	public void setPosts(Map<String, PostDB> posts) {
+		for (PostDB post : posts.values())
+			this.posts.put(post.get_id(), post);
+	}
+
+	/**
+	 * @return the id of a post from its string representation, -1 if it is not a valid id
+	 */
+	public static long parse_id(String post_id) {
+		if (post_id == null || post_id.isEmpty() || post_id.length() > 18)
+			return -1;
+		long id = 0;
+		for (int i = 0; i < post_id.length(); i++) {
+			char c = post_id.charAt(i);
+			if (c < '0' || c > '9')
+				return -1;
+			id = id * 10 + (c - '0');
+		}
+		return id;
 	}
 
     // Adders
-	public void add_post(String author, String title, String text) {
+	public long add_post(String author, String title, String text) {
 		/*
 		 * This method is used to add a post to the post collection.
 		 *
-		 * 1. Create a new post_id that is the last post_id plus one.
+		 * 1. Create a new post_id that is the last post_id plus one (atomically, so concurrent posts get different ids).
 		 * 2. Add the post to the post collection.
-		 * 3. Set the last post_id to the new post_id.
+		 * 3. Return the new post_id.
 		 */
 
 		// 1. Create a new post_id that is the last post_id plus one.
-		String post_id = last_post_id == null ? "0" : Integer.toString(Integer.parseInt(last_post_id) + 1);
+		long post_id = this.last_post_id.incrementAndGet();
 
 		// 2. Add the post to the post collection.
 		this.posts.put(post_id, new PostDB(post_id, author, title, text));
 
-		// 3. Set the last post_id to the new post_id.
-		last_post_id = post_id;
+		// 3. Return the new post_id.
+		return post_id;
 	}
 
 	// Get post
-	public PostDB get_post(String post_id) { return this.posts.get(post_id); }
+	public PostDB get_post(long post_id) { return this.posts.get(post_id); }
+
+	/**
+	 * @return all the posts, in order of id (the iteration is weakly consistent)
+	 */
+	public Iterable<PostDB> all() {
+		return this.posts;
+	}
 
 	// Removers
-	public void remove_post(String postId, String user_requested_removal) {
+	public void remove_post(long postId, String user_requested_removal) {
 		/*
 		 * This method is used to delete a post from the post collection.
 		 *
@@ -90,17 +121,18 @@ public class WinsomeDB_Posts implements JSON_Serializable {
 		 */
 
 		// 1. Check if the post exists.
-		if (!this.posts.containsKey(postId)) {
+		PostDB post = this.posts.get(postId);
+		if (post == null) {
 			return;
 		}
 
 		// 2. Check if the user is the author of the post.
-		if (!this.posts.get(postId).getAuthor().equals(user_requested_removal)) {
+		if (!post.getAuthor().equals(user_requested_removal)) {
 			return;
 		}
 
 		// 3. Delete the post.
-		this.posts.remove(postId);
+		this.posts.remove(postId, post);
 
 		// 4. Return the status code.
 	}
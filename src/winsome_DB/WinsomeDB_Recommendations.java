@@ -0,0 +1,81 @@
+package winsome_DB;
+
+import winsome_communication.UserRepr;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class caches the recommendations of every user (see WinsomeDatabase.recommend_users).
+ * <p></p>
+ * The recommendations of a user depend on the users it follows, on the users followed by them and on the tags of
+ * all the users, so a cached entry is invalidated when:
+ * 1. the user, or a user it follows, follows or unfollows someone (invalidate).
+ * 2. a new user is registered (invalidate_all).
+ * Every entry is stamped with the clock read before the recommendations were computed, and every invalidation
+ * advances the clock: an entry computed before an invalidation is never stored after it, so a computation that
+ * has read the old state can not overwrite the invalidation.
+ * <p></p>
+ * This class is available only to the Winsome_Database
+ */
+class WinsomeDB_Recommendations {
+	// member variables
+	private final ConcurrentHashMap<Integer, Entry> cache = new ConcurrentHashMap<>();
+	private final AtomicLong clock = new AtomicLong();
+	private volatile long all_invalid_before = 0;
+
+	private static final class Entry {
+		final long stamp;
+		final UserRepr[] users; // null if invalidated
+
+		Entry(long stamp, UserRepr[] users) {
+			this.stamp = stamp;
+			this.users = users;
+		}
+	}
+
+	// methods
+
+	/**
+	 * This method must be called before reading the state used to compute the recommendations.
+	 * @return the stamp to give to put
+	 */
+	long stamp() {
+		return this.clock.get();
+	}
+
+	/**
+	 * @return the cached recommendations of the user, null if not cached or invalidated
+	 */
+	UserRepr[] get(int user_id) {
+		Entry entry = this.cache.get(user_id);
+		if (entry == null || entry.users == null || entry.stamp < this.all_invalid_before)
+			return null;
+		return entry.users;
+	}
+
+	/**
+	 * This method caches the recommendations of the user, unless they have been invalidated since the stamp was taken.
+	 */
+	void put(int user_id, long stamp, UserRepr[] users) {
+		if (stamp < this.all_invalid_before)
+			return;
+		this.cache.compute(user_id, (id, entry) -> entry == null || entry.stamp <= stamp ? new Entry(stamp, users) : entry);
+	}
+
+	/**
+	 * This method invalidates the recommendations of the given user (call it after the update).
+	 */
+	void invalidate(int user_id) {
+		long stamp = this.clock.incrementAndGet();
+		this.cache.put(user_id, new Entry(stamp, null));
+	}
+
+	/**
+	 * This method invalidates the recommendations of every user (call it after the update).
+	 */
+	void invalidate_all() {
+		this.all_invalid_before = this.clock.incrementAndGet();
+		this.cache.clear();
+	}
+}
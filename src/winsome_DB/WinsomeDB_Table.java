@@ -0,0 +1,136 @@
+package winsome_DB;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class maps dense non-negative ids (the ids of the users and of the posts) to objects, without boxing the ids.
+ * <p></p>
+ * The ids are assigned sequentially, so the table is an array indexed by id instead of a hash table:
+ * the array is split in chunks of CHUNK_SIZE slots, allocated when the first id of the chunk is used
+ * (only the small array of the chunks is copied when the table grows).
+ * The lookups and the iteration take no lock and can run concurrently with the updates (the iteration is weakly
+ * consistent, like the one of a ConcurrentHashMap); only the allocation of a new chunk is synchronized.
+ * <p></p>
+ * This class is available only to the Winsome_Database
+ */
+class WinsomeDB_Table<T> implements Iterable<T> {
+	// class constants
+	private static final int CHUNK_BITS = 12;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	// member variables
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private volatile AtomicReferenceArray<T>[] chunks = new AtomicReferenceArray[0];
+	private final AtomicInteger size = new AtomicInteger();
+
+	// methods
+
+	/**
+	 * @return the object with the given id, null if not found
+	 */
+	T get(long id) {
+		if (id < 0)
+			return null;
+		AtomicReferenceArray<T>[] chunks = this.chunks;
+		long chunk = id >>> CHUNK_BITS;
+		if (chunk >= chunks.length)
+			return null;
+		return chunks[(int) chunk].get((int) (id & CHUNK_MASK));
+	}
+
+	/**
+	 * This method sets the object with the given id (replacing the previous one, if any).
+	 */
+	void put(long id, T value) {
+		if (id < 0 || value == null)
+			throw new IllegalArgumentException("Invalid id or value: " + id);
+		if (chunk_of(id).getAndSet((int) (id & CHUNK_MASK), value) == null)
+			this.size.incrementAndGet();
+	}
+
+	/**
+	 * This method removes the object with the given id, only if it is still the given one.
+	 * @return true if the object has been removed
+	 */
+	boolean remove(long id, T value) {
+		AtomicReferenceArray<T>[] chunks = this.chunks;
+		long chunk = id >>> CHUNK_BITS;
+		if (id < 0 || chunk >= chunks.length)
+			return false;
+		if (!chunks[(int) chunk].compareAndSet((int) (id & CHUNK_MASK), value, null))
+			return false;
+		this.size.decrementAndGet();
+		return true;
+	}
+
+	/**
+	 * @return the number of objects in the table
+	 */
+	int size() {
+		return this.size.get();
+	}
+
+	private AtomicReferenceArray<T> chunk_of(long id) {
+		long chunk = id >>> CHUNK_BITS;
+		AtomicReferenceArray<T>[] chunks = this.chunks;
+		if (chunk < chunks.length)
+			return chunks[(int) chunk];
+		return grow((int) chunk);
+	}
+
+	private synchronized AtomicReferenceArray<T> grow(int chunk) {
+		AtomicReferenceArray<T>[] chunks = this.chunks;
+		if (chunk < chunks.length)
+			return chunks[chunk];
+
+		// the ids are assigned sequentially, so the table grows by one chunk at a time
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		AtomicReferenceArray<T>[] grown = new AtomicReferenceArray[chunk + 1];
+		System.arraycopy(chunks, 0, grown, 0, chunks.length);
+		for (int i = chunks.length; i < grown.length; i++)
+			grown[i] = new AtomicReferenceArray<>(CHUNK_SIZE);
+		this.chunks = grown;
+		return grown[chunk];
+	}
+
+	/**
+	 * @return an iterator over the objects of the table, in order of id (weakly consistent)
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		final AtomicReferenceArray<T>[] chunks = this.chunks;
+		return new Iterator<T>() {
+			private long next_id = 0;
+			private T next = advance();
+
+			private T advance() {
+				long limit = (long) chunks.length << CHUNK_BITS;
+				while (this.next_id < limit) {
+					long id = this.next_id++;
+					T value = chunks[(int) (id >>> CHUNK_BITS)].get((int) (id & CHUNK_MASK));
+					if (value != null)
+						return value;
+				}
+				return null;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return this.next != null;
+			}
+
+			@Override
+			public T next() {
+				if (this.next == null)
+					throw new NoSuchElementException();
+				T ret = this.next;
+				this.next = advance();
+				return ret;
+			}
+		};
+	}
+}
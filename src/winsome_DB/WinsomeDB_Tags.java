@@ -0,0 +1,84 @@
+package winsome_DB;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is the inverted index of the tags: for every tag, the ids of the users that have it.
+ * <p></p>
+ * The tags of a user never change and the ids are assigned in increasing order, so every posting list is
+ * append-only and sorted: the users are added when they are created (or loaded) by WinsomeDB_Users, always
+ * in order of id. A posting list is read without locks through an immutable snapshot (the array and its length),
+ * replaced at every append.
+ * <p></p>
+ * This class is available only to the Winsome_Database
+ */
+class WinsomeDB_Tags {
+	// member variables
+	private final ConcurrentHashMap<String, Postings> index = new ConcurrentHashMap<>();
+
+	/**
+	 * The ids of the users with a tag, sorted (ids[0 .. size - 1]).
+	 */
+	static final class Snapshot {
+		static final Snapshot EMPTY = new Snapshot(new int[0], 0);
+
+		final int[] ids;
+		final int size;
+
+		private Snapshot(int[] ids, int size) {
+			this.ids = ids;
+			this.size = size;
+		}
+
+		/**
+		 * @return the position of the first id greater than the given one (size if none)
+		 */
+		int first_after(int id) {
+			int low = 0, high = this.size;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (this.ids[mid] <= id)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			return low;
+		}
+	}
+
+	private static final class Postings {
+		private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+		synchronized void add(int id) {
+			Snapshot current = this.snapshot;
+			int[] ids = current.ids;
+			if (current.size == ids.length)
+				ids = Arrays.copyOf(ids, Math.max(4, ids.length * 2));
+			// the slot is beyond the size of the published snapshot, no reader looks at it
+			ids[current.size] = id;
+			this.snapshot = new Snapshot(ids, current.size + 1);
+		}
+	}
+
+	// methods
+
+	/**
+	 * This method adds a user to the posting lists of its tags, the ids must be added in increasing order.
+	 */
+	void add(UserDB user) {
+		String[] tags = user.getTags();
+		if (tags == null)
+			return;
+		for (String tag : tags)
+			this.index.computeIfAbsent(tag, t -> new Postings()).add(user.get_id());
+	}
+
+	/**
+	 * @return the ids of the users with the given tag
+	 */
+	Snapshot users_with(String tag) {
+		Postings postings = this.index.get(tag);
+		return postings != null ? postings.snapshot : Snapshot.EMPTY;
+	}
+}
@@ -0,0 +1,146 @@
+package winsome_DB;
+
+/**
+ * This class is the materialized feed of a user: the ids of the newest posts of the users it follows.
+ * <p></p>
+ * The timeline is filled on write (fan-out): a new post or a rewin is added to the timelines of the followers of its
+ * author, and the newest posts of a user are added to the timeline of a new follower. It keeps only the newest
+ * CAPACITY ids, in order of id (the order of the feed, a rewin adds an older post in the middle): the ids not higher
+ * than the floor may be missing (they have been evicted, or they were too old when the timeline was built),
+ * the feed below the floor is read from the followed users (pull).
+ * <p></p>
+ * The posts of the celebrities (the users with at least CELEBRITY_FOLLOWERS followers) are not added to the timelines
+ * of their followers, that would be too slow: the timeline only records the celebrities followed, and their newest
+ * posts are read from them when the feed is read (hybrid pull).
+ * <p></p>
+ * The timelines are not saved: a timeline is built (pulled from the followed users) the first time its feed is read,
+ * and again after an unfollow (reset). The updates received while the timeline is not built are kept, so a post
+ * added while the timeline is being built is not lost.
+ * <p></p>
+ * The timeline has its own lock (its monitor), that is taken last: it can be updated while holding the locks of the
+ * users and of the posts, and it never takes other locks.
+ * This class is available only to the Winsome_Database
+ */
+class WinsomeDB_Timeline {
+	// class constants
+	static final int CAPACITY = 128;
+	static final int CELEBRITY_FOLLOWERS = 10_000;
+
+	// member variables
+	private final LongSortedSet ids = new LongSortedSet();
+	private IntHashSet celebrities = new IntHashSet();
+	private long floor = -1;
+	private boolean built = false;
+	private long generation = 0;
+
+	/**
+	 * A copy of the newest part of a timeline, see newest.
+	 */
+	static final class View {
+		final long[] ids; // in descending order
+		final long floor;
+		final int[] celebrities;
+
+		private View(long[] ids, long floor, int[] celebrities) {
+			this.ids = ids;
+			this.floor = floor;
+			this.celebrities = celebrities;
+		}
+	}
+
+	// methods
+
+	/**
+	 * @return true if the timeline has been built since the last reset
+	 */
+	synchronized boolean is_built() {
+		return this.built;
+	}
+
+	/**
+	 * This method must be called before reading the followed users to build the timeline.
+	 * @return the generation to give to build
+	 */
+	synchronized long generation() {
+		return this.generation;
+	}
+
+	/**
+	 * This method adds a post to the timeline (the oldest post is evicted if the timeline is full).
+	 */
+	synchronized void add(long post_id) {
+		if (post_id <= this.floor || !this.ids.add(post_id))
+			return;
+		if (this.ids.size() > CAPACITY) {
+			long evicted = this.ids.first();
+			this.ids.remove(evicted);
+			this.floor = Math.max(this.floor, evicted);
+		}
+	}
+
+	/**
+	 * This method adds the newest posts of a followed user to the timeline.
+	 * @param posts_ids the newest posts of the user, in descending order.
+	 * @param all true if posts_ids are all the posts of the user, false if the older ones are missing.
+	 */
+	synchronized void add_all(long[] posts_ids, boolean all) {
+		for (long post_id : posts_ids)
+			add(post_id);
+		if (!all && posts_ids.length > 0)
+			this.floor = Math.max(this.floor, posts_ids[posts_ids.length - 1] - 1);
+		trim();
+	}
+
+	synchronized void remove(long post_id) {
+		this.ids.remove(post_id);
+	}
+
+	/**
+	 * This method records that a celebrity is followed (its posts are read from it).
+	 */
+	synchronized void add_celebrity(int user_id) {
+		this.celebrities.add(user_id);
+	}
+
+	/**
+	 * This method marks the timeline as built, with the posts and the celebrities read from the followed users.
+	 * It does nothing if the timeline has been reset after the generation was read.
+	 */
+	synchronized void build(long generation, long[] posts_ids, long floor, int[] celebrities) {
+		if (generation != this.generation)
+			return;
+		for (long post_id : posts_ids)
+			add(post_id);
+		this.floor = Math.max(this.floor, floor);
+		for (int celebrity : celebrities)
+			this.celebrities.add(celebrity);
+		trim();
+		this.built = true;
+	}
+
+	/**
+	 * This method empties the timeline, it is built again the next time the feed is read.
+	 */
+	synchronized void reset() {
+		this.generation++;
+		this.built = false;
+		this.floor = -1;
+		this.ids.clear();
+		this.celebrities = new IntHashSet();
+	}
+
+	/**
+	 * @return the newest posts of the timeline lower than before (at most limit) with the floor and the celebrities followed
+	 */
+	synchronized View newest(long before, int limit) {
+		return new View(this.ids.newest(before, limit), this.floor, this.celebrities.to_array());
+	}
+
+	private void trim() {
+		/*
+		 * the ids not higher than the floor are dropped (they may be missing, the feed below the floor is pulled)
+		 */
+		while (!this.ids.is_empty() && this.ids.first() <= this.floor)
+			this.ids.remove(this.ids.first());
+	}
+}
@@ -1,14 +1,28 @@
 package winsome_DB;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+
+import winsome_communication.WinJsonRegistry;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
-public class WinsomeDB_Users extends HashMap<String, UserDB> implements JSON_Serializable {
+/**
+ * This class represents all the users in the database, indexed by username.
+ * <p></p>
+ * The map is concurrent, so users can be added and looked up without a global lock
+ * (the content of a user is guarded by the lock of its stripe, see WinsomeDB_Locks).
+ * Every user also has a dense int id (assigned when the user is created or loaded, in order of username),
+ * the users are indexed by id too so the database can resolve the ids of the followers and the following,
+ * and by tag (see WinsomeDB_Tags) so the database can find the users with some tags without scanning all of them.
+ */
+public class WinsomeDB_Users extends ConcurrentHashMap<String, UserDB> implements JSON_Serializable {
 	// Member variables
+	private final WinsomeDB_Table<UserDB> by_id = new WinsomeDB_Table<>();
+	private int next_id = 0; // guarded by this
+	private final WinsomeDB_Tags tags = new WinsomeDB_Tags();
+
 	// Constructors
 
 	// Default constructor // Jackson constructor
@@ -25,22 +39,89 @@ public class WinsomeDB_Users extends HashMap<String, UserDB> implements JSON_Ser
 
 	// JSON Methods
 	public static WinsomeDB_Users JSON_read(String filePath) throws IOException {
-		ObjectMapper mapper = new ObjectMapper();
-		return mapper.readValue(new File(filePath), WinsomeDB_Users.class);
+		WinsomeDB_Users users = WinJsonRegistry.reader_for(WinsomeDB_Users.class).readValue(new File(filePath));
+		users.link_all();
+		return users;
 	}
 	@Override
 	public void JSON_write(String filePath) throws IOException {
-		ObjectMapper mapper = new ObjectMapper();
-		mapper.enable(SerializationFeature.INDENT_OUTPUT);
-		mapper.writeValue(new File(filePath), this);
+		WinJsonRegistry.pretty_writer_for(getClass()).writeValue(new File(filePath), this);
+	}
+
+	private synchronized void link_all() {
+		/*
+		 * This method is used to give an id to every user read from the JSON file.
+		 *
+		 * 1. Give the ids in order of username (and index the tags, in order of id).
+		 * 2. Resolve the followers and the following of every user to ids.
+		 */
+
+		// 1. Give the ids in order of username (and index the tags, in order of id).
+		String[] usernames = keySet().toArray(new String[0]);
+		Arrays.sort(usernames);
+		for (String username : usernames) {
+			UserDB user = get(username);
+			int id = this.next_id++;
+			user.link(id, this);
+			this.by_id.put(id, user);
+			this.tags.add(user);
+		}
+
+		// 2. Resolve the followers and the following of every user to ids.
+		for (UserDB user : values())
+			user.resolve();
 	}
 
-	// Getters // None
+	// Getters
+
+	/**
+	 * @return the user with the given id, null if not found
+	 */
+	UserDB get_by_id(int id) {
+		return this.by_id.get(id);
+	}
+
+	/**
+	 * @return the usernames of the users with the given ids (the ids not found are skipped)
+	 */
+	String[] usernames_of(int[] ids) {
+		String[] ret = new String[ids.length];
+		int n = 0;
+		for (int id : ids) {
+			UserDB user = this.by_id.get(id);
+			if (user != null)
+				ret[n++] = user.getUsername();
+		}
+		return n == ret.length ? ret : Arrays.copyOf(ret, n);
+	}
+
+	/**
+	 * @return the ids of the users with the given tag, in ascending order
+	 */
+	WinsomeDB_Tags.Snapshot users_with_tag(String tag) {
+		return this.tags.users_with(tag);
+	}
 
 	// Setters // None
 
-	// Adders // None
+	// Adders
+
+	/**
+	 * This method is used to add a new user, with the next id.
+	 * @return the new user, null if the username already exists
+	 */
+	synchronized UserDB add_user(String username, String password, String[] tags) {
+		if (containsKey(username))
+			return null;
+
+		UserDB user = new UserDB(username, password, tags);
+		int id = this.next_id++;
+		user.link(id, this);
+		this.by_id.put(id, user);
+		this.tags.add(user);
+		put(username, user);
+		return user;
+	}
 
 	// Removers // None
 }
-
@@ -7,11 +7,13 @@ import winsome_server.WinsomeReward;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.TreeSet;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
 
 /**
  * This class represents the Database of the Winsome server.
@@ -22,6 +24,15 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * 4. The file path of the users' database.
  * 5. The file path of the posts' database.
  * <p></p>
+ * The users and the posts are guarded by striped locks (see WinsomeDB_Locks): every operation locks only
+ * the users and the posts it reads or modifies, always in the order users before posts, so operations on
+ * different users and posts run in parallel and the periodic reward never blocks the whole database.
+ * The most frequent queries (get_post, get_user_blog, get_user_feed) are optimistic reads that take no lock,
+ * and the mutations that check some conditions first upgrade their read locks to write locks in place.
+ * <p></p>
+ * The usernames and the post ids are strings only in the requests: every method resolves the username to the user
+ * (and its int id) and parses the post id to a long first, the users and the posts are then locked and linked by id.
+ * <p></p>
  * This class is a singleton.
  */
 public class WinsomeDatabase implements Winsome_DB_Interface {
@@ -30,16 +41,15 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 	private WinsomeDB_Users users;
 	final private String posts_file_path;
 	final private String users_file_path;
-	private boolean posts_backup_valid = true;
-	private boolean users_backup_valid = true;
+	private volatile boolean posts_backup_valid = true;
+	private volatile boolean users_backup_valid = true;
 	private final boolean create_if_not_exist;
-	private boolean initialized = false;
+	private volatile boolean initialized = false;
 	private static WinsomeDatabase instance = null;
 	private final WinsomeDB_Thread thread = new WinsomeDB_Thread(this);
-	private final Lock users_R_lock;
-	private final Lock users_W_lock;
-	private final Lock posts_R_lock;
-	private final Lock posts_W_lock;
+	private final WinsomeDB_Locks locks = new WinsomeDB_Locks();
+	private final WinsomeDB_Recommendations recommendations = new WinsomeDB_Recommendations();
+	private final WinsomeDB_Activity activity = new WinsomeDB_Activity();
 
 	// Constructors
 
@@ -52,7 +62,6 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 		 * 1. Set the file path of the posts file.
 		 * 2. Set the file path of the users file.
 		 * 3. Set the create_if_not_exist flag.
-		 * 4. Create the locks.
 		 */
 
 		// 1. Set the file path of the posts file.
@@ -63,14 +72,6 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 
 		// 3. Set the create_if_not_exist flag
 		this.create_if_not_exist = create_if_not_exist;
-
-		// 4. Create the locks.
-		ReadWriteLock users_RW_lock = new ReentrantReadWriteLock(true);
-		ReadWriteLock posts_RW_lock = new ReentrantReadWriteLock(true);
-		users_R_lock = users_RW_lock.readLock();
-		users_W_lock = users_RW_lock.writeLock();
-		posts_R_lock = posts_RW_lock.readLock();
-		posts_W_lock = posts_RW_lock.writeLock();
 	}
 
 	// Instance getter
@@ -101,8 +102,10 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 		 *
 		 * 1. Load the posts from the posts file.
 		 * 2. Load the users from the users file.
-		 * 3. Set the initialized flag to true.
-		 * 4. Start the database thread.
+		 * 3. Index the users that rewined every post.
+		 * 4. Mark the posts with votes or comments not rewarded yet.
+		 * 5. Set the initialized flag to true.
+		 * 6. Start the database thread.
 		 */
 
 		// 1. Load the posts from the posts file.
@@ -111,10 +114,18 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 		// 2. Load the users from the users file.
 		load_users();
 
-		// 3. Set the initialized flag to true.
+		// 3. Index the users that rewined every post.
+		index_rewinners();
+
+		// 4. Mark the posts with votes or comments not rewarded yet.
+		for (PostDB post : posts.all())
+			if (post.resolve_rewarded())
+				activity.add(post.get_id());
+
+		// 5. Set the initialized flag to true.
 		initialized = true;
 
-		// 4. Start the thread.
+		// 6. Start the thread.
 		thread.start();
 	}
 	private void load_posts() throws WinsomeDB_Exception.PostsDatabaseNotFound {
@@ -143,6 +154,18 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 			}
 		}
 	}
+	private void index_rewinners() {
+		/*
+		 * the rewinners of the posts are not saved: every post in the blog of a user that is not its author
+		 * has been rewined by the user (the posts removed by their author may still be in the blogs, they are skipped)
+		 */
+		for (UserDB user : users.values())
+			for (long post_id : user.post_ids().to_array()) {
+				PostDB post = posts.get_post(post_id);
+				if (post != null && !post.getAuthor().equals(user.getUsername()))
+					post.add_rewinner(user.get_id());
+			}
+	}
 	private void load_users() throws WinsomeDB_Exception.UsersDatabaseNotFound {
 		/*
 		 * This method is used to load the users from the users file.
@@ -176,6 +199,9 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 		 * 1. If the database is not initialized, throw an exception.
 		 * 2. Save the posts to the posts file.
 		 * 3. Save the users to the users file.
+		 *
+		 * The write lock of the global lock is held across both saves (it is reentrant), so no operation
+		 * (e.g. a reward cycle) runs between them and the two files are a consistent snapshot.
 		 */
 
 		// DEBUG
@@ -187,74 +213,71 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 			throw new WinsomeDB_Exception.DatabaseNotInitialized();
 
 		// 2. Save the posts to the posts file.// 3. Save the users to the users file.
-		if (save_posts() != 0 || save_users() != 0)
-			throw new WinsomeDB_Exception.DatabaseNotSaved();
+		locks.lock_all();
+		try {
+			if (save_posts() != 0 || save_users() != 0)
+				throw new WinsomeDB_Exception.DatabaseNotSaved();
+		} finally {
+			locks.unlock_all();
+		}
 	}
 	private int save_posts() {
 		/*
 		 * This method is used to save the posts to the posts file.
 		 *
-		 * 1. Try to save the posts to the posts file.
+		 * 1. Stop every other operation (the file must be a consistent snapshot).
+		 * 2. Try to save the posts to the posts file.
+		 * 3. Mark the posts backup as valid.
 		 */
 
-		if (posts_backup_valid) return 0;
-
-		// 1. Try to save the posts to the posts file.
-		posts_R_lock.lock();
+		// 1. Stop every other operation.
+		locks.lock_all();
 		try {
+			if (posts_backup_valid) return 0;
+
+			// 2. Try to save the posts to the posts file.
 			posts.JSON_write(posts_file_path);
+
+			// 3. Mark the posts backup as valid.
+			posts_backup_valid = true;
 		} catch (IOException e) {
 			e.printStackTrace();
-			posts_R_lock.unlock();
 			return -1;
+		} finally {
+			locks.unlock_all();
 		}
 
-		posts_R_lock.unlock();
 		return 0;
 	}
 	private int save_users() {
 		/*
 		 * This method is used to save the users to the users file.
 		 *
-		 * 1. Try to save the users to the users file.
+		 * 1. Stop every other operation (the file must be a consistent snapshot).
+		 * 2. Try to save the users to the users file.
+		 * 3. Mark the users backup as valid.
 		 */
 
-		if (users_backup_valid) return 0;
-
-		// 1. Try to save the users to the users file.
-		users_R_lock.lock();
+		// 1. Stop every other operation.
+		locks.lock_all();
 		try {
+			if (users_backup_valid) return 0;
+
+			// 2. Try to save the users to the users file.
 			users.JSON_write(users_file_path);
+
+			// 3. Mark the users backup as valid.
+			users_backup_valid = true;
 		} catch (IOException e) {
 			e.printStackTrace();
-			users_R_lock.unlock();
 			return -1;
+		} finally {
+			locks.unlock_all();
 		}
 
-		users_R_lock.unlock();
 		return 0;
 	}
 
-	private void lock_both_R() {
-		users_R_lock.lock();
-		posts_R_lock.lock();
-	}
-
-	private void unlock_both_R() {
-		posts_R_lock.unlock();
-		users_R_lock.unlock();
-	}
-
-	private void lock_both_W() {
-		users_W_lock.lock();
-		posts_W_lock.lock();
-	}
-
-	private void unlock_both_W() {
-		posts_W_lock.unlock();
-		users_W_lock.unlock();
-	}
-
 	// Public Methods
 
 	/**
@@ -273,28 +296,31 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 		 *
 		 * 1. If the database is not initialized, throw an exception.
 		 * 2. If the username already exists in the database, throw an exception.
-		 * 3. Create the new user.
+		 * 3. Create the new user (only if no other user with the same username has been created meanwhile).
 		 * 4. Dirty the users backup.
+		 * 5. Invalidate every recommendation (the new user may be recommended to anyone).
 		 */
 
 		// 1. If the database is not initialized, throw an exception.
 		if (!initialized)
 			throw new WinsomeDB_Exception.DatabaseNotInitialized();
 
-		users_W_lock.lock();
-		// 2. If the username already exists in the database, throw an exception.
-		if (users.containsKey(username)) {
-			users_W_lock.unlock();
-			throw new WinsomeDB_Exception.UsernameAlreadyExists();
-		}
-
-		// 3. Create the new user.
-		users.put(username, new UserDB(username, password, tags));
+		// the new user is not reachable by the other operations until it is added, only the global lock is needed
+		locks.lock();
+		try {
+			// 2. If the username already exists in the database, throw an exception.
+			// 3. Create the new user.
+			if (users.add_user(username, password, tags) == null)
+				throw new WinsomeDB_Exception.UsernameAlreadyExists();
 
-		// 4. Dirty the users backup.
-		users_backup_valid = false;
+			// 4. Dirty the users backup.
+			users_backup_valid = false;
+		} finally {
+			locks.unlock();
+		}
 
-		users_W_lock.unlock();
+		// 5. Invalidate every recommendation (the new user may be recommended to anyone).
+		recommendations.invalidate_all();
 	}
 
 	/**
@@ -320,18 +346,19 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 		if (!initialized)
 			throw new WinsomeDB_Exception.DatabaseNotInitialized();
 
-		users_R_lock.lock();
 		// 2. If the username is not found in the database, throw an exception.
-		if (!users.containsKey(username)) {
-			users_R_lock.unlock();
+		UserDB user = users.get(username);
+		if (user == null)
 			throw new WinsomeDB_Exception.UsernameNotFound(username);
-		}
 
-		// 3. Check if the password is correct.
-		boolean res = users.get(username).getPassword().equals(password);
-		users_R_lock.unlock();
-
-		return res;
+		Lock[] held = locks.users(false, user.get_id());
+		locks.lock(held);
+		try {
+			// 3. Check if the password is correct.
+			return user.getPassword().equals(password);
+		} finally {
+			locks.unlock(held);
+		}
 	}
 
 	/**
@@ -354,52 +381,127 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 		 * 4. If the user already follows the user to follow, throw an exception.
 		 * 5. If the user to follow is the user, throw an exception.
 		 * 6. Make the user follow the user to follow.
-		 * 7. Add the user to the <username_to_follow> followers.
+		 * 7. Add the user to the <username_to_follow> followers (and the posts of <username_to_follow> to the user's timeline).
 		 * 8. Dirty the users backup.
+		 * 9. Invalidate the recommendations that depend on the users followed by the user.
 		 */
 
 		// 1. If the database is not initialized, throw an exception.
 		if (!initialized)
 			throw new WinsomeDB_Exception.DatabaseNotInitialized();
 
-		users_W_lock.lock();
 		// 2. If the username is not found in the database, throw an exception.
-		if (!users.containsKey(username)) {
-			users_W_lock.unlock();
+		// (the users are never removed, so they can be looked up before locking them)
+		UserDB user = users.get(username);
+		if (user == null)
 			throw new WinsomeDB_Exception.UsernameNotFound(username);
-		}
 
 		// 3. If the username to follow is not found in the database, throw an exception.
-		if (!users.containsKey(username_to_follow)) {
-			users_W_lock.unlock();
+		UserDB followed = users.get(username_to_follow);
+		if (followed == null)
 			throw new WinsomeDB_Exception.UsernameNotFound(username_to_follow);
-		}
 
-		// 4. If the user already follows the user to follow, throw an exception.
-		if (users.get(username).getFollowing().contains(username_to_follow)) {
+		// both the users are modified, their stripes are read-locked (in stripe order) for the checks
+		// and converted to write locks for the update
+		WinsomeDB_Locks.Upgradable held = locks.upgradable(new int[]{user.get_id(), followed.get_id()}, new long[0]);
+		try {
+			do {
+				// 4. If the user already follows the user to follow, throw an exception.
+				if (user.following_ids().contains(followed.get_id()))
+					throw new WinsomeDB_Exception.UsernameAlreadyFollows(username, username_to_follow);
 
-			System.out.println("follow_DB: 5");
+				// 5. If the user to follow is the user, throw an exception.
+				if (user == followed)
+					throw new WinsomeDB_Exception.UsernameFollowItself(username);
+			} while (!held.upgrade());
 
-			users_W_lock.unlock();
-			throw new WinsomeDB_Exception.UsernameAlreadyFollows(username, username_to_follow);
-		}
+			// 6. Make the user follow the user to follow.
+			user.add_following(followed.get_id());
+
+			// 7. Add the user to the <username_to_follow> followers (and the posts of <username_to_follow> to the user's timeline).
+			follow_timeline(user, followed, followed.add_follower(user.get_id()));
+
+			// 8. Dirty the users backup.
+			users_backup_valid = false;
 
-		// 5. If the user to follow is the user, throw an exception.
-		if (username.equals(username_to_follow)) {
-			users_W_lock.unlock();
-			throw new WinsomeDB_Exception.UsernameFollowItself(username);
+			// 9. Invalidate the recommendations that depend on the users followed by the user.
+			invalidate_recommendations(user);
+		} finally {
+			held.release();
 		}
+	}
+
+	/**
+	 * This method makes a user follow more users, the locks of all the users involved are taken once for the whole batch.
+	 *
+	 * @param username            The username of the user that wants to follow.
+	 * @param usernames_to_follow The usernames of the users to follow.
+	 * @return for each user to follow, null if the user is now followed, the exception that user_follows would have thrown otherwise.
+	 * @throws WinsomeDB_Exception.UsernameNotFound       if the username is not found in the database.
+	 * @throws WinsomeDB_Exception.DatabaseNotInitialized if the database is not initialized.
+	 */
+	@Override
+	public WinsomeException[] user_follows_many(String username, String[] usernames_to_follow) throws WinsomeDB_Exception.UsernameNotFound, WinsomeDB_Exception.DatabaseNotInitialized {
+		/*
+		 * This method makes a user follow more users.
+		 *
+		 * 1. If the database is not initialized, throw an exception.
+		 * 2. If the username is not found in the database, throw an exception.
+		 * 3. For each user to follow, do the checks of user_follows and make the user follow it.
+		 * 4. Dirty the users backup and invalidate the recommendations (if something changed).
+		 */
 
-		// 6. Make the user follow the user to follow.
-		users.get(username).getFollowing().add(username_to_follow);
+		// 1. If the database is not initialized, throw an exception.
+		if (!initialized)
+			throw new WinsomeDB_Exception.DatabaseNotInitialized();
 
-		// 7. Add the user to the <username_to_follow> followers.
-		users.get(username_to_follow).getFollowers().add(username);
+		// 2. If the username is not found in the database, throw an exception.
+		UserDB user = users.get(username);
+		if (user == null)
+			throw new WinsomeDB_Exception.UsernameNotFound(username);
 
-		// 8. Dirty the users backup.
-		users_backup_valid = false;
+		WinsomeException[] errors = new WinsomeException[usernames_to_follow.length];
+		UserDB[] followed = new UserDB[usernames_to_follow.length];
+		int[] involved = new int[usernames_to_follow.length + 1];
+		int n = 0;
+		involved[n++] = user.get_id();
+		for (int i = 0; i < usernames_to_follow.length; i++) {
+			followed[i] = users.get(usernames_to_follow[i]);
+			if (followed[i] == null)
+				errors[i] = new WinsomeDB_Exception.UsernameNotFound(usernames_to_follow[i]);
+			else
+				involved[n++] = followed[i].get_id();
+		}
+		boolean changed = false;
 
-		users_W_lock.unlock();
+		Lock[] held = locks.users(true, Arrays.copyOf(involved, n));
+		locks.lock(held);
+		try {
+			// 3. For each user to follow, do the checks of user_follows and make the user follow it.
+			for (int i = 0; i < usernames_to_follow.length; i++) {
+				if (followed[i] == null)
+					continue;
+				if (user.following_ids().contains(followed[i].get_id()))
+					errors[i] = new WinsomeDB_Exception.UsernameAlreadyFollows(username, usernames_to_follow[i]);
+				else if (user == followed[i])
+					errors[i] = new WinsomeDB_Exception.UsernameFollowItself(username);
+				else {
+					user.add_following(followed[i].get_id());
+					follow_timeline(user, followed[i], followed[i].add_follower(user.get_id()));
+					changed = true;
+				}
+			}
+
+			// 4. Dirty the users backup and invalidate the recommendations (if something changed).
+			if (changed) {
+				users_backup_valid = false;
+				invalidate_recommendations(user);
+			}
+		} finally {
+			locks.unlock(held);
+		}
+
+		return errors;
 	}
 
 	/**
@@ -420,37 +522,50 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 		 * 2. If the username is not found in the database, throw an exception.
 		 * 3. If the user is not following the user to unfollow, throw an exception.
 		 * 4. Make the user unfollow the user to unfollow.
-		 * 5. Remove the user from the <username_to_unfollow> followers.
+		 * 5. Remove the user from the <username_to_unfollow> followers (and build the user's timeline again).
 		 * 6. Dirty the users backup.
+		 * 7. Invalidate the recommendations that depend on the users followed by the user.
 		 */
 
 		// 1. If the database is not initialized, throw an exception.
 		if (!initialized)
 			throw new WinsomeDB_Exception.DatabaseNotInitialized();
 
-		users_W_lock.lock();
 		// 2. If the username is not found in the database, throw an exception.
-		if (!users.containsKey(username)) {
-			users_W_lock.unlock();
+		UserDB user = users.get(username);
+		if (user == null)
 			throw new WinsomeDB_Exception.UsernameNotFound(username);
-		}
 
-		// 3. If the user is not following the user to unfollow, throw an exception.
-		if (!users.get(username).getFollowing().contains(username_to_unfollow)) {
-			users_W_lock.unlock();
+		// (a user that does not exist can not be followed)
+		UserDB unfollowed = users.get(username_to_unfollow);
+		if (unfollowed == null)
 			throw new WinsomeDB_Exception.UsernameNotFollowing(username, username_to_unfollow);
-		}
 
-		// 4. Make the user unfollow the user to unfollow.
-		users.get(username).getFollowing().remove(username_to_unfollow);
+		// both the users are modified, their stripes are read-locked (in stripe order) for the checks
+		// and converted to write locks for the update
+		WinsomeDB_Locks.Upgradable held = locks.upgradable(new int[]{user.get_id(), unfollowed.get_id()}, new long[0]);
+		try {
+			do {
+				// 3. If the user is not following the user to unfollow, throw an exception.
+				if (!user.following_ids().contains(unfollowed.get_id()))
+					throw new WinsomeDB_Exception.UsernameNotFollowing(username, username_to_unfollow);
+			} while (!held.upgrade());
+
+			// 4. Make the user unfollow the user to unfollow.
+			user.remove_following(unfollowed.get_id());
 
-		// 5. Remove the user from the <username_to_unfollow> followers.
-		users.get(username_to_unfollow).getFollowers().remove(username);
+			// 5. Remove the user from the <username_to_unfollow> followers (and build the user's timeline again).
+			unfollowed.remove_follower(user.get_id());
+			user.timeline().reset();
 
-		// 6. Dirty the users backup.
-		users_backup_valid = false;
+			// 6. Dirty the users backup.
+			users_backup_valid = false;
 
-		users_W_lock.unlock();
+			// 7. Invalidate the recommendations that depend on the users followed by the user.
+			invalidate_recommendations(user);
+		} finally {
+			held.release();
+		}
 	}
 
 	/**
@@ -475,18 +590,19 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 		if (!initialized)
 			throw new WinsomeDB_Exception.DatabaseNotInitialized();
 
-		users_R_lock.lock();
 		// 2. If the username is not found in the database, throw an exception.
-		if (!users.containsKey(username)) {
-			users_R_lock.unlock();
+		UserDB user = users.get(username);
+		if (user == null)
 			throw new WinsomeDB_Exception.UsernameNotFound(username);
-		}
-
-		// 3. Return the followers list.
-		String[] res = users.get(username).getFollowers().toArray(new String[0]);
-		users_R_lock.unlock();
 
-		return res;
+		Lock[] held = locks.users(false, user.get_id());
+		locks.lock(held);
+		try {
+			// 3. Return the followers list.
+			return users.usernames_of(user.follower_ids().to_array());
+		} finally {
+			locks.unlock(held);
+		}
 	}
 
 	/**
@@ -511,18 +627,19 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 		if (!initialized)
 			throw new WinsomeDB_Exception.DatabaseNotInitialized();
 
-		users_R_lock.lock();
 		// 2. If the username is not found in the database, throw an exception.
-		if (!users.containsKey(username)) {
-			users_R_lock.unlock();
+		UserDB user = users.get(username);
+		if (user == null)
 			throw new WinsomeDB_Exception.UsernameNotFound(username);
-		}
-
-		// 3. Return the following list.
-		String[] res = users.get(username).getFollowing().toArray(new String[0]);
-		users_R_lock.unlock();
 
-		return res;
+		Lock[] held = locks.users(false, user.get_id());
+		locks.lock(held);
+		try {
+			// 3. Return the following list.
+			return users.usernames_of(user.following_ids().to_array());
+		} finally {
+			locks.unlock(held);
+		}
 	}
 
 	/**
@@ -547,17 +664,19 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 		if (!initialized)
 			throw new WinsomeDB_Exception.DatabaseNotInitialized();
 
-		users_R_lock.lock();
 		// 2. If the username is not found in the database, throw an exception.
-		if (!users.containsKey(username)) {
-			users_R_lock.unlock();
+		UserDB user = users.get(username);
+		if (user == null)
 			throw new WinsomeDB_Exception.UsernameNotFound(username);
-		}
-		// 3. Return the wallet.
-		WalletRepr res = users.get(username).getWallet().representation();
-		users_R_lock.unlock();
 
-		return res;
+		Lock[] held = locks.users(false, user.get_id());
+		locks.lock(held);
+		try {
+			// 3. Return the wallet.
+			return user.getWallet().representation();
+		} finally {
+			locks.unlock(held);
+		}
 	}
 
 	/**
@@ -597,6 +716,7 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 		 * 6. Add the post to the author's posts.
 		 * 7. Dirty the posts backup.
 		 * 8. Dirty the users backup.
+		 * 9. Add the post to the timelines of the author's followers.
 		 */
 
 		// 1. If the database is not initialized, throw an exception.
@@ -604,12 +724,9 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 			throw new WinsomeDB_Exception.DatabaseNotInitialized();
 
 		// 2. If the username is not found in the database, throw an exception.
-		users_R_lock.lock();
-		if (!users.containsKey(author)) {
-			users_R_lock.unlock();
+		UserDB user = users.get(author);
+		if (user == null)
 			throw new WinsomeDB_Exception.UsernameNotFound(author);
-		}
-		users_R_lock.unlock();
 
 		// 3. If the title is invalid, throw an exception.
 		if (title == null || title.length() == 0 || title.length() > PostDB.TITLE_MAX_LENGTH)
@@ -619,21 +736,28 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 		if (content == null || content.length() == 0 || content.length() > PostDB.CONTENT_MAX_LENGTH)
 			throw new WinsomeDB_Exception.PostInvalidContent(content);
 
-		users_W_lock.lock();
-		posts_W_lock.lock();
-		// 5. Create a new post and add it to the database.
-		posts.add_post(author, title, content);
+		// only the author is locked: the new post gets a fresh id, no other operation can reach it
+		// before it is added to the posts (and the table publishes it safely)
+		Lock[] held = locks.users(true, user.get_id());
+		locks.lock(held);
+		try {
+			// 5. Create a new post and add it to the database.
+			long post_id = posts.add_post(author, title, content);
 
-		// 6. Add the post to the author's posts.
-		users.get(author).getPosts().add(posts.getLast_post_id());
+			// 6. Add the post to the author's posts.
+			user.add_post(post_id);
 
-		// 8. Dirty the posts backup.
-		posts_backup_valid = false;
+			// 7. Dirty the posts backup.
+			posts_backup_valid = false;
 
-		// 9. Dirty the users backup.
-		users_backup_valid = false;
-		posts_W_lock.unlock();
-		users_W_lock.unlock();
+			// 8. Dirty the users backup.
+			users_backup_valid = false;
+
+			// 9. Add the post to the timelines of the author's followers.
+			fan_out(user, post_id);
+		} finally {
+			locks.unlock(held);
+		}
 	}
 
 	/**
@@ -662,56 +786,70 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 		 * 7. Remove the post from the user's posts.
 		 * 8. Dirty the posts backup.
 		 * 9. Dirty the users backup.
+		 * 10. Remove the post from the timelines of the user's followers.
 		 */
 
 		// 1. If the database is not initialized, throw an exception.
 		if (!initialized)
 			throw new WinsomeDB_Exception.DatabaseNotInitialized();
 
-		lock_both_R();
-
 		// 2. If the username is not found in the database, throw an exception.
-		if (!users.containsKey(username)) {
-			users_R_lock.unlock();
+		UserDB user = users.get(username);
+		if (user == null)
 			throw new WinsomeDB_Exception.UsernameNotFound(username);
-		}
 
-		// 3. If the post is not found in the database, throw an exception.
-		if (!posts.getPosts().containsKey(post_id)) {
-			posts_R_lock.unlock();
+		long id = WinsomeDB_Posts.parse_id(post_id);
+		if (id < 0)
 			throw new WinsomeDB_Exception.PostNotFound(post_id);
-		}
-
-		unlock_both_R();
 
-		lock_both_W();
-
-		// 4. If the post is not in the user's blog, throw an exception.
-		if (!users.get(username).getPosts().contains(post_id)) {
-			unlock_both_W();
-			throw new WinsomeDB_Exception.PostNotInBlog(username, post_id);
-		}
-
-		// 5. If the user is not the author of the post remove it from the user's blog and return.
-		if (!posts.getPosts().get(post_id).getAuthor().equals(username)) {
-			users.get(username).getPosts().remove(post_id);
-			unlock_both_W();
-			return;
-		}
+		// the stripes of the user and of the post are read-locked (user before post) for the checks
+		// and converted to write locks for the removal
+		WinsomeDB_Locks.Upgradable held = locks.upgradable(new int[]{user.get_id()}, new long[]{id});
+		try {
+			PostDB post;
+			do {
+				// 3. If the post is not found in the database, throw an exception.
+				post = posts.get_post(id);
+				if (post == null)
+					throw new WinsomeDB_Exception.PostNotFound(post_id);
+
+				// 4. If the post is not in the user's blog, throw an exception.
+				if (!user.post_ids().contains(id))
+					throw new WinsomeDB_Exception.PostNotInBlog(username, post_id);
+			} while (!held.upgrade());
+
+			// 5. If the user is not the author of the post remove it from the user's blog and return.
+			// (the post may still be in the feed of a follower through another user, so the timelines are built again;
+			// also if the user is a celebrity, the timelines may hold the rewins it made before becoming one)
+			if (!post.getAuthor().equals(username)) {
+				user.remove_post(id);
+				post.remove_rewinner(user.get_id());
+				users_backup_valid = false;
+				for (int follower : user.follower_ids().to_array())
+					users.get_by_id(follower).timeline().reset();
+				return;
+			}
 
-		// 6. Remove the post from the database.
-		posts.getPosts().remove(post_id);
+			// 6. Remove the post from the database.
+			posts.remove_post(id, username);
 
-		// 7. Remove the post from the user's posts.
-		users.get(username).getPosts().remove(post_id);
+			// 7. Remove the post from the user's posts.
+			user.remove_post(id);
 
-		// 8. Dirty the posts backup.
-		posts_backup_valid = false;
+			// 8. Dirty the posts backup.
+			posts_backup_valid = false;
 
-		// 9. Dirty the users backup.
-		users_backup_valid = false;
+			// 9. Dirty the users backup.
+			users_backup_valid = false;
 
-		unlock_both_W();
+			// 10. Remove the post from the timelines of the user's followers.
+			// (the timelines of the followers of the rewinners skip it when the feed is read)
+			if (!user.celebrity())
+				for (int follower : user.follower_ids().to_array())
+					users.get_by_id(follower).timeline().remove(id);
+		} finally {
+			held.release();
+		}
 	}
 
 	/**
@@ -736,24 +874,25 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 		if (!initialized)
 			throw new WinsomeDB_Exception.DatabaseNotInitialized();
 
-		posts_R_lock.lock();
-
-		// 2. If the post is not found in the database, throw an exception.
-		if (!posts.getPosts().containsKey(post_id)) {
-			posts_R_lock.unlock();
-			throw new WinsomeDB_Exception.PostNotFound(post_id);
+		long id = WinsomeDB_Posts.parse_id(post_id);
+		Lock[] held = locks.posts(false, id);
+		locks.lock(held);
+		try {
+			// 2. If the post is not found in the database, throw an exception.
+			PostDB post = posts.get_post(id);
+			if (post == null)
+				throw new WinsomeDB_Exception.PostNotFound(post_id);
+
+			// 3. Get the post's rates.
+			ArrayList<RateDB> rates = post.getRates();
+			boolean[] res = new boolean[rates.size()];
+			for (int i = 0; i < rates.size(); i++)
+				res[i] = rates.get(i).getRate();
+
+			return res;
+		} finally {
+			locks.unlock(held);
 		}
-
-		// 3. Get the post's rates.
-		ArrayList<RateDB> rates = posts.getPosts().get(post_id).getRates();
-
-		posts_R_lock.unlock();
-
-		boolean[] res = new boolean[rates.size()];
-		for (int i = 0; i < rates.size(); i++)
-			res[i] = rates.get(i).getRate();
-
-		return res;
 	}
 
 	/**
@@ -778,24 +917,25 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 		if (!initialized)
 			throw new WinsomeDB_Exception.DatabaseNotInitialized();
 
-		posts_R_lock.lock();
-
-		// 2. If the post is not found in the database, throw an exception.
-		if (!posts.getPosts().containsKey(post_id)) {
-			posts_R_lock.unlock();
-			throw new WinsomeDB_Exception.PostNotFound(post_id);
+		long id = WinsomeDB_Posts.parse_id(post_id);
+		Lock[] held = locks.posts(false, id);
+		locks.lock(held);
+		try {
+			// 2. If the post is not found in the database, throw an exception.
+			PostDB post = posts.get_post(id);
+			if (post == null)
+				throw new WinsomeDB_Exception.PostNotFound(post_id);
+
+			// 3. Get the post's comments.
+			ArrayList<Comment_DB> comments = post.getComments();
+			CommentRepr[] res = new CommentRepr[comments.size()];
+			for (int i = 0; i < comments.size(); i++)
+				res[i] = comments.get(i).representation();
+
+			return res;
+		} finally {
+			locks.unlock(held);
 		}
-
-		// 3. Get the post's comments.
-		ArrayList<Comment_DB> comments = posts.getPosts().get(post_id).getComments();
-
-		posts_R_lock.unlock();
-
-		CommentRepr[] res = new CommentRepr[comments.size()];
-		for (int i = 0; i < comments.size(); i++)
-			res[i] = comments.get(i).representation();
-
-		return res;
 	}
 
 	/**
@@ -827,46 +967,109 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 		if (!initialized)
 			throw new WinsomeDB_Exception.DatabaseNotInitialized();
 
-		lock_both_R();
-
 		// 2. If the username is not found in the database, throw an exception.
-		if (!users.containsKey(username)) {
-			unlock_both_R();
+		// (the users are never removed, so the user does not need to be locked)
+		if (!users.containsKey(username))
 			throw new WinsomeDB_Exception.UsernameNotFound(username);
-		}
 
-		// 3. If the post is not found in the database, throw an exception.
-		if (!posts.getPosts().containsKey(post_id)) {
-			unlock_both_R();
+		long id = WinsomeDB_Posts.parse_id(post_id);
+		if (id < 0)
 			throw new WinsomeDB_Exception.PostNotFound(post_id);
-		}
 
-		// 4. If the user has already rated the post, throw an exception.
-		ArrayList<RateDB> rates = posts.getPosts().get(post_id).getRates();
-		for (RateDB r : rates) {
-			if (r.getAuthor().equals(username)) {
-				unlock_both_R();
-				throw new WinsomeDB_Exception.PostAlreadyRated(username, post_id);
-			}
+		// the stripe of the post is read-locked for the checks and converted to a write lock for the update,
+		// so two concurrent rates of the same user can not both pass the checks
+		WinsomeDB_Locks.Upgradable held = locks.upgradable(new int[0], new long[]{id});
+		try {
+			PostDB post;
+			do {
+				// 3. If the post is not found in the database, throw an exception.
+				post = posts.get_post(id);
+				if (post == null)
+					throw new WinsomeDB_Exception.PostNotFound(post_id);
+
+				// 4. If the user has already rated the post, throw an exception.
+				if (post.has_vote_from(username))
+					throw new WinsomeDB_Exception.PostAlreadyRated(username, post_id);
+
+				// 5. If the user is the author of the post, throw an exception.
+				if (post.getAuthor().equals(username))
+					throw new WinsomeDB_Exception.PostRatedByAuthor(username, post_id);
+			} while (!held.upgrade());
+
+			// 6. Add the rate to the post (it is rewarded in the next reward cycle).
+			post.addVote(new RateDB(username, rate));
+			activity.add(id);
+
+			// 7. Dirty the posts backup.
+			posts_backup_valid = false;
+		} finally {
+			held.release();
 		}
+	}
 
-		// 5. If the user is the author of the post, throw an exception.
-		if (posts.getPosts().get(post_id).getAuthor().equals(username)) {
-			unlock_both_R();
-			throw new WinsomeDB_Exception.PostRatedByAuthor(username, post_id);
-		}
+	/**
+	 * This method is used to like/dislike more posts, the locks of all the posts are taken once for the whole batch.
+	 *
+	 * @param username The username of the user who wants to rate the posts.
+	 * @param post_ids The ids of the posts to rate.
+	 * @param rates    The rates of the user to the posts (same length of post_ids).
+	 * @return for each post, null if the rate has been added, the exception that rate_post would have thrown otherwise.
+	 * @throws WinsomeDB_Exception.UsernameNotFound       if the username is not found in the database.
+	 * @throws WinsomeDB_Exception.DatabaseNotInitialized if the database is not initialized.
+	 */
+	@Override
+	public WinsomeException[] rate_posts(String username, String[] post_ids, boolean[] rates) throws WinsomeDB_Exception.UsernameNotFound, WinsomeDB_Exception.DatabaseNotInitialized {
+		/*
+		 * This method is used to like/dislike more posts.
+		 *
+		 * 1. If the database is not initialized, throw an exception.
+		 * 2. If the username is not found in the database, throw an exception.
+		 * 3. For each post, do the checks of rate_post and add the rate.
+		 *    (the checks and the update are done under the same write lock)
+		 * 4. Dirty the posts backup (if something changed).
+		 */
 
-		unlock_both_R();
+		// 1. If the database is not initialized, throw an exception.
+		if (!initialized)
+			throw new WinsomeDB_Exception.DatabaseNotInitialized();
+
+		// 2. If the username is not found in the database, throw an exception.
+		if (!users.containsKey(username))
+			throw new WinsomeDB_Exception.UsernameNotFound(username);
 
-		lock_both_W();
+		WinsomeException[] errors = new WinsomeException[post_ids.length];
+		long[] ids = new long[post_ids.length];
+		for (int i = 0; i < post_ids.length; i++)
+			ids[i] = WinsomeDB_Posts.parse_id(post_ids[i]);
+		boolean changed = false;
 
-		// 6. Add the rate to the post.
-		posts.getPosts().get(post_id).addVote(new RateDB(username, rate));
+		Lock[] held = locks.posts(true, ids);
+		locks.lock(held);
+		try {
+			// 3. For each post, do the checks of rate_post and add the rate.
+			for (int i = 0; i < post_ids.length; i++) {
+				PostDB post = posts.get_post(ids[i]);
+				if (post == null)
+					errors[i] = new WinsomeDB_Exception.PostNotFound(post_ids[i]);
+				else if (post.has_vote_from(username))
+					errors[i] = new WinsomeDB_Exception.PostAlreadyRated(username, post_ids[i]);
+				else if (post.getAuthor().equals(username))
+					errors[i] = new WinsomeDB_Exception.PostRatedByAuthor(username, post_ids[i]);
+				else {
+					post.addVote(new RateDB(username, rates[i]));
+					activity.add(ids[i]);
+					changed = true;
+				}
+			}
 
-		// 7. Dirty the posts backup.
-		posts_backup_valid = false;
+			// 4. Dirty the posts backup (if something changed).
+			if (changed)
+				posts_backup_valid = false;
+		} finally {
+			locks.unlock(held);
+		}
 
-		unlock_both_W();
+		return errors;
 	}
 
 	/**
@@ -897,37 +1100,39 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 		if (!initialized)
 			throw new WinsomeDB_Exception.DatabaseNotInitialized();
 
-		lock_both_R();
-
 		// 2. If the username is not found in the database, throw an exception.
-		if (!users.containsKey(username)) {
-			unlock_both_R();
+		// (the users are never removed, so the user does not need to be locked)
+		if (!users.containsKey(username))
 			throw new WinsomeDB_Exception.UsernameNotFound(username);
-		}
 
-		// 3. If the post is not found in the database, throw an exception.
-		if (!posts.getPosts().containsKey(post_id)) {
-			unlock_both_R();
+		long id = WinsomeDB_Posts.parse_id(post_id);
+		if (id < 0)
 			throw new WinsomeDB_Exception.PostNotFound(post_id);
-		}
 
-		// 4. If the user is the author of the post, throw an exception.
-		if (posts.getPosts().get(post_id).getAuthor().equals(username)) {
-			unlock_both_R();
-			throw new WinsomeDB_Exception.PostCommentedByAuthor(username, post_id);
+		// the stripe of the post is read-locked for the checks and converted to a write lock for the update
+		WinsomeDB_Locks.Upgradable held = locks.upgradable(new int[0], new long[]{id});
+		try {
+			PostDB post;
+			do {
+				// 3. If the post is not found in the database, throw an exception.
+				post = posts.get_post(id);
+				if (post == null)
+					throw new WinsomeDB_Exception.PostNotFound(post_id);
+
+				// 4. If the user is the author of the post, throw an exception.
+				if (post.getAuthor().equals(username))
+					throw new WinsomeDB_Exception.PostCommentedByAuthor(username, post_id);
+			} while (!held.upgrade());
+
+			// 5. Add the comment to the post (it is rewarded in the next reward cycle).
+			post.addComment(new Comment_DB(username, comment));
+			activity.add(id);
+
+			// 6. Dirty the posts backup.
+			posts_backup_valid = false;
+		} finally {
+			held.release();
 		}
-
-		unlock_both_R();
-
-		posts_W_lock.lock();
-
-		// 5. Add the comment to the post.
-		posts.getPosts().get(post_id).addComment(new Comment_DB(username, comment));
-
-		// 6. Dirty the posts backup.
-		posts_backup_valid = false;
-
-		posts_W_lock.unlock();
 	}
 
 	/**
@@ -946,45 +1151,52 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 		 * 2. If the username is not found in the database, throw an exception.
 		 * 3. If the post is not found in the database, throw an exception.
 		 * 4. If the post is already posted by the user, throw an exception.
-		 * 5. Add the post to the user's blog.
-		 * 6. Dirty the posts backup.
+		 * 5. Add the post to the user's blog (and the user to the rewinners of the post).
+		 * 6. Dirty the users backup.
+		 * 7. Add the post to the timelines of the user's followers.
 		 */
 
 		// 1. If the database is not initialized, throw an exception.
 		if (!initialized)
 			throw new WinsomeDB_Exception.DatabaseNotInitialized();
 
-		lock_both_R();
-
 		// 2. If the username is not found in the database, throw an exception.
-		if (!users.containsKey(username)) {
-			unlock_both_R();
+		UserDB user = users.get(username);
+		if (user == null)
 			throw new WinsomeDB_Exception.UsernameNotFound(username);
-		}
 
-		// 3. If the post is not found in the database, throw an exception.
-		if (!posts.getPosts().containsKey(postId)) {
-			unlock_both_R();
+		long id = WinsomeDB_Posts.parse_id(postId);
+		if (id < 0)
 			throw new WinsomeDB_Exception.PostNotFound(postId);
-		}
-
-		// 4. If the post is already posted by the user, throw an exception.
-		if (users.get(username).getPosts().contains(postId)) {
-			unlock_both_R();
-			throw new WinsomeDB_Exception.PostAlreadyRewined(username, postId);
-		}
 
-		unlock_both_R();
-
-		lock_both_W();
-
-		// 5. Add the post to the user's blog.
-		users.get(username).getPosts().add(postId);
-
-		// 6. Dirty the users backup.
-		users_backup_valid = false;
+		// the stripes of the user and of the post are read-locked (user before post) for the checks
+		// and converted to write locks for the update (so the post can not be removed meanwhile)
+		WinsomeDB_Locks.Upgradable held = locks.upgradable(new int[]{user.get_id()}, new long[]{id});
+		try {
+			PostDB post;
+			do {
+				// 3. If the post is not found in the database, throw an exception.
+				post = posts.get_post(id);
+				if (post == null)
+					throw new WinsomeDB_Exception.PostNotFound(postId);
+
+				// 4. If the post is already posted by the user, throw an exception.
+				if (user.post_ids().contains(id))
+					throw new WinsomeDB_Exception.PostAlreadyRewined(username, postId);
+			} while (!held.upgrade());
+
+			// 5. Add the post to the user's blog (and the user to the rewinners of the post).
+			user.add_post(id);
+			post.add_rewinner(user.get_id());
+
+			// 6. Dirty the users backup.
+			users_backup_valid = false;
 
-		unlock_both_W();
+			// 7. Add the post to the timelines of the user's followers.
+			fan_out(user, id);
+		} finally {
+			held.release();
+		}
 	}
 
 	/**
@@ -1009,20 +1221,40 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 		if (!initialized)
 			throw new WinsomeDB_Exception.DatabaseNotInitialized();
 
-		posts_R_lock.lock();
-
-		// 2. If the post is not found in the database, throw an exception.
-		if (!posts.getPosts().containsKey(post_id)) {
-			posts_R_lock.unlock();
+		long id = WinsomeDB_Posts.parse_id(post_id);
+		if (id < 0)
 			throw new WinsomeDB_Exception.PostNotFound(post_id);
-		}
-
-		// 3. Return the post's simple representation.
-		PostReprSimple ret = posts.getPosts().get(post_id).representation_simple();
 
-		posts_R_lock.unlock();
+		// try an optimistic read first, the post is read again under the read lock only if a writer has modified it
+		WinsomeDB_Locks.Optimistic read = locks.optimistic();
+		try {
+			read.post(id);
+			PostDB post = posts.get_post(id);
+			PostReprSimple ret = post != null ? post.representation_simple() : null;
+			if (read.validate()) {
+				// 2. If the post is not found in the database, throw an exception.
+				if (ret == null)
+					throw new WinsomeDB_Exception.PostNotFound(post_id);
+				// 3. Return the post's simple representation.
+				return ret;
+			}
+		} catch (RuntimeException ignored) {
+			// the post was being modified, read it again under the read lock
+		}
 
-		return ret;
+		Lock[] held = locks.posts(false, id);
+		locks.lock(held);
+		try {
+			// 2. If the post is not found in the database, throw an exception.
+			PostDB post = posts.get_post(id);
+			if (post == null)
+				throw new WinsomeDB_Exception.PostNotFound(post_id);
+
+			// 3. Return the post's simple representation.
+			return post.representation_simple();
+		} finally {
+			locks.unlock(held);
+		}
 	}
 
 	/**
@@ -1047,18 +1279,79 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 		if (!initialized)
 			throw new WinsomeDB_Exception.DatabaseNotInitialized();
 
-		posts_R_lock.lock();
-
-		// 2. If the post is not found in the database, throw an exception.
-		if (!posts.getPosts().containsKey(post_id)) {
-			posts_R_lock.unlock();
+		long id = WinsomeDB_Posts.parse_id(post_id);
+		if (id < 0)
 			throw new WinsomeDB_Exception.PostNotFound(post_id);
+
+		// try an optimistic read first, the post is read again under the read lock only if a writer has modified it
+		WinsomeDB_Locks.Optimistic read = locks.optimistic();
+		try {
+			read.post(id);
+			PostDB post = posts.get_post(id);
+			PostReprDetailed ret = post != null ? post.representation_detailed() : null;
+			if (read.validate()) {
+				// 2. If the post is not found in the database, throw an exception.
+				if (ret == null)
+					throw new WinsomeDB_Exception.PostNotFound(post_id);
+				// 3. Return the post's full representation.
+				return ret;
+			}
+		} catch (RuntimeException ignored) {
+			// the post was being modified, read it again under the read lock
 		}
 
-		// 3. Return the post's full representation.
-		PostReprDetailed ret = posts.getPosts().get(post_id).representation_detailed();
+		Lock[] held = locks.posts(false, id);
+		locks.lock(held);
+		try {
+			// 2. If the post is not found in the database, throw an exception.
+			PostDB post = posts.get_post(id);
+			if (post == null)
+				throw new WinsomeDB_Exception.PostNotFound(post_id);
+
+			// 3. Return the post's full representation.
+			return post.representation_detailed();
+		} finally {
+			locks.unlock(held);
+		}
+	}
+
+	/**
+	 * This method is used to get the full representation of more posts, the locks of the posts are taken once.
+	 *
+	 * @param post_ids the ids of the posts.
+	 * @return the representations of the posts, in the same order of the ids (null if a post is not found).
+	 * @throws WinsomeDB_Exception.DatabaseNotInitialized if the database is not initialized.
+	 */
+	@Override
+	public PostReprDetailed[] get_posts(String[] post_ids) throws WinsomeDB_Exception.DatabaseNotInitialized {
+		/*
+		 * This method is used to get more posts' full representations.
+		 *
+		 * 1. If the database is not initialized, throw an exception.
+		 * 2. Get the full representation of every post found.
+		 */
+
+		// 1. If the database is not initialized, throw an exception.
+		if (!initialized)
+			throw new WinsomeDB_Exception.DatabaseNotInitialized();
+
+		PostReprDetailed[] ret = new PostReprDetailed[post_ids.length];
+		long[] ids = new long[post_ids.length];
+		for (int i = 0; i < post_ids.length; i++)
+			ids[i] = WinsomeDB_Posts.parse_id(post_ids[i]);
 
-		posts_R_lock.unlock();
+		Lock[] held = locks.posts(false, ids);
+		locks.lock(held);
+		try {
+			// 2. Get the full representation of every post found.
+			for (int i = 0; i < ids.length; i++) {
+				PostDB post = posts.get_post(ids[i]);
+				if (post != null)
+					ret[i] = post.representation_detailed();
+			}
+		} finally {
+			locks.unlock(held);
+		}
 
 		return ret;
 	}
@@ -1070,8 +1363,9 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 	 * @return An array of PostReprSimple objects with the posts' information.
 	 * @throws WinsomeDB_Exception.UsernameNotFound       if the username is not found in the database.
 	 * @throws WinsomeDB_Exception.DatabaseNotInitialized if the database is not initialized.
+	 * @deprecated the result is not bounded, use get_user_blog(username, since_id, max_id, limit) to get it a page at a time.
 	 */
-	@Override
+	@Override @Deprecated
 	public PostReprSimple[] get_user_blog(String username) throws WinsomeDB_Exception.UsernameNotFound, WinsomeDB_Exception.DatabaseNotInitialized {
 		/*
 		 * This method is used to get the posts of a user.
@@ -1086,25 +1380,101 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 		if (!initialized)
 			throw new WinsomeDB_Exception.DatabaseNotInitialized();
 
-		lock_both_R();
-
 		// 2. If the username is not found in the database, throw an exception.
-		if (!users.containsKey(username)) {
-			unlock_both_R();
+		UserDB user = users.get(username);
+		if (user == null)
 			throw new WinsomeDB_Exception.UsernameNotFound(username);
+
+		// try an optimistic read first, the blog is read again under the read locks only if a writer has modified
+		// the user or one of its posts
+		WinsomeDB_Locks.Optimistic read = locks.optimistic();
+		try {
+			read.user(user.get_id());
+			long[] posts_ids = user.post_ids().to_array();
+			for (long post_id : posts_ids)
+				read.post(post_id);
+			PostReprSimple[] ret = feed(posts_ids);
+			if (read.validate())
+				return ret;
+		} catch (RuntimeException ignored) {
+			// the blog was being modified, read it again under the read locks
 		}
 
-		// 3. Get the posts of the user.
-		String[] posts_ids = users.get(username).getPosts().toArray(new String[0]);
+		Lock[] held = locks.users(false, user.get_id());
+		locks.lock(held);
+		try {
+			// 3. Get the posts of the user.
+			long[] posts_ids = user.post_ids().to_array();
+
+			// 4. return a representation of the posts of the user.
+			// (the locks of the posts come after the lock of the user in the lock ordering)
+			Lock[] posts_held = locks.posts(false, posts_ids);
+			WinsomeDB_Locks.lock_nested(posts_held);
+			try {
+				return feed(posts_ids);
+			} finally {
+				WinsomeDB_Locks.unlock_nested(posts_held);
+			}
+		} finally {
+			locks.unlock(held);
+		}
+	}
 
-		// 4. return a representation of the posts of the user.
-		PostReprSimple[] ret = new PostReprSimple[posts_ids.length];
-		for (int i = 0; i < posts_ids.length; i++)
-			ret[i] = posts.getPosts().get(posts_ids[i]).representation_simple();
+	/**
+	 * This method is used to get a page of the posts of a user, newest first: the posts with id between since_id and max_id
+	 * (both excluded). The next (older) page is the one with max_id equal to the last post of this page.
+	 *
+	 * @param username The username of the user to get the posts.
+	 * @param since_id The id of the newest post already known (only the newer posts are returned), null or empty for no limit.
+	 * @param max_id   The id of the oldest post of the previous page (only the older posts are returned), null or empty for no limit.
+	 * @param limit    The maximum number of posts to return (at most FEED_MAX_LIMIT).
+	 * @return An array of PostReprSimple objects with the posts' information, newest first.
+	 * @throws WinsomeDB_Exception.UsernameNotFound       if the username is not found in the database.
+	 * @throws WinsomeDB_Exception.PostNotFound           if since_id or max_id is not a valid post id.
+	 * @throws WinsomeDB_Exception.DatabaseNotInitialized if the database is not initialized.
+	 */
+	@Override
+	public PostReprSimple[] get_user_blog(String username, String since_id, String max_id, int limit) throws WinsomeDB_Exception.UsernameNotFound, WinsomeDB_Exception.PostNotFound, WinsomeDB_Exception.DatabaseNotInitialized {
+		/*
+		 * This method is used to get a page of the posts of a user.
+		 *
+		 * 1. If the database is not initialized, throw an exception.
+		 * 2. If the username is not found in the database, throw an exception.
+		 * 3. Get the newest posts of the user older than max_id, until the page is full.
+		 * 4. return a representation of the posts.
+		 */
 
-		unlock_both_R();
+		// 1. If the database is not initialized, throw an exception.
+		if (!initialized)
+			throw new WinsomeDB_Exception.DatabaseNotInitialized();
 
-		return ret;
+		// 2. If the username is not found in the database, throw an exception.
+		UserDB user = users.get(username);
+		if (user == null)
+			throw new WinsomeDB_Exception.UsernameNotFound(username);
+		long since = cursor(since_id, -1);
+		long max = cursor(max_id, Long.MAX_VALUE);
+		limit = Math.min(limit, FEED_MAX_LIMIT);
+		if (limit <= 0)
+			return new PostReprSimple[0];
+
+		Lock[] held = locks.users(false, user.get_id());
+		locks.lock(held);
+		try {
+			// 3. Get the newest posts of the user older than max_id, until the page is full.
+			long[] page = merge_newest(new LongSortedSet[]{user.post_ids()}, since, max, limit);
+
+			// 4. return a representation of the posts.
+			Lock[] posts_held = locks.posts(false, page);
+			WinsomeDB_Locks.lock_nested(posts_held);
+			try {
+				return feed(page);
+			} finally {
+				WinsomeDB_Locks.unlock_nested(posts_held);
+			}
+		} finally {
+			locks.unlock(held);
+		}
 	}
 
 	/**
@@ -1114,8 +1484,9 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 	 * @return An array of PostReprSimple objects with the posts' information.
 	 * @throws WinsomeDB_Exception.UsernameNotFound       if the username is not found in the database.
 	 * @throws WinsomeDB_Exception.DatabaseNotInitialized if the database is not initialized.
+	 * @deprecated the result is not bounded, use get_user_feed(username, since_id, max_id, limit) to get it a page at a time.
 	 */
-	@Override
+	@Override @Deprecated
 	public PostReprSimple[] get_user_feed(String username) throws WinsomeDB_Exception.UsernameNotFound, WinsomeDB_Exception.DatabaseNotInitialized {
 		/*
 		 * This method is used to get the posts of a user's feed.
@@ -1131,103 +1502,615 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 		if (!initialized)
 			throw new WinsomeDB_Exception.DatabaseNotInitialized();
 
-		lock_both_R();
-
 		// 2. If the username is not found in the database, throw an exception.
-		if (!users.containsKey(username)) {
-			unlock_both_R();
+		UserDB user = users.get(username);
+		if (user == null)
 			throw new WinsomeDB_Exception.UsernameNotFound(username);
+
+		// try an optimistic read first, the feed is read again under the read locks only if a writer has modified
+		// the user, one of the followed users or one of their posts
+		WinsomeDB_Locks.Optimistic read = locks.optimistic();
+		try {
+			read.user(user.get_id());
+			LongHashSet posts_ids = new LongHashSet();
+			for (int followed : user.following_ids().to_array()) {
+				read.user(followed);
+				UserDB followed_user = users.get_by_id(followed);
+				if (followed_user != null)
+					for (long post_id : followed_user.post_ids().to_array())
+						posts_ids.add(post_id);
+			}
+			long[] ids = posts_ids.to_array();
+			for (long post_id : ids)
+				read.post(post_id);
+			PostReprSimple[] ret = feed(ids);
+			if (read.validate())
+				return ret;
+		} catch (RuntimeException ignored) {
+			// the feed was being modified, read it again under the read locks
 		}
 
 		// 3. Get the users' following list.
-		String[] following = users.get(username).getFollowing().toArray(new String[0]);
+		// (the lock of the user is released before taking the locks of the followed users, that may come before it)
+		int[] following;
+		Lock[] user_held = locks.users(false, user.get_id());
+		locks.lock(user_held);
+		try {
+			following = user.following_ids().to_array();
+		} finally {
+			locks.unlock(user_held);
+		}
+
+		Lock[] held = locks.users(false, following);
+		locks.lock(held);
+		try {
+			// 4. Get the posts of the users' following list.
+			LongHashSet posts_ids = new LongHashSet();
+			for (int followed : following) {
+				UserDB followed_user = users.get_by_id(followed);
+				if (followed_user != null)
+					for (long post_id : followed_user.post_ids().to_array())
+						posts_ids.add(post_id);
+			}
+			long[] ids = posts_ids.to_array();
+
+			// 5. Return a representation of the posts of the users' following list.
+			Lock[] posts_held = locks.posts(false, ids);
+			WinsomeDB_Locks.lock_nested(posts_held);
+			try {
+				return feed(ids);
+			} finally {
+				WinsomeDB_Locks.unlock_nested(posts_held);
+			}
+		} finally {
+			locks.unlock(held);
+		}
+	}
+
+	private PostReprSimple[] feed(long[] posts_ids) {
+		/*
+		 * the simple representations of the posts still in the database, newest first
+		 * (the ids are assigned in order of creation, so the posts are sorted by id)
+		 * (the caller holds the locks of the posts, or validates the optimistic read afterwards)
+		 */
+		long[] sorted = posts_ids.clone();
+		Arrays.sort(sorted);
+
+		ArrayList<PostReprSimple> ret = new ArrayList<>(sorted.length);
+		for (int i = sorted.length - 1; i >= 0; i--) {
+			PostDB post = posts.get_post(sorted[i]);
+			if (post != null)
+				ret.add(post.representation_simple());
+		}
+		return ret.toArray(new PostReprSimple[0]);
+	}
+
+	/**
+	 * This method is used to get a page of a user's feed, newest first: the posts with id between since_id and max_id
+	 * (both excluded). The next (older) page is the one with max_id equal to the last post of this page.
+	 * The newest posts are read from the user's timeline, the older ones from the users followed.
+	 *
+	 * @param username The username of the user to get the feed.
+	 * @param since_id The id of the newest post already known (only the newer posts are returned), null or empty for no limit.
+	 * @param max_id   The id of the oldest post of the previous page (only the older posts are returned), null or empty for no limit.
+	 * @param limit    The maximum number of posts to return (at most FEED_MAX_LIMIT).
+	 * @return An array of PostReprSimple objects with the posts' information, newest first.
+	 * @throws WinsomeDB_Exception.UsernameNotFound       if the username is not found in the database.
+	 * @throws WinsomeDB_Exception.PostNotFound           if since_id or max_id is not a valid post id.
+	 * @throws WinsomeDB_Exception.DatabaseNotInitialized if the database is not initialized.
+	 */
+	@Override
+	public PostReprSimple[] get_user_feed(String username, String since_id, String max_id, int limit) throws WinsomeDB_Exception.UsernameNotFound, WinsomeDB_Exception.PostNotFound, WinsomeDB_Exception.DatabaseNotInitialized {
+		/*
+		 * This method is used to get a page of a user's feed.
+		 *
+		 * 1. If the database is not initialized, throw an exception.
+		 * 2. If the username is not found in the database, throw an exception.
+		 * 3. If the user's timeline is not built, build it from the users followed.
+		 * 4. Get the newest posts of the timeline and of the celebrities followed.
+		 * 5. Keep the newest posts still in the database, down to the point where the timeline and the celebrities are complete.
+		 * 6. Return a representation of the posts (if the posts found are not enough, merge the posts of the users followed).
+		 */
+
+		// 1. If the database is not initialized, throw an exception.
+		if (!initialized)
+			throw new WinsomeDB_Exception.DatabaseNotInitialized();
+
+		// 2. If the username is not found in the database, throw an exception.
+		UserDB user = users.get(username);
+		if (user == null)
+			throw new WinsomeDB_Exception.UsernameNotFound(username);
+		long since = cursor(since_id, -1);
+		long max = cursor(max_id, Long.MAX_VALUE);
+		limit = Math.min(limit, FEED_MAX_LIMIT);
+		if (limit <= 0 || max <= since + 1)
+			return new PostReprSimple[0];
+
+		// 3. If the user's timeline is not built, build it from the users followed.
+		// (if an unfollow resets the timeline meanwhile it is not built, the posts of the users followed are merged this time)
+		WinsomeDB_Timeline timeline = user.timeline();
+		if (!timeline.is_built() && !build_timeline(user))
+			return merged_feed(user, since, max, limit);
+
+		// 4. Get the newest posts of the timeline and of the celebrities followed.
+		WinsomeDB_Timeline.View view = timeline.newest(max, limit);
+		Lock[] held = locks.users(false, view.celebrities);
+		locks.lock(held);
+		try {
+			// the posts older than the bound may be missing: they are below the floor of the timeline,
+			// or older than the last post read from a timeline (or a celebrity) that had more than limit posts
+			LongSortedSet candidates = new LongSortedSet();
+			long bound = view.floor + 1;
+			for (long post_id : view.ids)
+				candidates.add(post_id);
+			if (view.ids.length == limit)
+				bound = Math.max(bound, view.ids[limit - 1]);
+			for (int celebrity : view.celebrities) {
+				long[] newest = users.get_by_id(celebrity).post_ids().newest(max, limit);
+				for (long post_id : newest)
+					candidates.add(post_id);
+				if (newest.length == limit)
+					bound = Math.max(bound, newest[limit - 1]);
+			}
+			// (no post is missing if only the posts newer than since_id are asked)
+			boolean complete = bound <= since + 1;
+
+			// 5. Keep the newest posts still in the database, down to the point where the timeline and the celebrities are complete.
+			long[] page = new long[limit];
+			int n = 0;
+			for (long post_id : candidates.newest(max, candidates.size())) {
+				if (n == limit || post_id < bound || post_id <= since)
+					break;
+				if (posts.get_post(post_id) != null)
+					page[n++] = post_id;
+			}
 
-		TreeSet<PostDB> posts_list = new TreeSet<>();
+			// 6. Return a representation of the posts.
+			if (n == limit || complete) {
+				page = Arrays.copyOf(page, n);
+				Lock[] posts_held = locks.posts(false, page);
+				WinsomeDB_Locks.lock_nested(posts_held);
+				try {
+					return feed(page);
+				} finally {
+					WinsomeDB_Locks.unlock_nested(posts_held);
+				}
+			}
+		} finally {
+			locks.unlock(held);
+		}
+
+		// (if the posts found are not enough, merge the posts of the users followed)
+		return merged_feed(user, since, max, limit);
+	}
+
+	private static long cursor(String post_id, long none) throws WinsomeDB_Exception.PostNotFound {
+		/*
+		 * the post id of a cursor (since_id or max_id), the post may have been removed
+		 */
+		if (post_id == null || post_id.isEmpty())
+			return none;
+		long id = WinsomeDB_Posts.parse_id(post_id);
+		if (id < 0)
+			throw new WinsomeDB_Exception.PostNotFound(post_id);
+		return id;
+	}
+
+	private PostReprSimple[] merged_feed(UserDB user, long since, long max, int limit) {
+		/*
+		 * This method reads a page of the feed from the posts of the users followed.
+		 *
+		 * 1. Get the users' following list.
+		 * 2. Merge the posts of the users followed, newest first, until the page is full.
+		 * 3. Return a representation of the posts.
+		 */
 
-		// 4. Get the posts of the users' following list.
-		for (String user : following) {
-			String[] posts_ids = users.get(user).getPosts().toArray(new String[0]);
-			for (String post_id : posts_ids)
-				posts_list.add(posts.getPosts().get(post_id));
+		// 1. Get the users' following list.
+		// (the lock of the user is released before taking the locks of the followed users, that may come before it)
+		int[] following;
+		Lock[] user_held = locks.users(false, user.get_id());
+		locks.lock(user_held);
+		try {
+			following = user.following_ids().to_array();
+		} finally {
+			locks.unlock(user_held);
 		}
 
-		// 5. Return a representation of the posts of the users' following list.
-		PostReprSimple[] ret = new PostReprSimple[posts_list.size()];
+		Lock[] held = locks.users(false, following);
+		locks.lock(held);
+		try {
+			// 2. Merge the posts of the users followed, newest first, until the page is full.
+			LongSortedSet[] lists = new LongSortedSet[following.length];
+			for (int i = 0; i < following.length; i++)
+				lists[i] = users.get_by_id(following[i]).post_ids();
+			long[] page = merge_newest(lists, since, max, limit);
+
+			// 3. Return a representation of the posts.
+			Lock[] posts_held = locks.posts(false, page);
+			WinsomeDB_Locks.lock_nested(posts_held);
+			try {
+				return feed(page);
+			} finally {
+				WinsomeDB_Locks.unlock_nested(posts_held);
+			}
+		} finally {
+			locks.unlock(held);
+		}
+	}
 
-		int i = 0;
-		for (PostDB post : posts_list)
-			ret[i++] = post.representation_simple();
+	private long[] merge_newest(LongSortedSet[] lists, long since, long max, int limit) {
+		/*
+		 * the newest posts (at most limit) in the lists, between since and max (both excluded) and still in the database
+		 * the lists are merged with a heap of cursors, one per list (the one with the newest post on top),
+		 * so only the posts of the page (and the duplicates, the rewins of the same post) are visited
+		 * (the caller holds the locks of the owners of the lists)
+		 */
+		int[] next = new int[lists.length];
+		PriorityQueue<Integer> heap = new PriorityQueue<>(Math.max(1, lists.length),
+				(a, b) -> Long.compare(lists[b].get(next[b]), lists[a].get(next[a])));
+		for (int i = 0; i < lists.length; i++) {
+			next[i] = lists[i].count_below(max) - 1;
+			if (next[i] >= 0)
+				heap.add(i);
+		}
 
-		unlock_both_R();
+		long[] page = new long[limit];
+		int n = 0;
+		long last = max;
+		while (n < limit && !heap.isEmpty()) {
+			int i = heap.poll();
+			long post_id = lists[i].get(next[i]);
+			if (post_id <= since)
+				break;
+			if (--next[i] >= 0)
+				heap.add(i);
+
+			// (the lists are visited in descending order, a duplicate is equal to the last post visited)
+			if (post_id == last)
+				continue;
+			last = post_id;
+			if (posts.get_post(post_id) != null)
+				page[n++] = post_id;
+		}
+		return Arrays.copyOf(page, n);
+	}
 
-		return ret;
+	private boolean build_timeline(UserDB user) {
+		/*
+		 * This method builds the timeline of the user from the newest posts of the users it follows.
+		 * It returns false if the timeline has been reset meanwhile (it is still not built).
+		 *
+		 * 1. Get the users' following list.
+		 * 2. Get the newest posts of every user followed (and the celebrities followed, that are read when the feed is read).
+		 * 3. Build the timeline.
+		 */
+		WinsomeDB_Timeline timeline = user.timeline();
+		long generation = timeline.generation();
+
+		// 1. Get the users' following list.
+		int[] following;
+		Lock[] user_held = locks.users(false, user.get_id());
+		locks.lock(user_held);
+		try {
+			following = user.following_ids().to_array();
+		} finally {
+			locks.unlock(user_held);
+		}
+
+		// 2. Get the newest posts of every user followed (and the celebrities followed, that are read when the feed is read).
+		LongHashSet posts_ids = new LongHashSet();
+		IntHashSet celebrities = new IntHashSet();
+		long floor = -1;
+		Lock[] held = locks.users(false, following);
+		locks.lock(held);
+		try {
+			for (int followed : following) {
+				UserDB followed_user = users.get_by_id(followed);
+				if (followed_user.celebrity()) {
+					celebrities.add(followed);
+					continue;
+				}
+				long[] newest = followed_user.post_ids().newest(Long.MAX_VALUE, WinsomeDB_Timeline.CAPACITY);
+				for (long post_id : newest)
+					posts_ids.add(post_id);
+				// (the older posts of the user are not in the timeline)
+				if (followed_user.post_ids().size() > newest.length)
+					floor = Math.max(floor, newest[newest.length - 1] - 1);
+			}
+		} finally {
+			locks.unlock(held);
+		}
+
+		// 3. Build the timeline.
+		timeline.build(generation, posts_ids.to_array(), floor, celebrities.to_array());
+		return timeline.is_built();
+	}
+
+	private void fan_out(UserDB author, long post_id) {
+		/*
+		 * the new post (or rewin) of the author is added to the timelines of its followers,
+		 * unless the author is a celebrity (its posts are read from it when the feed is read)
+		 * (the caller holds the lock of the author)
+		 */
+		if (author.celebrity())
+			return;
+		for (int follower : author.follower_ids().to_array())
+			users.get_by_id(follower).timeline().add(post_id);
+	}
+
+	private void follow_timeline(UserDB user, UserDB followed, boolean became_celebrity) {
+		/*
+		 * the user has started following the followed user: the newest posts of the followed user are added to
+		 * the timeline of the user, or the followed user is recorded as a celebrity followed.
+		 * If the followed user has just become a celebrity, it is recorded in the timelines of all its followers.
+		 * (the caller holds the locks of both the users)
+		 */
+		if (became_celebrity) {
+			for (int follower : followed.follower_ids().to_array())
+				users.get_by_id(follower).timeline().add_celebrity(followed.get_id());
+		} else if (followed.celebrity()) {
+			user.timeline().add_celebrity(followed.get_id());
+		} else {
+			long[] newest = followed.post_ids().newest(Long.MAX_VALUE, WinsomeDB_Timeline.CAPACITY);
+			user.timeline().add_all(newest, newest.length == followed.post_ids().size());
+		}
 	}
 
 	/**
 	 * This method is used to get the usernames of users with similar interests with the given user.
 	 *
 	 * @param username The username of the user to get the similar users.
-	 * @return An array of strings with the usernames of the similar users.
+	 * @return An array with the representations of all the similar users.
 	 * @throws WinsomeDB_Exception.UsernameNotFound       if the username is not found in the database.
 	 * @throws WinsomeDB_Exception.DatabaseNotInitialized if the database is not initialized.
+	 * @deprecated the result is not bounded, use get_similar_users(username, after, limit) to get them a page at a time.
+	 */
+	@Override @Deprecated
+	public UserRepr[] get_similar_users(String username) throws WinsomeDB_Exception.UsernameNotFound, WinsomeDB_Exception.DatabaseNotInitialized {
+		return similar_users(username, null, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * This method is used to get a page of the users with similar interests with the given user.
+	 * The users are returned in a stable order (the order of their ids), so the next page starts after the last user of this one.
+	 *
+	 * @param username The username of the user to get the similar users.
+	 * @param after    The username of the last user of the previous page, null or empty for the first page.
+	 * @param limit    The maximum number of users to return (at most SIMILAR_USERS_MAX_LIMIT).
+	 * @return An array with the representations of the similar users, shorter than limit only on the last page.
+	 * @throws WinsomeDB_Exception.UsernameNotFound       if the username (or the after username) is not found in the database.
+	 * @throws WinsomeDB_Exception.DatabaseNotInitialized if the database is not initialized.
 	 */
 	@Override
-	public String[] get_similar_users(String username) throws WinsomeDB_Exception.UsernameNotFound, WinsomeDB_Exception.DatabaseNotInitialized {
+	public UserRepr[] get_similar_users(String username, String after, int limit) throws WinsomeDB_Exception.UsernameNotFound, WinsomeDB_Exception.DatabaseNotInitialized {
+		return similar_users(username, after, Math.max(0, Math.min(limit, SIMILAR_USERS_MAX_LIMIT)));
+	}
+
+	private UserRepr[] similar_users(String username, String after, int limit) throws WinsomeDB_Exception.UsernameNotFound, WinsomeDB_Exception.DatabaseNotInitialized {
 		/*
 		 * This method is used to get the usernames of users with similar interests with the given user.
 		 *
 		 * 1. If the database is not initialized, throw an exception.
-		 * 2. If the username is not found in the database, throw an exception.
-		 * 3. Get the users' interests.
-		 * 4. Get every username that has at least one interest in common with the user. (The user is not included in the list.)
+		 * 2. If the username (or the after username) is not found in the database, throw an exception.
+		 * 3. Get the posting lists of the users' interests, from the first user after the given one.
+		 * 4. Merge the posting lists in order of id, skipping the duplicates. (The user is not included in the list.)
 		 * 5. Remove every user that is already being followed by the user.
-		 * 6. For each username get the serialized representation of the user.
+		 * 6. For each user get the representation of the user, until the limit is reached.
 		 */
 
 		// 1. If the database is not initialized, throw an exception.
 		if (!initialized)
 			throw new WinsomeDB_Exception.DatabaseNotInitialized();
 
-		users_R_lock.lock();
+		// 2. If the username (or the after username) is not found in the database, throw an exception.
+		UserDB me = users.get(username);
+		if (me == null)
+			throw new WinsomeDB_Exception.UsernameNotFound(username);
+		int after_id = -1;
+		if (after != null && !after.isEmpty()) {
+			UserDB last = users.get(after);
+			if (last == null)
+				throw new WinsomeDB_Exception.UsernameNotFound(after);
+			after_id = last.get_id();
+		}
+
+		// 3. Get the posting lists of the users' interests, from the first user after the given one.
+		// the tags of a user never change after its creation and the posting lists are read without locks
+		String[] interests = me.getTags();
+		WinsomeDB_Tags.Snapshot[] lists = new WinsomeDB_Tags.Snapshot[interests.length];
+		int[] next = new int[interests.length];
+		for (int i = 0; i < interests.length; i++) {
+			lists[i] = users.users_with_tag(interests[i]);
+			next[i] = lists[i].first_after(after_id);
+		}
+
+		// only the lock of the user is needed (for its following list), the other users are read without locking them
+		Lock[] held = locks.users(false, me.get_id());
+		locks.lock(held);
+		try {
+			ArrayList<UserRepr> similar_users = new ArrayList<>();
+			while (similar_users.size() < limit) {
+				// 4. Merge the posting lists in order of id, skipping the duplicates. (The user is not included in the list.)
+				// (at most 5 lists, the smallest head is found by scanning them)
+				int id = Integer.MAX_VALUE;
+				for (int i = 0; i < lists.length; i++)
+					if (next[i] < lists[i].size)
+						id = Math.min(id, lists[i].ids[next[i]]);
+				if (id == Integer.MAX_VALUE)
+					break;
+				for (int i = 0; i < lists.length; i++)
+					if (next[i] < lists[i].size && lists[i].ids[next[i]] == id)
+						next[i]++;
+
+				// 5. Remove every user that is already being followed by the user.
+				if (id == me.get_id() || me.following_ids().contains(id))
+					continue;
+
+				// 6. For each user get the representation of the user, until the limit is reached.
+				UserDB user = users.get_by_id(id);
+				if (user != null)
+					similar_users.add(user.representation());
+			}
+
+			return similar_users.toArray(new UserRepr[0]);
+		} finally {
+			locks.unlock(held);
+		}
+	}
+
+	/**
+	 * This method is used to recommend to a user the users it may want to follow, best first.
+	 * Every user not followed yet is scored by the tags shared with the user (their Jaccard similarity)
+	 * plus the fraction of the users followed by the user that follow it (friends of friends).
+	 * The recommendations are cached until the user (or a user it follows) follows or unfollows someone, or a new user is registered.
+	 *
+	 * @param username The username of the user to get the recommendations.
+	 * @param k        The maximum number of users to recommend (at most RECOMMEND_MAX_K).
+	 * @return An array with the representations of the recommended users, best first.
+	 * @throws WinsomeDB_Exception.UsernameNotFound       if the username is not found in the database.
+	 * @throws WinsomeDB_Exception.DatabaseNotInitialized if the database is not initialized.
+	 */
+	@Override
+	public UserRepr[] recommend_users(String username, int k) throws WinsomeDB_Exception.UsernameNotFound, WinsomeDB_Exception.DatabaseNotInitialized {
+		/*
+		 * This method is used to recommend to a user the users it may want to follow.
+		 *
+		 * 1. If the database is not initialized, throw an exception.
+		 * 2. If the username is not found in the database, throw an exception.
+		 * 3. If the recommendations of the user are cached, return the first k.
+		 * 4. Count, for every candidate, the users followed by the user that follow it.
+		 * 5. Count, for every candidate, the tags shared with the user.
+		 * 6. Score the candidates (except the user and the users already followed), keeping the best RECOMMEND_MAX_K.
+		 * 7. Cache the recommendations and return the first k.
+		 */
+
+		// 1. If the database is not initialized, throw an exception.
+		if (!initialized)
+			throw new WinsomeDB_Exception.DatabaseNotInitialized();
 
 		// 2. If the username is not found in the database, throw an exception.
-		if (!users.containsKey(username)) {
-			users_R_lock.unlock();
+		UserDB me = users.get(username);
+		if (me == null)
 			throw new WinsomeDB_Exception.UsernameNotFound(username);
+		k = Math.max(0, Math.min(k, RECOMMEND_MAX_K));
+
+		// 3. If the recommendations of the user are cached, return the first k.
+		UserRepr[] cached = recommendations.get(me.get_id());
+		if (cached != null)
+			return Arrays.copyOf(cached, Math.min(k, cached.length));
+		// (taken before reading the users, so an invalidation that happens meanwhile is not overwritten)
+		long stamp = recommendations.stamp();
+
+		// for every candidate: the tags shared with the user and the users followed by the user that follow it
+		HashMap<Integer, int[]> candidates = new HashMap<>();
+		int[] following;
+		Lock[] held = locks.users(false, me.get_id());
+		locks.lock(held);
+		try {
+			following = me.following_ids().to_array();
+		} finally {
+			locks.unlock(held);
 		}
 
-		// 3. Get the users' interests.
-		String[] interests = users.get(username).getTags();
+		// 4. Count, for every candidate, the users followed by the user that follow it.
+		// (the followed users are locked together, as in get_user_feed)
+		held = locks.users(false, following);
+		locks.lock(held);
+		try {
+			for (int followed_id : following) {
+				UserDB followed = users.get_by_id(followed_id);
+				for (int id : followed.following_ids().to_array())
+					candidates.computeIfAbsent(id, c -> new int[2])[1]++;
+			}
+		} finally {
+			locks.unlock(held);
+		}
 
-		// 4. Get every username that has at least one interest in common with the user. (The user is not included in the list.)
-		TreeSet<String> similar_users = new TreeSet<>();
+		// 5. Count, for every candidate, the tags shared with the user.
+		// (the tags never change after the creation of a user, the posting lists are read without locks)
+		String[] interests = me.getTags();
+		for (String tag : interests) {
+			WinsomeDB_Tags.Snapshot list = users.users_with_tag(tag);
+			for (int i = 0; i < list.size; i++)
+				candidates.computeIfAbsent(list.ids[i], c -> new int[2])[0]++;
+		}
 
-		for (String user : users.keySet()) {
-			if (user.equals(username))
+		// 6. Score the candidates (except the user and the users already followed), keeping the best RECOMMEND_MAX_K.
+		// (a bounded min-heap: the worst of the best candidates found so far is replaced by a better one)
+		IntHashSet excluded = new IntHashSet();
+		excluded.add(me.get_id());
+		for (int id : following)
+			excluded.add(id);
+
+		PriorityQueue<Scored> best = new PriorityQueue<>();
+		for (Map.Entry<Integer, int[]> candidate : candidates.entrySet()) {
+			int id = candidate.getKey();
+			if (excluded.contains(id))
+				continue;
+			UserDB user = users.get_by_id(id);
+			if (user == null)
 				continue;
 
-			String[] user_interests = users.get(user).getTags();
-
-			if (Arrays.stream(user_interests).anyMatch(t -> Arrays.asList(interests).contains(t)))
-				similar_users.add(user);
+			int shared_tags = candidate.getValue()[0], shared_following = candidate.getValue()[1];
+			int all_tags = interests.length + user.getTags().length - shared_tags;
+			double score = all_tags > 0 ? (double) shared_tags / all_tags : 0;
+			if (following.length > 0)
+				score += (double) shared_following / following.length;
+
+			Scored scored = new Scored(user, score);
+			if (best.size() < RECOMMEND_MAX_K)
+				best.add(scored);
+			else if (best.peek().compareTo(scored) < 0) {
+				best.poll();
+				best.add(scored);
+			}
 		}
 
-		// 5. Remove every user that is already being followed by the user.
-		String[] following = users.get(username).getFollowing().toArray(new String[0]);
-		Arrays.asList(following).forEach(similar_users::remove);
+		// 7. Cache the recommendations and return the first k.
+		UserRepr[] ret = new UserRepr[best.size()];
+		for (int i = ret.length - 1; i >= 0; i--)
+			ret[i] = best.poll().user.representation();
+		recommendations.put(me.get_id(), stamp, ret);
+
+		return Arrays.copyOf(ret, Math.min(k, ret.length));
+	}
+
+	private static final class Scored implements Comparable<Scored> {
+		/*
+		 * a candidate of recommend_users, ordered from the worst to the best (the ties are broken by id, lowest first)
+		 */
+		final UserDB user;
+		final double score;
 
-		// 6. For each username get the serialized representation of the user.
-		String[] ret = similar_users.toArray(new String[0]);
-		for (int i = 0; i < ret.length; i++)
-			ret[i] = users.get(ret[i]).representation().serialize();
+		Scored(UserDB user, double score) {
+			this.user = user;
+			this.score = score;
+		}
 
-		users_R_lock.unlock();
+		@Override
+		public int compareTo(Scored other) {
+			int cmp = Double.compare(this.score, other.score);
+			return cmp != 0 ? cmp : Integer.compare(other.user.get_id(), this.user.get_id());
+		}
+	}
 
-		return ret;
+	private void invalidate_recommendations(UserDB user) {
+		/*
+		 * the users followed by the user have changed: its recommendations and the ones of its followers
+		 * (that count the users it follows as friends of friends) are invalidated
+		 * (the caller holds the lock of the user)
+		 */
+		recommendations.invalidate(user.get_id());
+		for (int follower : user.follower_ids().to_array())
+			recommendations.invalidate(follower);
 	}
 
 	/**
 	 * This method is used to reward every user with a certain amount of coins.
+	 * The rewards are calculated from a snapshot of the posts without holding the locks of the posts and of the users,
+	 * and the wallets are credited all together at the end, so the requests are blocked only while the snapshot is copied
+	 * and the wallets updated. The read lock of the global lock is held for the whole cycle, so the database is never
+	 * saved with posts already rewarded and wallets not credited yet.
 	 */
 	@Override
 	public void reward_everyone(double author_reward) {
@@ -1235,72 +2118,107 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 		 * This method is used to reward every user with a certain amount of coins.
 		 *
 		 * 1. If the database is not initialized, return.
-		 * 2. Go through every post and calculate every reward.
-		 * 2.1. The reward returned by the post is a list of usernames and the amount of coins to reward them.
-		 * 3. Divide the author's between the author and the users that rewined the post (those
+		 * 2. Take a snapshot of every post with new votes or comments (under the write lock of the post, one at a time).
+		 * 3. Calculate the rewards of every post from the snapshots (in parallel, without holding the stripes).
+		 * 3.1. The reward returned by the post is a list of usernames and the amount of coins to reward them.
+		 * 3.2. Divide the author's between the author and the users that rewined the post (those
 		 *   that rewined the post are rewarded with a percentage of the author's reward).
-		 * 4. Reward the users.
+		 * 4. Reward the users (under the write locks of all the users rewarded, taken once for the whole batch).
+		 *
+		 * Steps 2-4 hold the read lock of the global lock (taken once), the stripes are taken with lock_nested.
 		 */
 
 		// 1. If the database is not initialized, return.
 		if (!initialized)
 			return;
 
-		boolean dirty = false;
-
-		users_W_lock.lock();
-		posts_R_lock.lock();
-
-		// 2. Go through every post and calculate every reward.
-		for (PostDB post : posts.getPosts().values()) {
-			// 2.1. The reward returned by the post is a list of usernames and the amount of coins to reward them.
-			List<WinsomeReward> rewards = post.calculate_rewards(author_reward);
-			if (rewards == null)
-				continue;
-
-			dirty = true;
-
-			// 3. Divide the author's between the author and the users that rewined the post (those
-			//    that rewined the post are rewarded with a percentage of the author's reward).
-			List<String> users_rewined = new ArrayList<>();
-			for (UserDB u : users.values())
-				if (!u.getUsername().equals(post.getAuthor()) && u.getPosts().contains(post.getId()))
-					users_rewined.add(u.getUsername());
+		Map<UserDB, List<Double>> credits = new LinkedHashMap<>();
+		locks.lock();
+		try {
+			// 2. Take a snapshot of every post with new votes or comments.
+			// (the other posts have nothing to reward, they are not visited)
+			List<PostDB.RewardSnapshot> snapshots = new ArrayList<>();
+			for (long post_id : activity.drain()) {
+				PostDB post = posts.get_post(post_id);
+				if (post == null)
+					continue;
+
+				Lock[] held = locks.posts(true, post_id);
+				WinsomeDB_Locks.lock_nested(held);
+				try {
+					// the post may have been removed meanwhile
+					if (posts.get_post(post_id) != post)
+						continue;
+					PostDB.RewardSnapshot snapshot = post.snapshot_rewards();
+					if (snapshot != null)
+						snapshots.add(snapshot);
+				} finally {
+					WinsomeDB_Locks.unlock_nested(held);
+				}
+			}
+			if (snapshots.isEmpty())
+				return;
+			posts_backup_valid = false;
 
-			double reward_author = rewards.get(0).value;
-			double reward_rewined = users_rewined.size() > 0 ? reward_author * 0.1 : 0; // 10% of the author's reward then goes to the rewined users.
-			reward_author -= reward_rewined;
+			// 3. Calculate the rewards of every post from the snapshots.
+			// (the snapshots are immutable, they are split among the threads of the common ForkJoinPool)
+			List<List<WinsomeReward>> rewards = snapshots.parallelStream()
+					.map(snapshot -> post_rewards(snapshot, author_reward))
+					.collect(Collectors.toList());
 
 			// 4. Reward the users.
-
-			// Reward the author.
-			users.get(rewards.get(0).username).getWallet().add_transaction(new TransactionDB(reward_author));
-			// DEBUG
-			System.out.println("Rewarding " + rewards.get(0).username + " with " + reward_author + " coins.");
-
-			// Reward the rewined users.
-			for (String user : users_rewined) {
-				users.get(user).getWallet().add_transaction(new TransactionDB(reward_rewined / users_rewined.size()));
-				// DEBUG
-				System.out.println("Rewarding " + user + " with " + reward_rewined / users_rewined.size() + " coins.");
+			for (List<WinsomeReward> post_rewards : rewards)
+				for (WinsomeReward reward : post_rewards) {
+					UserDB user = users.get(reward.username);
+					if (user != null)
+						credits.computeIfAbsent(user, k -> new ArrayList<>()).add(reward.value);
+				}
+			int[] ids = new int[credits.size()];
+			int n = 0;
+			for (UserDB user : credits.keySet())
+				ids[n++] = user.get_id();
+
+			Lock[] held = locks.users(true, ids);
+			WinsomeDB_Locks.lock_nested(held);
+			try {
+				for (Map.Entry<UserDB, List<Double>> credit : credits.entrySet())
+					for (double value : credit.getValue())
+						credit.getKey().getWallet().add_transaction(new TransactionDB(value));
+				users_backup_valid = false;
+			} finally {
+				WinsomeDB_Locks.unlock_nested(held);
 			}
+		} finally {
+			locks.unlock();
+		}
 
-			// Reward the other users (curators).
-			for (WinsomeReward reward : rewards.subList(1, rewards.size())) {
-				users.get(reward.username).getWallet().add_transaction(new TransactionDB(reward.value));
-				// DEBUG
-				System.out.println("Rewarding " + reward.username + " with " + reward.value + " coins.");
-			}
+		// DEBUG
+		for (Map.Entry<UserDB, List<Double>> credit : credits.entrySet())
+			for (double value : credit.getValue())
+				System.out.println("Rewarding " + credit.getKey().getUsername() + " with " + value + " coins.");
+	}
 
-		}
+	private List<WinsomeReward> post_rewards(PostDB.RewardSnapshot snapshot, double author_reward) {
+		/*
+		 * the rewards of a post: the author first, then the users that rewined the post, then the curators
+		 * (no lock is held, the usernames of the rewinners are read from the table of the ids)
+		 */
 
-		if (dirty) {
-			posts_backup_valid = false;
-			users_backup_valid = false;
-		}
+		// 3.1. The reward returned by the post is a list of usernames and the amount of coins to reward them.
+		List<WinsomeReward> rewards = PostDB.calculate_rewards(snapshot, author_reward);
+
+		// 3.2. Divide the author's between the author and the users that rewined the post (those
+		//      that rewined the post are rewarded with a percentage of the author's reward).
+		double reward_author = rewards.get(0).value;
+		double reward_rewined = snapshot.rewinners.length > 0 ? reward_author * 0.1 : 0; // 10% of the author's reward then goes to the rewined users.
+		rewards.get(0).value = reward_author - reward_rewined;
 
-		posts_R_lock.unlock();
-		users_W_lock.unlock();
+		List<WinsomeReward> ret = new ArrayList<>(rewards.size() + snapshot.rewinners.length);
+		ret.add(rewards.get(0));
+		for (int rewinner : snapshot.rewinners)
+			ret.add(new WinsomeReward(reward_rewined / snapshot.rewinners.length, users.get_by_id(rewinner).getUsername()));
+		ret.addAll(rewards.subList(1, rewards.size()));
+		return ret;
 	}
 
 	/**
@@ -1340,9 +2258,9 @@ public class WinsomeDatabase implements Winsome_DB_Interface {
 		}
 
 		// 4. Set the database as not initialized.
-		lock_both_W();
+		locks.lock_all();
 		initialized = false;
-		unlock_both_W();
+		locks.unlock_all();
 
 		// DEBUG
 		System.out.println("Database closed.");
@@ -36,6 +36,8 @@ public class Client {
 	private boolean connected = false;
 	private boolean logged = false;
 	private boolean rewards_updated = false;
+	// set when the server has dropped some follower updates, the followers are reloaded on the next list followers
+	private volatile boolean followers_stale = false;
 	private int multicast_port;
 	private String multicast_address;
 	private String multicast_network_name;
@@ -133,12 +135,17 @@ public class Client {
 		/*
 		 * connect to server
 		 *
+		 * 1. Open the TCP connection
+		 * 2. Negotiate the protocol (the binary one is preferred, JSON is the fallback)
+		 *    and ask the server to push the follower updates on the connection
+		 * 3. Start the pipelining of the requests
 		 */
 		if (connected) {
 			return;
 		}
 
 		try {
+			// 1. Open the TCP connection
 			socket_channel = SocketChannel.open(
 					new InetSocketAddress(properties.get_server_address(), properties.get_tcp_port()));
 			sender = new WinsomeServerSender(socket_channel);
@@ -146,6 +153,29 @@ public class Client {
 		} catch (IOException e) {
 			throw new IOException(e);
 		}
+
+		// 2. Negotiate the protocol (the binary one is preferred, JSON is the fallback)
+		// and ask the server to push the follower updates on the connection
+		sender.set_notification_listener(new WinNotificationListener() {
+			@Override
+			public void follower_update(String username, boolean add) {
+				Client.this.follower_update(username, add);
+			}
+
+			@Override
+			public void followers_reset() {
+				// the list cannot be reloaded here (this is the thread reading the responses)
+				followers_stale = true;
+			}
+		});
+		try {
+			sender.handshake(WinProtocol.BINARY, WinProtocol.JSON);
+		} catch (WinsomeException e) {
+			System.err.println("Protocol negotiation failed, using JSON : " + e.getMessage());
+		}
+
+		// 3. Start the pipelining of the requests
+		sender.start_pipelining();
 	}
 
 	/**
@@ -250,6 +280,7 @@ public class Client {
 		try {
 			sender.login(username, password);
 			user = new LocalUser(username);
+			followers_stale = false;
 			server_rmi_interface.receive_updates(client_rmi_stub, username);
 			start_notification_thread();
 			logged = true;
@@ -339,6 +370,39 @@ public class Client {
 		return users;
 	}
 
+	/**
+	 * Used by a user to get the users it may want to follow: the server scores the users not followed yet
+	 * by the tags they share and by the users followed by both, and returns the best ones.
+	 * The associated command is recommend [k].
+	 *
+	 * @param k the maximum number of users to recommend
+	 * @return the list of recommended users, best first
+	 * @throws WinsomeException if the operation is not successful
+	 */
+	public List<String> recommend(int k)
+			throws WinsomeException {
+		/*
+		 * recommend
+		 *
+		 * 1. if not logged, print error and return
+		 * 2. if not connected, print error and return
+		 * 3. get list of recommended users
+		 */
+
+		// 1. if not logged, print error and return
+		if (!logged) {
+			throw new WinsomeExceptionGeneric("You are not logged in");
+		}
+
+		// 2. if not connected, print error and return
+		if (!connected) {
+			throw new WinsomeExceptionGeneric("You are not connected to server");
+		}
+
+		// 3. get list of recommended users
+		return Arrays.asList(sender.recommend(k));
+	}
+
 	/**
 	 * Operazione lato client per visualizzare la lista dei propri follower. Questo
 	 * comando dell’utente non scatena una richiesta sincrona dal client al server.
@@ -357,7 +421,8 @@ public class Client {
 		 *
 		 * 1. if not logged, print error and return
 		 * 2. if not connected, print error and return
-		 * 3. return list of followers
+		 * 3. reload the followers from the server if some updates have been dropped
+		 * 4. return list of followers
 		 */
 
 		// 1. if not logged, print error and return
@@ -369,7 +434,17 @@ public class Client {
 			throw new WinsomeExceptionGeneric("You are not connected to server");
 		}
 
-		// 3. Return the list of followers
+		// 3. Reload the followers from the server if some updates have been dropped
+		if (followers_stale) {
+			followers_stale = false;
+			String[] followers = sender.list_followers();
+			synchronized (this) {
+				user.get_followers().clear();
+				addAll_followers(followers);
+			}
+		}
+
+		// 4. Return the list of followers
 		return user.get_followers();
 	}
 
@@ -824,6 +899,25 @@ public class Client {
 		_on = false;
 	}
 
+	/**
+	 * This method is called by the sender when the server pushes a follower update (NOTIFY frame)
+	 *
+	 * @param username the username of the follower
+	 * @param add      true if the follower has been added, false if it has been removed
+	 */
+	private void follower_update(String username, boolean add) {
+		synchronized (this) {
+			// the update can arrive after the logout
+			if (user == null)
+				return;
+			if (add) {
+				add_follower(username);
+			} else {
+				remove_follower(username);
+			}
+		}
+	}
+
 	/**
 	 * This method is usually called by the server to notify the client that a new
 	 * follower has been added.
@@ -185,6 +185,40 @@ public class ClientCLI {
 	}
 
 
+	private void recommend_command(List<String> args) {
+		/*
+		 * recommend [k]
+		 *
+		 * 1. check if there is at most 1 argument, a positive number
+		 * 2. call the recommend method of the client
+		 * 3. print the result
+		 */
+
+		// 1. check if there is at most 1 argument, a positive number
+		int k = 10;
+		try {
+			if (args.size() > 1 || (args.size() == 1 && (k = Integer.parseInt(args.get(0))) <= 0))
+				throw new NumberFormatException();
+		} catch (NumberFormatException e) {
+			printError("recommend command : Wrong arguments : " +
+					"usage : recommend [k]");
+			return;
+		}
+
+		// 2. call the recommend method of the client
+		try {
+			List<String> users = client.recommend(k);
+			// 3. print the result (if there are users)
+			if (users != null && users.size() > 0) {
+				printResponse(users);
+			} else {
+				printResponse("No users found");
+			}
+		} catch (Exception e) {
+			printResponse(e.getMessage());
+		}
+	}
+
 	private void list_followers_command(List<String> args) {
 		/*
 		 * list_followers
@@ -613,6 +647,7 @@ public class ClientCLI {
 		 * list users - list all the registered users that share at least one tag with the current user
 		 * list followers - list all the followers of the current user
 		 * list following - list all the users that the current user is following
+		 * recommend [k] - list the k (default 10) users the current user may want to follow, best first
 		 * follow <username> - follow the user with the given username
 		 * unfollow <username> - unfollow the user with the given username
 		 * blog - show the blog of the current user
@@ -634,6 +669,7 @@ public class ClientCLI {
 						"list users - list all the registered users that share at least one tag with the current user\n" +
 						"list followers - list all the followers of the current user\n" +
 						"list following - list all the users that the current user is following\n" +
+						"recommend [k] - list the k (default 10) users the current user may want to follow, best first\n" +
 						"follow <username> - follow the user with the given username\n" +
 						"unfollow <username> - unfollow the user with the given username\n" +
 						"blog - show the blog of the current user\n" +
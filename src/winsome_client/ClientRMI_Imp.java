@@ -22,6 +22,19 @@ public class ClientRMI_Imp extends RemoteObject implements ClientRMI_Interface {
 		}
 	}
 
+	@Override
+	public void send_follower_updates(String[] usernames, boolean[] adds) throws java.rmi.RemoteException {
+		synchronized (client) {
+			for (int i = 0; i < usernames.length; i++) {
+				if (adds[i]) {
+					client.add_follower(usernames[i]);
+				} else {
+					client.remove_follower(usernames[i]);
+				}
+			}
+		}
+	}
+
 	@Override
 	public void send_followers(String[] followers) throws java.rmi.RemoteException {
 		synchronized (client) {
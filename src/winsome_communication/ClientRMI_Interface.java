@@ -6,6 +6,7 @@ import java.rmi.Remote;
  * This interface is used to define the methods that the server can call on the client.
  *
  * @public send_follower_update this method is used to send updates to the client regarding the followers
+ * @public send_follower_updates this method is used to send more updates regarding the followers with a single call
  * @public send_followers this method is used to send the followers of a user to the client
  * @public send_multicast_details this method is used to send multicast details to the client
  */
@@ -20,6 +21,16 @@ public interface ClientRMI_Interface extends Remote {
 	 */
 	void send_follower_update(String username, boolean add) throws java.rmi.RemoteException;
 
+	/**
+	 * send_follower_updates is used to send more updates regarding the followers with a single call
+	 * the updates must be applied in order
+	 *
+	 * @param usernames the usernames of the users that have followed or unfollowed the user
+	 * @param adds      for each username, true if the user has been followed, false if unfollowed
+	 * @throws java.rmi.RemoteException if the client is not connected to the server
+	 */
+	void send_follower_updates(String[] usernames, boolean[] adds) throws java.rmi.RemoteException;
+
 	/**
 	 * send_followers is used to send the followers of a user to the client
 	 * the method returns a boolean value to indicate if the update was successful or not
@@ -1,5 +1,9 @@
 package winsome_communication;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 public class CommentRepr extends WinSerializable {
 	private String author;
 	private String text;
@@ -43,6 +47,21 @@ public class CommentRepr extends WinSerializable {
 		this.time_created = time_created;
 	}
 
+	// binary protocol
+	@Override
+	public void write_binary(DataOutputStream out) throws IOException {
+		WinBinaryProtocol.write_string(out, this.author);
+		WinBinaryProtocol.write_string(out, this.text);
+		WinBinaryProtocol.write_string(out, this.time_created);
+	}
+
+	@Override
+	public void read_binary(DataInputStream in) throws IOException {
+		this.author = WinBinaryProtocol.read_string(in);
+		this.text = WinBinaryProtocol.read_string(in);
+		this.time_created = WinBinaryProtocol.read_string(in);
+	}
+
 	@Override
 	public String toString() {
 		/*
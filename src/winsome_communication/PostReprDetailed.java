@@ -1,5 +1,8 @@
 package winsome_communication;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 
 public class PostReprDetailed extends PostReprSimple {
@@ -105,6 +108,31 @@ public class PostReprDetailed extends PostReprSimple {
 		return sb.toString();
 	}
 
+	// binary protocol
+	@Override
+	public void write_binary(DataOutputStream out) throws IOException {
+		super.write_binary(out);
+		out.writeInt(this.upvotes);
+		out.writeInt(this.downvotes);
+		out.writeInt(this.comments.size());
+		for (CommentRepr comment : this.comments)
+			comment.write_binary(out);
+	}
+
+	@Override
+	public void read_binary(DataInputStream in) throws IOException {
+		super.read_binary(in);
+		this.upvotes = in.readInt();
+		this.downvotes = in.readInt();
+		int n_comments = WinBinaryProtocol.read_length(in);
+		this.comments = new ArrayList<>(n_comments);
+		for (int i = 0; i < n_comments; i++) {
+			CommentRepr comment = new CommentRepr();
+			comment.read_binary(in);
+			this.comments.add(comment);
+		}
+	}
+
 	@Override
 	public String toString() {
 		/*
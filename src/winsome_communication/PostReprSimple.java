@@ -1,5 +1,9 @@
 package winsome_communication;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 /**
  * This class represents a post in the Winsome system.
  * The post is a representation of a post in the database.
@@ -64,6 +68,23 @@ public class PostReprSimple extends WinSerializable {
 	}
 
 
+	// binary protocol
+	@Override
+	public void write_binary(DataOutputStream out) throws IOException {
+		WinBinaryProtocol.write_string(out, this.title);
+		WinBinaryProtocol.write_string(out, this.content);
+		WinBinaryProtocol.write_string(out, this.author);
+		WinBinaryProtocol.write_string(out, this.id);
+	}
+
+	@Override
+	public void read_binary(DataInputStream in) throws IOException {
+		this.title = WinBinaryProtocol.read_string(in);
+		this.content = WinBinaryProtocol.read_string(in);
+		this.author = WinBinaryProtocol.read_string(in);
+		this.id = WinBinaryProtocol.read_string(in);
+	}
+
 	// Methods
 	@Override
 	public String toString() {
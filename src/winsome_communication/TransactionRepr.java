@@ -1,5 +1,9 @@
 package winsome_communication;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 public class TransactionRepr extends WinSerializable {
 	// member variables
 	private double value;
@@ -37,6 +41,19 @@ public class TransactionRepr extends WinSerializable {
 		this.time_created = time_created;
 	}
 
+	// binary protocol
+	@Override
+	public void write_binary(DataOutputStream out) throws IOException {
+		out.writeDouble(this.value);
+		WinBinaryProtocol.write_string(out, this.time_created);
+	}
+
+	@Override
+	public void read_binary(DataInputStream in) throws IOException {
+		this.value = in.readDouble();
+		this.time_created = WinBinaryProtocol.read_string(in);
+	}
+
 	@Override
 	public String toString() {
 		return "Wallet_Transition_simple [value=" + value + ", time_created=" + time_created + "]";
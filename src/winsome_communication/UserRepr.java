@@ -1,5 +1,9 @@
 package winsome_communication;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 public class UserRepr extends WinSerializable {
 	private String username;
 	private String[] tags;
@@ -42,6 +46,23 @@ public class UserRepr extends WinSerializable {
 		this.tags = tags;
 	}
 
+	// binary protocol
+	@Override
+	public void write_binary(DataOutputStream out) throws IOException {
+		WinBinaryProtocol.write_string(out, this.username);
+		out.writeInt(this.tags.length);
+		for (String tag : this.tags)
+			WinBinaryProtocol.write_string(out, tag);
+	}
+
+	@Override
+	public void read_binary(DataInputStream in) throws IOException {
+		this.username = WinBinaryProtocol.read_string(in);
+		this.tags = new String[WinBinaryProtocol.read_length(in)];
+		for (int i = 0; i < this.tags.length; i++)
+			this.tags[i] = WinBinaryProtocol.read_string(in);
+	}
+
 	@Override
 	public String toString()
 	{
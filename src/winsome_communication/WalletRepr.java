@@ -1,5 +1,8 @@
 package winsome_communication;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -49,6 +52,27 @@ public class WalletRepr extends WinSerializable {
 		this.transaction.add(transition);
 	}
 
+	// binary protocol
+	@Override
+	public void write_binary(DataOutputStream out) throws IOException {
+		out.writeDouble(this.balance);
+		out.writeInt(this.transaction.size());
+		for (TransactionRepr transaction : this.transaction)
+			transaction.write_binary(out);
+	}
+
+	@Override
+	public void read_binary(DataInputStream in) throws IOException {
+		this.balance = in.readDouble();
+		int n_transactions = WinBinaryProtocol.read_length(in);
+		this.transaction = new ArrayList<>(n_transactions);
+		for (int i = 0; i < n_transactions; i++) {
+			TransactionRepr transaction = new TransactionRepr();
+			transaction.read_binary(in);
+			this.transaction.add(transaction);
+		}
+	}
+
 	@Override
 	public String toString() {
 		/*
@@ -0,0 +1,223 @@
+package winsome_communication;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class implements the binary protocol.
+ * <p></p>
+ * The payload is made of:
+ * 1. MAGIC (1 byte) = distinguishes a binary payload from a JSON one.
+ * 2. VERSION (1 byte) = the version of the protocol.
+ * 3. opcode (1 byte) = the index of the first field in OPCODES, 0 if the first field is sent as a field.
+ *    The highest bit (ID_FLAG) is set if the message has a request id.
+ * 4. request id (8 bytes) = only if ID_FLAG is set.
+ * 5. number of fields (4 bytes).
+ * 6. fields = each field is a tag (1 byte) followed by:
+ *    STRING = the length (4 bytes, -1 for null) and the UTF-8 bytes of the string.
+ *    RECORD = the length (4 bytes) and the bytes written by WinSerializable.write_binary.
+ * <p></p>
+ * New opcodes must be appended to OPCODES, the position of the existing ones is part of the protocol.
+ */
+public class WinBinaryProtocol implements WinProtocol {
+	public static final String NAME = "BINARY/1";
+	static final byte MAGIC = (byte) 0xB7;
+	static final byte VERSION = 1;
+	private static final byte TAG_STRING = 0;
+	private static final byte TAG_RECORD = 1;
+	private static final int ID_FLAG = 0x80;
+	private static final String[] OPCODES = {
+			null,
+			WinMessage.LOGIN_REQUEST,
+			WinMessage.LOGOUT_REQUEST,
+			WinMessage.LIST_USERS_REQUEST,
+			WinMessage.LIST_FOLLOWING_REQUEST,
+			WinMessage.FOLLOW_REQUEST,
+			WinMessage.UNFOLLOW_REQUEST,
+			WinMessage.BLOG_REQUEST,
+			WinMessage.POST_REQUEST,
+			WinMessage.SHOW_FEED_REQUEST,
+			WinMessage.SHOW_POST_REQUEST,
+			WinMessage.DELETE_REQUEST,
+			WinMessage.RATE_REQUEST,
+			WinMessage.REWIN_REQUEST,
+			WinMessage.COMMENT_REQUEST,
+			WinMessage.WALLET_REQUEST,
+			WinMessage.WALLET_BTC_REQUEST,
+			WinMessage.SUCCESS,
+			WinMessage.ERROR,
+			WinMessage.EXIT,
+			WinMessage.HANDSHAKE_REQUEST,
+			WinMessage.BATCH_REQUEST,
+			WinMessage.NOTIFY,
+			WinMessage.RECOMMEND_REQUEST,
+			WinMessage.LIST_FOLLOWERS_REQUEST,
+	};
+
+	@Override
+	public String get_name() {
+		return NAME;
+	}
+
+	@Override
+	public byte[] encode(WinMessage message) {
+		/*
+		 * This method encodes the message
+		 *
+		 * 1. write the header (magic, version, opcode, request id)
+		 * 2. write the number of fields
+		 * 3. write the fields (the first one is skipped if it has an opcode)
+		 */
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			// 1. write the header (magic, version, opcode, request id)
+			int opcode = message.size() > 0 ? opcode_of(message.getField(0)) : 0;
+			out.writeByte(MAGIC);
+			out.writeByte(VERSION);
+			out.writeByte(message.hasId() ? opcode | ID_FLAG : opcode);
+			if (message.hasId())
+				out.writeLong(message.getId());
+
+			// 2. write the number of fields
+			int first = opcode == 0 ? 0 : 1;
+			out.writeInt(message.size() - first);
+
+			// 3. write the fields (the first one is skipped if it has an opcode)
+			for (int i = first; i < message.size(); i++) {
+				Object field = message.getField(i);
+				if (field instanceof WinSerializable) {
+					ByteArrayOutputStream record = new ByteArrayOutputStream();
+					((WinSerializable) field).write_binary(new DataOutputStream(record));
+					write_record(out, record.toByteArray());
+				} else if (field instanceof byte[]) {
+					write_record(out, (byte[]) field);
+				} else {
+					out.writeByte(TAG_STRING);
+					write_string(out, (String) field);
+				}
+			}
+			out.flush();
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+		}
+		return bytes.toByteArray();
+	}
+
+	@Override
+	public void decode(byte[] data, WinMessage message) throws IOException {
+		/*
+		 * This method decodes the payload
+		 *
+		 * 1. check the header
+		 * 2. read the request id and add the field of the opcode
+		 * 3. read the fields
+		 */
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+
+		// 1. check the header
+		if (in.readByte() != MAGIC)
+			throw new IOException("Not a binary message");
+		byte version = in.readByte();
+		if (version != VERSION)
+			throw new IOException("Unsupported binary protocol version : " + version);
+
+		// 2. read the request id and add the field of the opcode
+		int opcode = in.readUnsignedByte();
+		if ((opcode & ID_FLAG) != 0) {
+			opcode &= ~ID_FLAG;
+			message.setId(in.readLong());
+		}
+		if (opcode >= OPCODES.length)
+			throw new IOException("Unknown opcode : " + opcode);
+		if (opcode != 0)
+			message.addString(OPCODES[opcode]);
+
+		// 3. read the fields
+		// (every length and count sent by the peer is checked against the bytes left, before allocating anything)
+		int n_fields = read_length(in);
+		for (int i = 0; i < n_fields; i++) {
+			byte tag = in.readByte();
+			if (tag == TAG_STRING) {
+				message.addString(read_string(in));
+			} else if (tag == TAG_RECORD) {
+				// (the first field is the type of the message, it is always a string)
+				if (opcode == 0 && i == 0)
+					throw new IOException("The type of the message is a record");
+				byte[] record = new byte[read_length(in)];
+				in.readFully(record);
+				message.addRecord(record);
+			} else {
+				throw new IOException("Unknown field tag : " + tag);
+			}
+		}
+	}
+
+	private static int opcode_of(Object field) {
+		if (!(field instanceof String))
+			return 0;
+		for (int i = 1; i < OPCODES.length; i++) {
+			if (OPCODES[i].equals(field))
+				return i;
+		}
+		return 0;
+	}
+
+	private static void write_record(DataOutputStream out, byte[] record) throws IOException {
+		out.writeByte(TAG_RECORD);
+		out.writeInt(record.length);
+		out.write(record);
+	}
+
+	/**
+	 * This method writes a length-prefixed UTF-8 string (length -1 for null).
+	 * @param out    the stream to write to.
+	 * @param string the string to write.
+	 * @throws IOException if the stream fails.
+	 */
+	public static void write_string(DataOutputStream out, String string) throws IOException {
+		if (string == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(utf8.length);
+		out.write(utf8);
+	}
+
+	/**
+	 * This method reads a length-prefixed UTF-8 string written by write_string.
+	 * @param in the stream to read from.
+	 * @return the string read (null if the length is -1).
+	 * @throws IOException if the stream fails.
+	 */
+	public static String read_string(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length == -1)
+			return null;
+		if (length < 0 || length > in.available())
+			throw new IOException("Invalid string length : " + length);
+		byte[] utf8 = new byte[length];
+		in.readFully(utf8);
+		return new String(utf8, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * This method reads a length (or a number of elements, every element takes at least one byte) sent by the peer.
+	 * @param in the stream to read from (it must know the bytes left, as a stream over a byte array).
+	 * @return the length read, between 0 and the bytes left in the stream.
+	 * @throws IOException if the stream fails or the length is not valid.
+	 */
+	public static int read_length(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0 || length > in.available())
+			throw new IOException("Invalid length : " + length);
+		return length;
+	}
+}
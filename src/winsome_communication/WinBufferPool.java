@@ -0,0 +1,146 @@
+package winsome_communication;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is a bounded pool of direct ByteBuffers used for the network I/O.
+ * <p></p>
+ * The buffers are grouped in size classes (powers of two from MIN_CLASS_SIZE to MAX_CLASS_SIZE),
+ * a request is served by the smallest class that can hold it.
+ * Every class keeps at most max_per_class free buffers, the extra released buffers are left to the GC.
+ * Requests bigger than MAX_CLASS_SIZE are served with a heap buffer that is never pooled.
+ * <p></p>
+ * Every buffer obtained with acquire must be given back with release once it is no longer used.
+ * <p></p>
+ * Statistics:
+ * 1. hits = requests served with a pooled buffer.
+ * 2. misses = requests that needed a new buffer.
+ * 3. outstanding = buffers acquired and not released yet.
+ */
+public class WinBufferPool {
+	// class constants
+	public static final int MIN_CLASS_SIZE = 1024;
+	public static final int MAX_CLASS_SIZE = 1024 * 1024;
+	private static final int DEFAULT_MAX_PER_CLASS = 64;
+
+	// the pool shared by the server and the client
+	public static final WinBufferPool SHARED = new WinBufferPool(DEFAULT_MAX_PER_CLASS);
+
+	// member variables
+	private final int max_per_class;
+	private final ConcurrentLinkedQueue<ByteBuffer>[] free_buffers;
+	private final AtomicInteger[] free_counts;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicInteger outstanding = new AtomicInteger();
+
+	// constructor
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public WinBufferPool(int max_per_class) {
+		int n_classes = class_index(MAX_CLASS_SIZE) + 1;
+		this.max_per_class = max_per_class;
+		this.free_buffers = new ConcurrentLinkedQueue[n_classes];
+		this.free_counts = new AtomicInteger[n_classes];
+		for (int i = 0; i < n_classes; i++) {
+			this.free_buffers[i] = new ConcurrentLinkedQueue<>();
+			this.free_counts[i] = new AtomicInteger();
+		}
+	}
+
+	// getters
+	public long get_hits() {
+		return this.hits.get();
+	}
+
+	public long get_misses() {
+		return this.misses.get();
+	}
+
+	public int get_outstanding() {
+		return this.outstanding.get();
+	}
+
+	public double get_hit_rate() {
+		long total = this.hits.get() + this.misses.get();
+		return total == 0 ? 0 : (double) this.hits.get() / total;
+	}
+
+	// methods
+
+	/**
+	 * This method returns a cleared buffer with the limit set to the requested size.
+	 * @param size the number of bytes needed.
+	 * @return the buffer.
+	 */
+	public ByteBuffer acquire(int size) {
+		/*
+		 * 1. if the size is bigger than the biggest class, allocate a heap buffer
+		 * 2. take a free buffer of the class, or allocate a new one
+		 * 3. set the limit to the requested size
+		 */
+
+		this.outstanding.incrementAndGet();
+
+		// 1. if the size is bigger than the biggest class, allocate a heap buffer
+		if (size > MAX_CLASS_SIZE) {
+			this.misses.incrementAndGet();
+			return ByteBuffer.allocate(size);
+		}
+
+		// 2. take a free buffer of the class, or allocate a new one
+		int index = class_index(size);
+		ByteBuffer buffer = this.free_buffers[index].poll();
+		if (buffer != null) {
+			this.free_counts[index].decrementAndGet();
+			this.hits.incrementAndGet();
+		} else {
+			this.misses.incrementAndGet();
+			buffer = ByteBuffer.allocateDirect(MIN_CLASS_SIZE << index);
+		}
+
+		// 3. set the limit to the requested size
+		buffer.clear();
+		buffer.limit(size);
+		return buffer;
+	}
+
+	/**
+	 * This method gives back a buffer obtained with acquire.
+	 * @param buffer the buffer, it must not be used after this call.
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer == null)
+			return;
+		this.outstanding.decrementAndGet();
+
+		// only the direct buffers of a size class are pooled
+		int capacity = buffer.capacity();
+		if (!buffer.isDirect() || capacity < MIN_CLASS_SIZE || capacity > MAX_CLASS_SIZE || Integer.bitCount(capacity) != 1)
+			return;
+
+		int index = class_index(capacity);
+		if (this.free_counts[index].incrementAndGet() > this.max_per_class) {
+			this.free_counts[index].decrementAndGet();
+			return;
+		}
+		this.free_buffers[index].offer(buffer);
+	}
+
+	private static int class_index(int size) {
+		/*
+		 * index of the smallest class that can hold size bytes
+		 */
+		if (size <= MIN_CLASS_SIZE)
+			return 0;
+		return 32 - Integer.numberOfLeadingZeros(size - 1) - Integer.numberOfTrailingZeros(MIN_CLASS_SIZE);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("WinBufferPool : hits = %d, misses = %d, hit rate = %.2f, outstanding = %d",
+				get_hits(), get_misses(), get_hit_rate(), get_outstanding());
+	}
+}
@@ -0,0 +1,66 @@
+package winsome_communication;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * This class implements the JSON protocol.
+ * The message is serialized as a JSON array of strings using Jackson,
+ * objects are serialized to JSON strings before being added to the array.
+ * A message with a request id is serialized as {"id":id,"message":[...]},
+ * the two forms are told apart by the first character of the payload.
+ * The shared reader and writer of WinJsonRegistry are used.
+ */
+public class WinJsonProtocol implements WinProtocol {
+	public static final String NAME = "JSON";
+
+	/**
+	 * The JSON form of a message with a request id.
+	 */
+	public static class Frame {
+		public long id;
+		public List<String> message;
+	}
+
+	@Override
+	public String get_name() {
+		return NAME;
+	}
+
+	@Override
+	public byte[] encode(WinMessage message) {
+		/*
+		 * This method serializes the message using Jackson
+		 */
+		try {
+			if (message.hasId()) {
+				Frame frame = new Frame();
+				frame.id = message.getId();
+				frame.message = message.getStrings();
+				return WinJsonRegistry.writer_for(Frame.class).writeValueAsBytes(frame);
+			}
+			return WinJsonRegistry.STRING_LIST_WRITER.writeValueAsBytes(message.getStrings());
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			return new byte[0];
+		}
+	}
+
+	@Override
+	public void decode(byte[] data, WinMessage message) throws IOException {
+		/*
+		 * This method deserializes the message using Jackson
+		 * (a null message is decoded as an empty message, the server answers it with an error)
+		 */
+		if (data.length > 0 && data[0] == '{') {
+			Frame frame = WinJsonRegistry.reader_for(Frame.class).readValue(data);
+			message.setId(frame.id);
+			if (frame.message != null)
+				message.addStrings(frame.message);
+			return;
+		}
+		List<String> strings = WinJsonRegistry.STRING_LIST_READER.readValue(data);
+		if (strings != null)
+			message.addStrings(strings);
+	}
+}
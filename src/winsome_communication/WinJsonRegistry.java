@@ -0,0 +1,66 @@
+package winsome_communication;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class holds the Jackson readers and writers shared by the communication and the DB packages.
+ * <p></p>
+ * A single ObjectMapper is configured once and never modified afterwards,
+ * the ObjectReader and ObjectWriter instances built from it are immutable and thread-safe,
+ * so they are created once per type and reused by every request and every save.
+ * <p></p>
+ * Available methods:
+ * 1. reader_for(Class type) = the reader of the given type.
+ * 2. writer_for(Class type) = the writer of the given type.
+ * 3. pretty_writer_for(Class type) = the writer of the given type with indented output (used for the DB files).
+ */
+public final class WinJsonRegistry {
+	// class constants
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final ConcurrentHashMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+	private static final ConcurrentHashMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+	private static final ConcurrentHashMap<Class<?>, ObjectWriter> pretty_writers = new ConcurrentHashMap<>();
+
+	// reader and writer of the string list of the JSON protocol
+	public static final ObjectReader STRING_LIST_READER = MAPPER.readerFor(new TypeReference<List<String>>() {});
+	public static final ObjectWriter STRING_LIST_WRITER = MAPPER.writerFor(new TypeReference<List<String>>() {});
+
+	private WinJsonRegistry() {
+	}
+
+	/**
+	 * This method returns the shared reader of the given type.
+	 * Use reader_for(type).withValueToUpdate(object) to update an existing object.
+	 * @param type the class of the objects to read.
+	 * @return the reader.
+	 */
+	public static ObjectReader reader_for(Class<?> type) {
+		return readers.computeIfAbsent(type, MAPPER::readerFor);
+	}
+
+	/**
+	 * This method returns the shared writer of the given type.
+	 * @param type the class of the objects to write.
+	 * @return the writer.
+	 */
+	public static ObjectWriter writer_for(Class<?> type) {
+		return writers.computeIfAbsent(type, MAPPER::writerFor);
+	}
+
+	/**
+	 * This method returns the shared writer of the given type with indented output.
+	 * @param type the class of the objects to write.
+	 * @return the writer.
+	 */
+	public static ObjectWriter pretty_writer_for(Class<?> type) {
+		return pretty_writers.computeIfAbsent(type,
+				t -> MAPPER.writerFor(t).with(SerializationFeature.INDENT_OUTPUT));
+	}
+}
@@ -1,12 +1,15 @@
 package winsome_communication;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Supplier;
 
 public class WinMessage {
 	// class constants
@@ -14,6 +17,7 @@ public class WinMessage {
 	public static final String LOGOUT_REQUEST = "LOGOUT";
 	public static final String LIST_USERS_REQUEST = "LIST_USERS";
 	public static final String LIST_FOLLOWING_REQUEST = "LIST_FOLLOWING";
+	public static final String LIST_FOLLOWERS_REQUEST = "LIST_FOLLOWERS";
 	public static final String FOLLOW_REQUEST = "FOLLOW";
 	public static final String UNFOLLOW_REQUEST = "UNFOLLOW";
 	public static final String BLOG_REQUEST = "BLOG";
@@ -26,14 +30,28 @@ public class WinMessage {
 	public static final String COMMENT_REQUEST = "COMMENT";
 	public static final String WALLET_REQUEST = "WALLET";
 	public static final String WALLET_BTC_REQUEST = "WALLET_BTC";
+	public static final String BATCH_REQUEST = "BATCH";
+	public static final String RECOMMEND_REQUEST = "RECOMMEND";
 	public final static String ERROR = "ERROR";
 	public final static String SUCCESS = "SUCCESS";
 	public final static String EXIT = "EXIT";
+	public final static String HANDSHAKE_REQUEST = "HELLO";
+	// unsolicited frame pushed by the server (NOTIFY, then a username and "true"/"false" for each follower update)
+	public final static String NOTIFY = "NOTIFY";
+	// only field of a NOTIFY frame telling the client that updates have been dropped (it must reload its followers)
+	public final static String NOTIFY_RESET = "RESET";
+	// maximum length of a serialized message (16 MB)
+	public final static int MAX_LENGTH = 16 * 1024 * 1024;
+	// id of a message without a request id
+	public final static long NO_ID = -1;
 
 	// member variables
-	private ArrayList<String> message = new ArrayList<>();
-	private byte[] bytes;
-	private Boolean serialized = false;
+	// every field is a String, a WinSerializable object (added locally)
+	// or a byte[] (an object received with the binary protocol, decoded on demand)
+	private final ArrayList<Object> message = new ArrayList<>();
+	// optional request id, a response has the same id of its request
+	// so a client can have more requests in flight on the same connection
+	private long id = NO_ID;
 
 	public WinMessage(List<String> message) {
 		this.message.addAll(message);
@@ -49,110 +67,173 @@ public class WinMessage {
 	public static WinMessage receive(SocketChannel socket_channel) throws IOException {
 		/*
 		 * This method receives a message from the given socket channel
-		 * The method behaves differently depending on the blocking mode of the socket channel
+		 * The channel is expected to be in blocking mode (client side),
+		 * the server decodes the frames incrementally with a WinMessageDecoder
 		 *
-		 * 1. receive the length of the message
-		 * 2. receive the message
+		 * 1. feed the decoder until a whole frame has been received
+		 * 2. return the message
 		 */
 
-		boolean blocking = socket_channel.isBlocking();
-		int length;
-		ByteBuffer length_buffer = ByteBuffer.allocate(Integer.BYTES);
-		ByteBuffer message_buffer;
-
-		// 1. receive the length of the message
-		if (blocking) {
-			socket_channel.read(length_buffer);
-		} else {
-			while (length_buffer.hasRemaining()) {
-				socket_channel.read(length_buffer);
-			}
-		}
-
-		length_buffer.flip();
-		length = length_buffer.getInt();
-		message_buffer = ByteBuffer.allocate(length);
-
-		// 2. receive the message
-		if (blocking) {
-			socket_channel.read(message_buffer);
-		} else {
-			while (message_buffer.hasRemaining()) {
-				socket_channel.read(message_buffer);
+		// 1. feed the decoder until a whole frame has been received
+		WinMessageDecoder decoder = new WinMessageDecoder();
+		WinMessage message;
+		try {
+			while ((message = decoder.read(socket_channel)) == null) {
+				if (!socket_channel.isBlocking())
+					Thread.yield();
 			}
+		} catch (IOException e) {
+			decoder.release();
+			throw e;
 		}
 
-		message_buffer.flip();
-		byte[] data = new byte[length];
-		message_buffer.get(data);
-
-		WinMessage message = new WinMessage();
-		message.deserialize(data);
-
+		// 2. return the message
 		return message;
 	}
 
 	public byte[] serialize(){
 		/*
-		 * This method serializes the message using Jackson
+		 * This method serializes the message using the JSON protocol
 		 */
-		if (serialized) {
-			return bytes;
-		}
-		try {
-			ObjectMapper mapper = new ObjectMapper();
-			bytes = mapper.writeValueAsBytes(this.message);
-			serialized = true;
-		} catch (IOException e)
-		{
-			System.err.println(e.getMessage());
-		}
-		return bytes;
+		return WinProtocol.JSON.encode(this);
 	}
 
-	public void deserialize(byte[] data){
+	public void deserialize(byte[] data) throws IOException {
 		/*
-		 * This method deserializes the message using Jackson
+		 * This method deserializes the message, the protocol is detected from the data
+		 * (a payload that is not valid is an error of the connection, the message is not half-filled and used)
 		 */
-		try {
-			ObjectMapper mapper = new ObjectMapper();
-			mapper.readerForUpdating(this.message).readValue(data);
-		} catch (IOException e)
-		{
-			System.err.println(e.getMessage());
-		}
-	}
-
-	private int get_length() {
-		return serialize().length;
+		WinProtocol.detect(data).decode(data, this);
 	}
 
 	// list methods
 	public void addString(String message) {
 		this.message.add(message);
-		serialized = false;
 	}
 
 	public void addStrings(String[] message) {
 		this.message.addAll(Arrays.asList(message));
-		serialized = false;
 	}
 
 	public void addStrings(List<String> message) {
 		this.message.addAll(message);
-		serialized = false;
+	}
+
+	public void addObject(WinSerializable object) {
+		this.message.add(object);
+	}
+
+	public void addObjects(WinSerializable[] objects) {
+		this.message.addAll(Arrays.asList(objects));
+	}
+
+	/**
+	 * This method adds a whole message as a field (used by the BATCH request and response).
+	 * The message is encoded with the JSON protocol whatever the protocol of the outer message.
+	 * @param message the message to add
+	 */
+	public void addMessage(WinMessage message) {
+		this.message.add(new String(WinProtocol.JSON.encode(message), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * This method returns a field added with addMessage.
+	 * @param index the index of the field
+	 * @return the message
+	 * @throws IOException if the field is not a valid message
+	 */
+	public WinMessage getMessage(int index) throws IOException {
+		WinMessage nested = new WinMessage();
+		WinProtocol.JSON.decode(getString(index).getBytes(StandardCharsets.UTF_8), nested);
+		return nested;
+	}
+
+	/**
+	 * This method is used by the protocols to add an object received as a binary record.
+	 * @param record the encoded object
+	 */
+	void addRecord(byte[] record) {
+		this.message.add(record);
+	}
+
+	/**
+	 * This method is used by the protocols to get a field without converting it.
+	 * @param index the index of the field
+	 * @return a String, a WinSerializable or a byte[]
+	 */
+	Object getField(int index) {
+		return message.get(index);
 	}
 
 	public List<String> getStrings() {
-		return message;
+		List<String> strings = new ArrayList<>(message.size());
+		for (int i = 0; i < message.size(); i++) {
+			strings.add(getString(i));
+		}
+		return strings;
 	}
 
 	public String[] getStringsArray() {
-		return message.toArray(new String[0]);
+		return getStrings().toArray(new String[0]);
 	}
 
 	public String getString(int index) {
-		return message.get(index);
+		Object field = message.get(index);
+		if (field instanceof WinSerializable) {
+			return ((WinSerializable) field).serialize();
+		}
+		if (field instanceof byte[]) {
+			throw new IllegalStateException("Field " + index + " is a binary record, use getObject");
+		}
+		return (String) field;
+	}
+
+	/**
+	 * This method returns the field at the given index as an object,
+	 * whatever protocol has been used to transfer it.
+	 *
+	 * @param index   the index of the field
+	 * @param factory the constructor of an empty object of the expected type
+	 * @return the object
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends WinSerializable> T getObject(int index, Supplier<T> factory) {
+		Object field = message.get(index);
+		if (field instanceof WinSerializable) {
+			return (T) field;
+		}
+
+		T object = factory.get();
+		if (field instanceof byte[]) {
+			try {
+				object.read_binary(new DataInputStream(new ByteArrayInputStream((byte[]) field)));
+			} catch (IOException e) {
+				System.err.println(e.getMessage());
+			}
+		} else {
+			object.deserialize((String) field);
+		}
+		return object;
+	}
+
+	public <T extends WinSerializable> List<T> getObjects(int from, Supplier<T> factory) {
+		List<T> objects = new ArrayList<>();
+		for (int i = from; i < message.size(); i++) {
+			objects.add(getObject(i, factory));
+		}
+		return objects;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public void setId(long id) {
+		this.id = id;
+	}
+
+	public boolean hasId() {
+		return id != NO_ID;
 	}
 
 	public int size() {
@@ -164,49 +245,66 @@ public class WinMessage {
 	}
 
 	// send - receive methods
+	public ByteBuffer encode() {
+		return encode(WinProtocol.JSON);
+	}
+
+	public ByteBuffer encode(WinProtocol protocol) {
+		/*
+		 * This method encodes the message as a frame ready to be written
+		 * The length and the message share one buffer taken from WinBufferPool.SHARED,
+		 * the caller must release it once the frame has been written
+		 *
+		 * 1. put the length of the message
+		 * 2. put the message (encoded with the given protocol)
+		 * 3. flip the buffer
+		 */
+
+		byte[] data = protocol.encode(this);
+		ByteBuffer frame = WinBufferPool.SHARED.acquire(Integer.BYTES + data.length);
+
+		// 1. put the length of the message
+		frame.putInt(data.length);
+
+		// 2. put the message (encoded with the given protocol)
+		frame.put(data);
+
+		// 3. flip the buffer
+		frame.flip();
+		return frame;
+	}
+
 	public void send(SocketChannel socket_channel) throws IOException {
+		send(socket_channel, WinProtocol.JSON);
+	}
+
+	public void send(SocketChannel socket_channel, WinProtocol protocol) throws IOException {
 		/*
 		 * This method sends the message to the given socket channel
-		 * The method behaves differently depending on the blocking mode of the socket channel
+		 * The channel is expected to be in blocking mode (client side),
+		 * the server queues the encoded frames in the CChannel of the connection
 		 *
-		 * 1. send the length of the message
-		 * 2. send the message
-		 * 3. clear the buffer
+		 * 1. encode the message
+		 * 2. send the frame
+		 * 3. give the buffer back to the pool
 		 */
 
-		boolean blocking = socket_channel.isBlocking();
-		ByteBuffer length_buffer = ByteBuffer.allocate(Integer.BYTES);
-		length_buffer.putInt(get_length());
-		length_buffer.flip();
-		ByteBuffer message_buffer = ByteBuffer.allocate(get_length());
-		message_buffer.put(serialize());
-		message_buffer.flip();
-
-		// 1. send the length of the message
-		if (blocking) {
-			socket_channel.write(length_buffer);
-		} else {
-			while (length_buffer.hasRemaining()) {
-				socket_channel.write(length_buffer);
-			}
-		}
+		// 1. encode the message
+		ByteBuffer frame = encode(protocol);
 
-		// 2. send the message
-		if (blocking) {
-			socket_channel.write(message_buffer);
-		} else {
-			while (message_buffer.hasRemaining()) {
-				socket_channel.write(message_buffer);
+		// 2. send the frame
+		try {
+			while (frame.hasRemaining()) {
+				socket_channel.write(frame);
 			}
+		} finally {
+			// 3. give the buffer back to the pool
+			WinBufferPool.SHARED.release(frame);
 		}
-
-		// 3. clear the buffer
-		length_buffer.clear();
-		message_buffer.clear();
 	}
 
 	@Override
 	public String toString() {
-		return message.toString();
+		return hasId() ? "#" + id + " " + message : message.toString();
 	}
 }
@@ -0,0 +1,104 @@
+package winsome_communication;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * This class is used to incrementally decode WinMessage frames from a SocketChannel.
+ * <p></p>
+ * A frame is made of:
+ * 1. the length of the message (4 bytes).
+ * 2. the serialized message (length bytes).
+ * <p></p>
+ * The decoder keeps its state between calls, so it can be fed every time the channel
+ * is readable without ever blocking or spinning on a non-blocking channel.
+ * The decoder only reads the bytes needed by the current stage, so it never consumes
+ * bytes that belong to the next frame.
+ * The payload buffer is taken from WinBufferPool.SHARED for the time needed to receive a frame,
+ * release() must be called if the channel is closed while a frame is being received.
+ */
+public class WinMessageDecoder {
+	// class constants
+	private static final int LENGTH_STAGE = 0;
+	private static final int PAYLOAD_STAGE = 1;
+
+	// member variables
+	private final ByteBuffer length_buffer = ByteBuffer.allocate(Integer.BYTES);
+	private ByteBuffer payload_buffer = null;
+	private int stage = LENGTH_STAGE;
+
+	/**
+	 * Read from the channel the bytes that are available.
+	 *
+	 * @param socket_channel the channel to read from.
+	 * @return the decoded message if a whole frame has been received, null otherwise.
+	 * @throws IOException if the channel has been closed or the frame is not valid.
+	 */
+	public WinMessage read(SocketChannel socket_channel) throws IOException {
+		/*
+		 * This method reads from the channel the bytes of the current stage
+		 *
+		 * 1. if in the length stage, read the length of the message
+		 * 1.1 if the length is not complete, return null
+		 * 1.2 take the payload buffer from the pool
+		 * 2. if in the payload stage, read the message
+		 * 2.1 if the message is not complete, return null
+		 * 3. copy the message, give the buffer back and reset the decoder
+		 * 4. decode the message
+		 */
+
+		// 1. if in the length stage, read the length of the message
+		if (stage == LENGTH_STAGE) {
+			if (socket_channel.read(length_buffer) < 0)
+				throw new EOFException("Connection closed by the peer");
+
+			// 1.1 if the length is not complete, return null
+			if (length_buffer.hasRemaining())
+				return null;
+
+			length_buffer.flip();
+			int length = length_buffer.getInt();
+			length_buffer.clear();
+
+			if (length < 0 || length > WinMessage.MAX_LENGTH)
+				throw new IOException("Invalid message length : " + length);
+
+			// 1.2 take the payload buffer from the pool
+			payload_buffer = WinBufferPool.SHARED.acquire(length);
+			stage = PAYLOAD_STAGE;
+		}
+
+		// 2. if in the payload stage, read the message
+		if (payload_buffer.hasRemaining() && socket_channel.read(payload_buffer) < 0)
+			throw new EOFException("Connection closed by the peer");
+
+		// 2.1 if the message is not complete, return null
+		if (payload_buffer.hasRemaining())
+			return null;
+
+		// 3. copy the message, give the buffer back and reset the decoder
+		payload_buffer.flip();
+		byte[] data = new byte[payload_buffer.remaining()];
+		payload_buffer.get(data);
+		release();
+
+		// 4. decode the message
+		WinMessage message = new WinMessage();
+		message.deserialize(data);
+		return message;
+	}
+
+	/**
+	 * Give back the payload buffer of the frame being received (if any) and reset the decoder.
+	 */
+	public void release() {
+		if (payload_buffer != null) {
+			WinBufferPool.SHARED.release(payload_buffer);
+			payload_buffer = null;
+		}
+		length_buffer.clear();
+		stage = LENGTH_STAGE;
+	}
+}
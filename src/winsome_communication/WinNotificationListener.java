@@ -0,0 +1,24 @@
+package winsome_communication;
+
+/**
+ * This interface receives the notifications pushed by the server on the TCP connection (NOTIFY frames).
+ * <p></p>
+ * The methods are called by the thread that reads the responses of the WinsomeServerSender,
+ * so they must not block and must not send requests on the same connection while waiting for their responses.
+ */
+public interface WinNotificationListener {
+	/**
+	 * follower_update is called when a user has followed or unfollowed the logged-in user
+	 *
+	 * @param username the username of the user that has followed or unfollowed the logged-in user
+	 * @param add      true if the user has followed the logged-in user, false if it has unfollowed the logged-in user
+	 */
+	void follower_update(String username, boolean add);
+
+	/**
+	 * followers_reset is called when the server has dropped some follower updates of the logged-in user,
+	 * the local list of followers is no longer reliable and must be reloaded (list_followers)
+	 */
+	default void followers_reset() {
+	}
+}
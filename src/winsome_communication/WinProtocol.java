@@ -0,0 +1,62 @@
+package winsome_communication;
+
+import java.io.IOException;
+
+/**
+ * This interface represents a wire protocol used to encode the payload of a WinMessage frame.
+ * <p></p>
+ * Available protocols:
+ * 1. JSON = the message is a JSON array of strings, objects are serialized to JSON strings (default).
+ * 2. BINARY = the message is a compact binary record with opcodes and length-prefixed UTF-8 fields.
+ * <p></p>
+ * The protocol of a received frame is detected from its first byte, so the server can always decode
+ * both of them. The protocol used for the responses is negotiated by the client with a HELLO request.
+ */
+public interface WinProtocol {
+	WinProtocol JSON = new WinJsonProtocol();
+	WinProtocol BINARY = new WinBinaryProtocol();
+
+	/**
+	 * @return the name of the protocol used in the handshake.
+	 */
+	String get_name();
+
+	/**
+	 * This method encodes the message.
+	 * @param message the message to encode.
+	 * @return the encoded payload.
+	 */
+	byte[] encode(WinMessage message);
+
+	/**
+	 * This method decodes the payload and appends the fields to the message.
+	 * @param data    the encoded payload.
+	 * @param message the message to fill.
+	 * @throws IOException if the payload is not valid.
+	 */
+	void decode(byte[] data, WinMessage message) throws IOException;
+
+	/**
+	 * This method detects the protocol used to encode a payload.
+	 * @param data the encoded payload.
+	 * @return the protocol of the payload.
+	 */
+	static WinProtocol detect(byte[] data) {
+		if (data.length > 0 && data[0] == WinBinaryProtocol.MAGIC)
+			return BINARY;
+		return JSON;
+	}
+
+	/**
+	 * This method returns the protocol with the given name.
+	 * @param name the name of the protocol.
+	 * @return the protocol, null if the name is unknown.
+	 */
+	static WinProtocol by_name(String name) {
+		if (JSON.get_name().equals(name))
+			return JSON;
+		if (BINARY.get_name().equals(name))
+			return BINARY;
+		return null;
+	}
+}
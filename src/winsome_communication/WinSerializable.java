@@ -1,17 +1,17 @@
 package winsome_communication;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 
 public abstract class WinSerializable {
 	// methods
 	public String serialize(){
 		/*
-		 * Serialize the object to a String using Jackson
+		 * Serialize the object to a String using the shared Jackson writer of its class
 		 */
-		ObjectMapper mapper = new ObjectMapper();
 		try {
-			return mapper.writeValueAsString(this);
+			return WinJsonRegistry.writer_for(getClass()).writeValueAsString(this);
 		} catch (IOException e) {
 			System.err.println(e.getMessage());
 			return "";
@@ -20,13 +20,26 @@ public abstract class WinSerializable {
 
 	public void deserialize(String string) {
 		/*
-		 * Deserialize the object from a String using Jackson
+		 * Deserialize the object from a String using the shared Jackson reader of its class
 		 */
-		ObjectMapper mapper = new ObjectMapper();
 		try {
-			mapper.readerForUpdating(this).readValue(string);
+			WinJsonRegistry.reader_for(getClass()).withValueToUpdate(this).readValue(string);
 		} catch (IOException e) {
 			System.err.println(e.getMessage());
 		}
 	}
+
+	/**
+	 * Write the object as a binary record (used by the binary protocol)
+	 * @param out the stream to write to
+	 * @throws IOException if the stream fails
+	 */
+	public abstract void write_binary(DataOutputStream out) throws IOException;
+
+	/**
+	 * Read the object from a binary record written by write_binary (used by the binary protocol)
+	 * @param in the stream to read from
+	 * @throws IOException if the stream fails or the record is not valid
+	 */
+	public abstract void read_binary(DataInputStream in) throws IOException;
 }
@@ -5,7 +5,15 @@ import winsome_DB.WinsomeDB_Exception;
 
 import java.io.IOException;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class is used by the client to communicate to the server.
@@ -14,11 +22,17 @@ import java.util.Arrays;
  * 1. login(String username, String password) = login the user.
  * 2. logout() = logout the user.
  * 3. list_users() = list all the users with similar interests to the user.
+ *    list_users(String after, int limit) = list a page of them.
+ *    recommend(int k) = list the k users recommended to the user, best first.
  * 4. list_following() = list all the users that the user is following.
+ *    list_followers() = list all the users that are following the user.
  * 5. follow(String username) = follow the user.
  * 6. unfollow(String username) = unfollow the user.
  * 7. blog() = get the blog of the user.
+ *    blog(int limit, String max_id, String since_id) = get a page of the blog of the user.
  * 8. feed() = get the feed of the user.
+ *    feed(int limit) = get the newest posts of the feed of the user.
+ *    feed(int limit, String max_id, String since_id) = get a page of the feed of the user.
  * 9. create_post(String title, String content) = create a post.
  * 10. delete_post(int post_id) = delete a post.
  * 11. show_post(int post_id) = show a post.
@@ -27,6 +41,18 @@ import java.util.Arrays;
  * 14. comment_post(int post_id, String comment) = comment a post.
  * 15. wallet() = get the wallet of the user.
  * 16. wallet_btc() = get the wallet of the user in BTC.
+ * 17. batch(WinMessage... requests) = send more requests in a single frame.
+ * <p></p>
+ * The messages are encoded with the JSON protocol until a different protocol
+ * is negotiated with handshake().
+ * <p></p>
+ * After start_pipelining() every request is tagged with a request id and the responses are read
+ * by a reader thread that completes the future of the request with the same id, so more requests
+ * can be in flight on the same connection (see send_async, show_post_async and show_posts).
+ * The blocking methods can still be used, and they can be called by more threads at the same time.
+ * <p></p>
+ * If a notification listener is set before the handshake, the sender asks the server to push the follower updates
+ * on this connection (NOTIFY frames), they are given to the listener instead of being returned as responses.
  * <p></p>
  * The methods return a Winsome_Exception if something goes wrong.
  * <p></p>
@@ -34,8 +60,24 @@ import java.util.Arrays;
  * 1. Winsome_Server_Sender(SocketChannel socket_channel) = create a new Winsome_Server_Sender.
  */
 public class WinsomeServerSender {
+	// Class constants
+	// the users asked in every page by list_users() (the server sends at most 100 users in a page)
+	public static final int LIST_USERS_PAGE_SIZE = 100;
+	// the posts asked in every page by blog() and feed() (the server sends at most 100 posts in a page)
+	public static final int POSTS_PAGE_SIZE = 100;
+
 	// Member variables
 	private final SocketChannel socket_channel;
+	private WinProtocol protocol = WinProtocol.JSON;
+	// pipelining
+	private final Object send_lock = new Object();
+	private final AtomicLong next_id = new AtomicLong();
+	private final Map<Long, CompletableFuture<WinMessage>> in_flight = new ConcurrentHashMap<>();
+	private Thread reader = null;
+	private volatile boolean pipeline_closed = false;
+	// notifications pushed by the server
+	private volatile WinNotificationListener listener = null;
+	private boolean push_enabled = false;
 
 	/**
 	 * Create a new Winsome_Server_Sender.
@@ -46,6 +88,250 @@ public class WinsomeServerSender {
 		this.socket_channel = socket_channel;
 	}
 
+	/**
+	 * Get the protocol used to encode the messages.
+	 *
+	 * @return the protocol in use.
+	 */
+	public WinProtocol get_protocol() {
+		return this.protocol;
+	}
+
+	/**
+	 * Set the listener of the notifications pushed by the server.
+	 * It must be set before the handshake, which asks the server to push the notifications.
+	 *
+	 * @param listener = the listener of the notifications.
+	 */
+	public void set_notification_listener(WinNotificationListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * @return true if the server has accepted to push the notifications on this connection.
+	 */
+	public boolean is_push_enabled() {
+		return this.push_enabled;
+	}
+
+	/**
+	 * Negotiate the protocol used to encode the messages.
+	 * The protocols are listed in order of preference, the server answers with the first one it supports.
+	 * If the negotiation fails, the sender keeps using the JSON protocol.
+	 *
+	 * @param protocols = the protocols supported by the client.
+	 * @throws WinsomeException if something goes wrong (check the message for details).
+	 */
+	public void handshake(WinProtocol... protocols) throws WinsomeException {
+		/*
+		 * handshake request (always sent with the JSON protocol):
+		 * 1. request type = HANDSHAKE_REQUEST
+		 * 2. protocol name 1
+		 * 3. protocol name 2
+		 * ...
+		 * n. NOTIFY (only if a notification listener is set)
+		 *
+		 * handshake response (always sent with the JSON protocol):
+		 * 1. SUCCESS / ERROR
+		 * 2. name of the chosen protocol / message (if error)
+		 * 3. NOTIFY (only if the server will push the notifications)
+		 *
+		 * 1. Create the request.
+		 * 2. Send the request.
+		 * 3. Receive the response.
+		 * 4. Check the response.
+		 * 5. Use the chosen protocol from now on.
+		 */
+
+		// 1. Create the request.
+		WinMessage handshake_request = new WinMessage();
+		handshake_request.addString(WinMessage.HANDSHAKE_REQUEST);
+		for (WinProtocol p : protocols)
+			handshake_request.addString(p.get_name());
+		if (this.listener != null)
+			handshake_request.addString(WinMessage.NOTIFY);
+
+		WinMessage handshake_response;
+		try {
+			// 2. Send handshake request to server
+			handshake_request.send(socket_channel, WinProtocol.JSON);
+
+			// 3. Receive handshake response from server
+			handshake_response = WinMessage.receive(socket_channel);
+		} catch (IOException e) {
+			throw new WinsomeDB_Exception.GenericException(
+					"Problems with the TCP connection, unable to send/receive packages.");
+		}
+
+		// 4. Check the response.
+		if (!handshake_response.getString(0).equals(WinMessage.SUCCESS)) {
+			// Handshake failed.
+			throw new WinsomeDB_Exception.GenericException(
+					handshake_response.getString(1));
+		}
+
+		// 5. Use the chosen protocol from now on.
+		WinProtocol chosen = WinProtocol.by_name(handshake_response.getString(1));
+		if (chosen == null)
+			throw new WinsomeDB_Exception.GenericException(
+					"The server chose an unknown protocol : " + handshake_response.getString(1));
+		this.protocol = chosen;
+		this.push_enabled = handshake_response.size() > 2 &&
+				WinMessage.NOTIFY.equals(handshake_response.getString(2));
+	}
+
+	/**
+	 * Start the pipelining: from now on the requests are tagged with a request id
+	 * and the responses are read by a reader thread.
+	 * The protocol must be negotiated before calling this method.
+	 */
+	public synchronized void start_pipelining() {
+		if (this.reader != null)
+			return;
+		this.reader = new Thread(this::read_responses, "winsome-sender-reader");
+		this.reader.setDaemon(true);
+		this.reader.start();
+	}
+
+	private void read_responses() {
+		/*
+		 * reader thread
+		 *
+		 * 1. receive the responses and complete the future of the request with the same id
+		 *    (the notifications are given to the listener)
+		 * 2. when the connection is closed, fail the requests still in flight
+		 *    (an unexpected error of the reader closes the pipeline too, so no caller waits forever)
+		 */
+
+		try {
+			// 1. receive the responses and complete the future of the request with the same id
+			while (true) {
+				WinMessage response = WinMessage.receive(socket_channel);
+				if (is_notification(response)) {
+					deliver(response);
+					continue;
+				}
+				CompletableFuture<WinMessage> future = this.in_flight.remove(response.getId());
+				if (future != null)
+					future.complete(response);
+				else
+					System.err.println("Unexpected response : " + response);
+			}
+		} catch (IOException | RuntimeException e) {
+			// 2. when the connection is closed, fail the requests still in flight
+			if (e instanceof RuntimeException)
+				e.printStackTrace();
+			this.pipeline_closed = true;
+			fail_in_flight();
+		}
+	}
+
+	private static boolean is_notification(WinMessage message) {
+		// (the first field is compared as it is, it may be a binary record)
+		return !message.hasId() && message.size() > 0 && WinMessage.NOTIFY.equals(message.getField(0));
+	}
+
+	private void deliver(WinMessage notification) {
+		/*
+		 * give every follower update of the notification (username, "true"/"false") to the listener
+		 * (a RESET notification tells the listener that some updates have been dropped by the server)
+		 * a notification that is not valid, or a listener that fails, does not stop the reading of the responses
+		 */
+		WinNotificationListener listener = this.listener;
+		if (listener == null)
+			return;
+		try {
+			if (notification.size() == 2 && WinMessage.NOTIFY_RESET.equals(notification.getString(1))) {
+				listener.followers_reset();
+				return;
+			}
+			for (int i = 1; i + 1 < notification.size(); i += 2)
+				listener.follower_update(notification.getString(i), Boolean.parseBoolean(notification.getString(i + 1)));
+		} catch (RuntimeException e) {
+			System.err.println("Error while delivering the notification " + notification + " : " + e);
+		}
+	}
+
+	private void fail_in_flight() {
+		for (Long id : this.in_flight.keySet()) {
+			CompletableFuture<WinMessage> future = this.in_flight.remove(id);
+			if (future != null)
+				future.completeExceptionally(new WinsomeDB_Exception.GenericException(
+						"Problems with the TCP connection, unable to send/receive packages."));
+		}
+	}
+
+	/**
+	 * Send a request without waiting for its response (the pipelining is started if needed).
+	 *
+	 * @param request = the request to send, its request id is set by this method.
+	 * @return the future completed with the response of the request.
+	 */
+	public CompletableFuture<WinMessage> send_async(WinMessage request) {
+		/*
+		 * 1. Tag the request with a new id and register its future.
+		 * 2. Send the request (the frames of different threads are not interleaved).
+		 * 3. If the connection has been closed meanwhile, fail the future.
+		 */
+
+		start_pipelining();
+
+		// 1. Tag the request with a new id and register its future.
+		CompletableFuture<WinMessage> future = new CompletableFuture<>();
+		long id = this.next_id.getAndIncrement();
+		request.setId(id);
+		this.in_flight.put(id, future);
+
+		// 2. Send the request (the frames of different threads are not interleaved).
+		try {
+			synchronized (this.send_lock) {
+				request.send(socket_channel, protocol);
+			}
+		} catch (IOException e) {
+			this.in_flight.remove(id);
+			future.completeExceptionally(new WinsomeDB_Exception.GenericException(
+					"Problems with the TCP connection, unable to send/receive packages."));
+		}
+
+		// 3. If the connection has been closed meanwhile, fail the future.
+		if (this.pipeline_closed)
+			fail_in_flight();
+
+		return future;
+	}
+
+	private WinMessage exchange(WinMessage request) throws WinsomeException {
+		/*
+		 * Send the request and wait for its response.
+		 * With the pipelining the response is received by the reader thread.
+		 */
+
+		synchronized (this) {
+			if (this.reader == null) {
+				try {
+					request.send(socket_channel, protocol);
+					WinMessage response;
+					while (is_notification(response = WinMessage.receive(socket_channel)))
+						deliver(response);
+					return response;
+				} catch (IOException e) {
+					throw new WinsomeDB_Exception.GenericException(
+							"Problems with the TCP connection, unable to send/receive packages.");
+				}
+			}
+		}
+
+		try {
+			return send_async(request).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new WinsomeDB_Exception.GenericException("Interrupted while waiting for the response.");
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof WinsomeException ? (WinsomeException) e.getCause() :
+					new WinsomeDB_Exception.GenericException(e.getCause().getMessage());
+		}
+	}
+
 	/**
 	 * Login the user.
 	 *
@@ -76,17 +362,8 @@ public class WinsomeServerSender {
 		login_request.addString(username);
 		login_request.addString(password);
 
-		WinMessage login_response;
-		try {
-			// 2. Send login request to server
-			login_request.send(socket_channel);
-
-			// 3. Receive login response from server of unknown size
-			login_response = WinMessage.receive(socket_channel);
-		} catch (IOException e) {
-			throw new WinsomeDB_Exception.GenericException(
-					"Problems with the TCP connection, unable to send/receive packages.");
-		}
+		// 2. Send login request to server + // 3. Receive login response from server of unknown size
+		WinMessage login_response = exchange(login_request);
 
 		// 4. Check the response.
 		if (!login_response.getString(0).equals(WinMessage.SUCCESS)) {
@@ -122,17 +399,8 @@ public class WinsomeServerSender {
 		WinMessage logout_request = new WinMessage();
 		logout_request.addString(WinMessage.LOGOUT_REQUEST);
 
-		WinMessage logout_response;
-		try {
-			// 2. Send logout request to server
-			logout_request.send(socket_channel);
-
-			// 3. Receive logout response from server of unknown size
-			logout_response = WinMessage.receive(socket_channel);
-		} catch (IOException e) {
-			throw new WinsomeDB_Exception.GenericException(
-					"Problems with the TCP connection, unable to send/receive packages.");
-		}
+		// 2. Send logout request to server + // 3. Receive logout response from server of unknown size
+		WinMessage logout_response = exchange(logout_request);
 
 		// 4. Check the response.
 		if (!logout_response.getString(0).equals(WinMessage.SUCCESS)) {
@@ -145,22 +413,54 @@ public class WinsomeServerSender {
 	}
 
 	/**
-	 * List all the users with similar interests to the user.
+	 * List all the users with similar interests to the user (the server sends them a page at a time).
 	 *
 	 * @return the list of users.
 	 * @throws WinsomeException if something goes wrong (check the message for details).
 	 */
 	public String[] list_users() throws WinsomeException {
+		/*
+		 * 1. Ask the pages until a page is not full, every page starts after the last user of the previous one.
+		 * 2. Return the users of all the pages.
+		 */
+
+		// 1. Ask the pages until a page is not full, every page starts after the last user of the previous one.
+		List<String> users = new ArrayList<>();
+		String after = "";
+		UserRepr[] page;
+		do {
+			page = list_users(after, LIST_USERS_PAGE_SIZE);
+			for (UserRepr user : page)
+				users.add(user.toString());
+			if (page.length > 0)
+				after = page[page.length - 1].getUsername();
+		} while (page.length == LIST_USERS_PAGE_SIZE);
+
+		// 2. Return the users of all the pages.
+		return users.toArray(new String[0]);
+	}
+
+	/**
+	 * List a page of the users with similar interests to the user.
+	 *
+	 * @param after the username of the last user of the previous page, empty for the first page.
+	 * @param limit the maximum number of users in the page (the server may cap it).
+	 * @return the users of the page, fewer than limit only on the last page.
+	 * @throws WinsomeException if something goes wrong (check the message for details).
+	 */
+	public UserRepr[] list_users(String after, int limit) throws WinsomeException {
 		/*
 		 * list_users request:
 		 * 1. request type = LIST_USERS_REQUEST
+		 * 2. username after which the page starts (empty for the first page)
+		 * 3. maximum number of users in the page
 		 *
 		 * list_users response:
 		 * 1. SUCCESS / ERROR
 		 * 2. message (if error)
-		 * 3. username 1
-		 * 4. username 2
-		 * 5. username 3
+		 * 3. user 1
+		 * 4. user 2
+		 * 5. user 3
 		 * ...
 		 *
 		 * 1. Create the request.
@@ -172,18 +472,11 @@ public class WinsomeServerSender {
 		// 1. Create the request.
 		WinMessage list_users_request = new WinMessage();
 		list_users_request.addString(WinMessage.LIST_USERS_REQUEST);
+		list_users_request.addString(after == null ? "" : after);
+		list_users_request.addString(Integer.toString(limit));
 
-		WinMessage list_users_response;
-		try {
-			// 2. Send list_users request to server
-			list_users_request.send(socket_channel);
-
-			// 3. Receive list_users response from server of unknown size
-			list_users_response = WinMessage.receive(socket_channel);
-		} catch (IOException e) {
-			throw new WinsomeDB_Exception.GenericException(
-					"Problems with the TCP connection, unable to send/receive packages.");
-		}
+		// 2. Send list_users request to server + // 3. Receive list_users response from server of unknown size
+		WinMessage list_users_response = exchange(list_users_request);
 
 		// 4. Check the response.
 		if (!list_users_response.getString(0).equals(WinMessage.SUCCESS)) {
@@ -193,12 +486,53 @@ public class WinsomeServerSender {
 		}
 
 		// List_users successful.
-		UserRepr[] users = new UserRepr[list_users_response.size() - 1];
-		for (int i = 1; i < list_users_response.size(); i++) {
-			users[i - 1] = new UserRepr(list_users_response.getString(i));
+		return list_users_response.getObjects(1, UserRepr::new).toArray(new UserRepr[0]);
+	}
+
+	/**
+	 * List the users recommended to the user (scored by the server), best first.
+	 *
+	 * @param k the maximum number of users to recommend (the server may cap it).
+	 * @return the list of users.
+	 * @throws WinsomeException if something goes wrong (check the message for details).
+	 */
+	public String[] recommend(int k) throws WinsomeException {
+		/*
+		 * recommend request:
+		 * 1. request type = RECOMMEND_REQUEST
+		 * 2. maximum number of users to recommend
+		 *
+		 * recommend response:
+		 * 1. SUCCESS / ERROR
+		 * 2. message (if error)
+		 * 3. user 1
+		 * 4. user 2
+		 * ...
+		 *
+		 * 1. Create the request.
+		 * 2. Send the request.
+		 * 3. Receive the response.
+		 * 4. Check the response.
+		 */
+
+		// 1. Create the request.
+		WinMessage recommend_request = new WinMessage();
+		recommend_request.addString(WinMessage.RECOMMEND_REQUEST);
+		recommend_request.addString(Integer.toString(k));
+
+		// 2. Send recommend request to server + // 3. Receive recommend response from server
+		WinMessage recommend_response = exchange(recommend_request);
+
+		// 4. Check the response.
+		if (!recommend_response.getString(0).equals(WinMessage.SUCCESS)) {
+			// Recommend failed.
+			throw new WinsomeDB_Exception.GenericException(
+					recommend_response.getString(1));
 		}
 
-		return Arrays.stream(users).map(UserRepr::toString).toArray(String[]::new);
+		// Recommend successful.
+		return recommend_response.getObjects(1, UserRepr::new).stream()
+				.map(UserRepr::toString).toArray(String[]::new);
 	}
 
 	/**
@@ -230,17 +564,8 @@ public class WinsomeServerSender {
 		WinMessage list_following_request = new WinMessage();
 		list_following_request.addString(WinMessage.LIST_FOLLOWING_REQUEST);
 
-		WinMessage list_following_response;
-		try {
-			// 2. Send list_following request to server
-			list_following_request.send(socket_channel);
-
-			// 3. Receive list_following response from server of unknown size
-			list_following_response = WinMessage.receive(socket_channel);
-		} catch (IOException e) {
-			throw new WinsomeDB_Exception.GenericException(
-					"Problems with the TCP connection, unable to send/receive packages.");
-		}
+		// 2. Send list_following request to server + // 3. Receive list_following response from server of unknown size
+		WinMessage list_following_response = exchange(list_following_request);
 
 		// 4. Check the response.
 		if (!list_following_response.getString(0).equals(WinMessage.SUCCESS)) {
@@ -253,6 +578,50 @@ public class WinsomeServerSender {
 		return list_following_response.getStrings().subList(1, list_following_response.size()).toArray(new String[0]);
 	}
 
+	/**
+	 * List all the users that are following the user
+	 * (the client keeps its own list updated with the notifications, this request reloads it).
+	 *
+	 * @return the list of users.
+	 * @throws WinsomeException if something goes wrong (check the message for details).
+	 */
+	public String[] list_followers() throws WinsomeException {
+		/*
+		 * list_followers request:
+		 * 1. request type = LIST_FOLLOWERS_REQUEST
+		 *
+		 * list_followers response:
+		 * 1. SUCCESS / ERROR
+		 * 2. message (if error)
+		 * 3. username 1
+		 * 4. username 2
+		 * 5. username 3
+		 * ...
+		 *
+		 * 1. Create the request.
+		 * 2. Send the request.
+		 * 3. Receive the response.
+		 * 4. Check the response.
+		 */
+
+		// 1. Create the request.
+		WinMessage list_followers_request = new WinMessage();
+		list_followers_request.addString(WinMessage.LIST_FOLLOWERS_REQUEST);
+
+		// 2. Send list_followers request to server + // 3. Receive list_followers response from server of unknown size
+		WinMessage list_followers_response = exchange(list_followers_request);
+
+		// 4. Check the response.
+		if (!list_followers_response.getString(0).equals(WinMessage.SUCCESS)) {
+			// List_followers failed.
+			throw new WinsomeDB_Exception.GenericException(
+					list_followers_response.getString(1));
+		}
+
+		// List_followers successful.
+		return list_followers_response.getStrings().subList(1, list_followers_response.size()).toArray(new String[0]);
+	}
+
 	/**
 	 * Follow the user.
 	 *
@@ -280,17 +649,8 @@ public class WinsomeServerSender {
 		follow_request.addString(WinMessage.FOLLOW_REQUEST);
 		follow_request.addString(username);
 
-		WinMessage follow_response;
-		try {
-			// 2. Send follow request to server
-			follow_request.send(socket_channel);
-
-			// 3. Receive follow response from server of unknown size
-			follow_response = WinMessage.receive(socket_channel);
-		} catch (IOException e) {
-			throw new WinsomeDB_Exception.GenericException(
-					"Problems with the TCP connection, unable to send/receive packages.");
-		}
+		// 2. Send follow request to server + // 3. Receive follow response from server of unknown size
+		WinMessage follow_response = exchange(follow_request);
 
 		// 4. Check the response.
 		if (!follow_response.getString(0).equals(WinMessage.SUCCESS)) {
@@ -329,17 +689,8 @@ public class WinsomeServerSender {
 		unfollow_request.addString(WinMessage.UNFOLLOW_REQUEST);
 		unfollow_request.addString(username);
 
-		WinMessage unfollow_response;
-		try {
-			// 2. Send unfollow request to server
-			unfollow_request.send(socket_channel);
-
-			// 3. Receive unfollow response from server of unknown size
-			unfollow_response = WinMessage.receive(socket_channel);
-		} catch (IOException e) {
-			throw new WinsomeDB_Exception.GenericException(
-					"Problems with the TCP connection, unable to send/receive packages.");
-		}
+		// 2. Send unfollow request to server + // 3. Receive unfollow response from server of unknown size
+		WinMessage unfollow_response = exchange(unfollow_request);
 
 		// 4. Check the response.
 		if (!unfollow_response.getString(0).equals(WinMessage.SUCCESS)) {
@@ -352,70 +703,92 @@ public class WinsomeServerSender {
 	}
 
 	/**
-	 * Get the blog of the user.
+	 * Get the blog of the user (the server sends it a page at a time).
 	 *
-	 * @return the blog of the user.
+	 * @return the blog of the user, newest first.
 	 * @throws WinsomeException if something goes wrong (check the message for details).
 	 */
 	public PostReprSimple[] blog() throws WinsomeException {
-		/*
-		 * blog request:
-		 * 1. request type = BLOG_REQUEST
-		 *
-		 * blog response:
-		 * 1. SUCCESS / ERROR
-		 * 2. message (if error)
-		 * 3. post 1
-		 * 4. post 2
-		 * 5. post 3
-		 * ...
-		 *
-		 * 1. Create the request.
-		 * 2. Send the request.
-		 * 3. Receive the response.
-		 * 4. Check the response.
-		 */
-
-		// 1. Create the request.
-		WinMessage blog_request = new WinMessage();
-		blog_request.addString(WinMessage.BLOG_REQUEST);
-
-		WinMessage blog_response;
-		try {
-			// 2. Send blog request to server
-			blog_request.send(socket_channel);
+		return all_pages(WinMessage.BLOG_REQUEST);
+	}
 
-			// 3. Receive blog response from server of unknown size
-			blog_response = WinMessage.receive(socket_channel);
-		} catch (IOException e) {
-			throw new WinsomeDB_Exception.GenericException(
-					"Problems with the TCP connection, unable to send/receive packages.");
-		}
+	/**
+	 * Get a page of the blog of the user.
+	 *
+	 * @param limit    the maximum number of posts (the server may cap it).
+	 * @param max_id   only the posts older than this one (the last post of the previous page), null for the newest posts.
+	 * @param since_id only the posts newer than this one, null for no limit.
+	 * @return the posts of the page, newest first.
+	 * @throws WinsomeException if something goes wrong (check the message for details).
+	 */
+	public PostReprSimple[] blog(int limit, String max_id, String since_id) throws WinsomeException {
+		return page(WinMessage.BLOG_REQUEST, limit, max_id, since_id);
+	}
 
-		// 4. Check the response.
-		if (!blog_response.getString(0).equals(WinMessage.SUCCESS)) {
-			// Blog failed.
-			throw new WinsomeDB_Exception.GenericException(
-					blog_response.getString(1));
-		}
+	/**
+	 * Get the feed of the user (the server sends it a page at a time).
+	 *
+	 * @return the feed of the user, newest first.
+	 * @throws WinsomeException if something goes wrong (check the message for details).
+	 */
+	public PostReprSimple[] feed() throws WinsomeException {
+		return all_pages(WinMessage.SHOW_FEED_REQUEST);
+	}
 
-		// Blog successful.
-		return blog_response.getStrings().subList(1, blog_response.size()).stream()
-				.map(PostReprSimple::new).toArray(PostReprSimple[]::new);
+	/**
+	 * Get the newest posts of the feed of the user.
+	 *
+	 * @param limit the maximum number of posts (the server may cap it).
+	 * @return the newest posts of the feed of the user, newest first.
+	 * @throws WinsomeException if something goes wrong (check the message for details).
+	 */
+	public PostReprSimple[] feed(int limit) throws WinsomeException {
+		return page(WinMessage.SHOW_FEED_REQUEST, limit, null, null);
 	}
 
 	/**
-	 * Get the feed of the user.
+	 * Get a page of the feed of the user.
 	 *
-	 * @return the feed of the user.
+	 * @param limit    the maximum number of posts (the server may cap it).
+	 * @param max_id   only the posts older than this one (the last post of the previous page), null for the newest posts.
+	 * @param since_id only the posts newer than this one, null for no limit.
+	 * @return the posts of the page, newest first.
 	 * @throws WinsomeException if something goes wrong (check the message for details).
 	 */
-	public PostReprSimple[] feed() throws WinsomeException {
+	public PostReprSimple[] feed(int limit, String max_id, String since_id) throws WinsomeException {
+		return page(WinMessage.SHOW_FEED_REQUEST, limit, max_id, since_id);
+	}
+
+	private PostReprSimple[] all_pages(String type) throws WinsomeException {
+		/*
+		 * 1. Ask the pages until a page is not full, every page starts after the last post of the previous one.
+		 * 2. Return the posts of all the pages.
+		 */
+
+		// 1. Ask the pages until a page is not full, every page starts after the last post of the previous one.
+		List<PostReprSimple> posts = new ArrayList<>();
+		String max_id = null;
+		PostReprSimple[] page;
+		do {
+			page = page(type, POSTS_PAGE_SIZE, max_id, null);
+			posts.addAll(Arrays.asList(page));
+			if (page.length > 0)
+				max_id = page[page.length - 1].getId();
+		} while (page.length == POSTS_PAGE_SIZE);
+
+		// 2. Return the posts of all the pages.
+		return posts.toArray(new PostReprSimple[0]);
+	}
+
+	private PostReprSimple[] page(String type, int limit, String max_id, String since_id) throws WinsomeException {
 		/*
-		 * feed request:
-		 * 1. request type = FEED_REQUEST
+		 * blog / feed request:
+		 * 1. request type = BLOG_REQUEST / SHOW_FEED_REQUEST
+		 * 2. maximum number of posts in the page
+		 * 3. max_id (empty for the newest posts)
+		 * 4. since_id (empty for no limit)
 		 *
-		 * feed response:
+		 * blog / feed response:
 		 * 1. SUCCESS / ERROR
 		 * 2. message (if error)
 		 * 3. post 1
@@ -430,31 +803,24 @@ public class WinsomeServerSender {
 		 */
 
 		// 1. Create the request.
-		WinMessage feed_request = new WinMessage();
-		feed_request.addString(WinMessage.SHOW_FEED_REQUEST);
+		WinMessage page_request = new WinMessage();
+		page_request.addString(type);
+		page_request.addString(Integer.toString(limit));
+		page_request.addString(max_id == null ? "" : max_id);
+		page_request.addString(since_id == null ? "" : since_id);
 
-		WinMessage feed_response;
-		try {
-			// 2. Send feed request to server
-			feed_request.send(socket_channel);
-
-			// 3. Receive feed response from server of unknown size
-			feed_response = WinMessage.receive(socket_channel);
-		} catch (IOException e) {
-			throw new WinsomeDB_Exception.GenericException(
-					"Problems with the TCP connection, unable to send/receive packages.");
-		}
+		// 2. Send the request to server + // 3. Receive the response from server
+		WinMessage page_response = exchange(page_request);
 
 		// 4. Check the response.
-		if (!feed_response.getString(0).equals(WinMessage.SUCCESS)) {
-			// Feed failed.
+		if (!page_response.getString(0).equals(WinMessage.SUCCESS)) {
+			// Request failed.
 			throw new WinsomeDB_Exception.GenericException(
-					feed_response.getString(1));
+					page_response.getString(1));
 		}
 
-		// Feed successful.
-		return feed_response.getStrings().subList(1, feed_response.size()).stream()
-				.map(PostReprSimple::new).toArray(PostReprSimple[]::new);
+		// Request successful.
+		return page_response.getObjects(1, PostReprSimple::new).toArray(new PostReprSimple[0]);
 	}
 
 	/**
@@ -487,17 +853,8 @@ public class WinsomeServerSender {
 		create_post_request.addString(title);
 		create_post_request.addString(content);
 
-		WinMessage create_post_response;
-		try {
-			// 2. Send create post request to server
-			create_post_request.send(socket_channel);
-
-			// 3. Receive create post response from server of unknown size
-			create_post_response = WinMessage.receive(socket_channel);
-		} catch (IOException e) {
-			throw new WinsomeDB_Exception.GenericException(
-					"Problems with the TCP connection, unable to send/receive packages.");
-		}
+		// 2. Send create post request to server + // 3. Receive create post response from server of unknown size
+		WinMessage create_post_response = exchange(create_post_request);
 
 		// 4. Check the response.
 		if (!create_post_response.getString(0).equals(WinMessage.SUCCESS)) {
@@ -536,17 +893,8 @@ public class WinsomeServerSender {
 		delete_post_request.addString(WinMessage.DELETE_REQUEST);
 		delete_post_request.addString(String.valueOf(post_id));
 
-		WinMessage delete_post_response;
-		try {
-			// 2. Send delete post request to server
-			delete_post_request.send(socket_channel);
-
-			// 3. Receive delete post response from server of unknown size
-			delete_post_response = WinMessage.receive(socket_channel);
-		} catch (IOException e) {
-			throw new WinsomeDB_Exception.GenericException(
-					"Problems with the TCP connection, unable to send/receive packages.");
-		}
+		// 2. Send delete post request to server + // 3. Receive delete post response from server of unknown size
+		WinMessage delete_post_response = exchange(delete_post_request);
 
 		// 4. Check the response.
 		if (!delete_post_response.getString(0).equals(WinMessage.SUCCESS)) {
@@ -587,17 +935,8 @@ public class WinsomeServerSender {
 		show_post_request.addString(WinMessage.SHOW_POST_REQUEST);
 		show_post_request.addString(String.valueOf(post_id));
 
-		WinMessage show_post_response;
-		try {
-			// 2. Send show post request to server
-			show_post_request.send(socket_channel);
-
-			// 3. Receive show post response from server of unknown size
-			show_post_response = WinMessage.receive(socket_channel);
-		} catch (IOException e) {
-			throw new WinsomeDB_Exception.GenericException(
-					"Problems with the TCP connection, unable to send/receive packages.");
-		}
+		// 2. Send show post request to server + // 3. Receive show post response from server of unknown size
+		WinMessage show_post_response = exchange(show_post_request);
 
 		// 4. Check the response.
 		if (!show_post_response.getString(0).equals(WinMessage.SUCCESS)) {
@@ -607,7 +946,71 @@ public class WinsomeServerSender {
 		}
 
 		// Show post successful.
-		return new PostReprDetailed(show_post_response.getString(1));
+		return show_post_response.getObject(1, PostReprDetailed::new);
+	}
+
+	/**
+	 * Show a post without waiting for the response (the request is pipelined).
+	 *
+	 * @param post_id = the id of the post.
+	 * @return the future completed with the post, or with a WinsomeException if something goes wrong.
+	 */
+	public CompletableFuture<PostReprDetailed> show_post_async(int post_id) {
+		/*
+		 * 1. Create the request.
+		 * 2. Send the request.
+		 * 3. Check the response when it arrives.
+		 */
+
+		// 1. Create the request.
+		WinMessage show_post_request = new WinMessage();
+		show_post_request.addString(WinMessage.SHOW_POST_REQUEST);
+		show_post_request.addString(String.valueOf(post_id));
+
+		// 2. Send the request. + // 3. Check the response when it arrives.
+		return send_async(show_post_request).thenApply(show_post_response -> {
+			if (!show_post_response.getString(0).equals(WinMessage.SUCCESS)) {
+				// Show post failed.
+				throw new CompletionException(new WinsomeDB_Exception.GenericException(
+						show_post_response.getString(1)));
+			}
+			return show_post_response.getObject(1, PostReprDetailed::new);
+		});
+	}
+
+	/**
+	 * Show more posts, the requests are pipelined so they all travel on the connection at the same time.
+	 *
+	 * @param post_ids = the ids of the posts.
+	 * @return the posts, in the same order of the ids.
+	 * @throws WinsomeException if something goes wrong for any post (check the message for details).
+	 */
+	public PostReprDetailed[] show_posts(int... post_ids) throws WinsomeException {
+		/*
+		 * 1. Send every request.
+		 * 2. Wait for the responses in order.
+		 */
+
+		// 1. Send every request.
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		CompletableFuture<PostReprDetailed>[] futures = new CompletableFuture[post_ids.length];
+		for (int i = 0; i < post_ids.length; i++)
+			futures[i] = show_post_async(post_ids[i]);
+
+		// 2. Wait for the responses in order.
+		PostReprDetailed[] posts = new PostReprDetailed[post_ids.length];
+		for (int i = 0; i < post_ids.length; i++) {
+			try {
+				posts[i] = futures[i].get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new WinsomeDB_Exception.GenericException("Interrupted while waiting for the response.");
+			} catch (ExecutionException e) {
+				throw e.getCause() instanceof WinsomeException ? (WinsomeException) e.getCause() :
+						new WinsomeDB_Exception.GenericException(e.getCause().getMessage());
+			}
+		}
+		return posts;
 	}
 
 	/**
@@ -637,17 +1040,8 @@ public class WinsomeServerSender {
 		rewin_post_request.addString(WinMessage.REWIN_REQUEST);
 		rewin_post_request.addString(String.valueOf(post_id));
 
-		WinMessage rewin_post_response;
-		try {
-			// 2. Send rewin post request to server
-			rewin_post_request.send(socket_channel);
-
-			// 3. Receive rewin post response from server of unknown size
-			rewin_post_response = WinMessage.receive(socket_channel);
-		} catch (IOException e) {
-			throw new WinsomeDB_Exception.GenericException(
-					"Problems with the TCP connection, unable to send/receive packages.");
-		}
+		// 2. Send rewin post request to server + // 3. Receive rewin post response from server of unknown size
+		WinMessage rewin_post_response = exchange(rewin_post_request);
 
 		// 4. Check the response.
 		if (!rewin_post_response.getString(0).equals(WinMessage.SUCCESS)) {
@@ -689,17 +1083,8 @@ public class WinsomeServerSender {
 		rate_post_request.addString(String.valueOf(post_id));
 		rate_post_request.addString(rating ? RateDB.UPVOTE : RateDB.DOWNVOTE);
 
-		WinMessage rate_post_response;
-		try {
-			// 2. Send rate post request to server
-			rate_post_request.send(socket_channel);
-
-			// 3. Receive rate post response from server of unknown size
-			rate_post_response = WinMessage.receive(socket_channel);
-		} catch (IOException e) {
-			throw new WinsomeDB_Exception.GenericException(
-					"Problems with the TCP connection, unable to send/receive packages.");
-		}
+		// 2. Send rate post request to server + // 3. Receive rate post response from server of unknown size
+		WinMessage rate_post_response = exchange(rate_post_request);
 
 		// 4. Check the response.
 		if (!rate_post_response.getString(0).equals(WinMessage.SUCCESS)) {
@@ -741,17 +1126,8 @@ public class WinsomeServerSender {
 		comment_post_request.addString(String.valueOf(post_id));
 		comment_post_request.addString(comment);
 
-		WinMessage comment_post_response;
-		try {
-			// 2. Send comment post request to server
-			comment_post_request.send(socket_channel);
-
-			// 3. Receive comment post response from server of unknown size
-			comment_post_response = WinMessage.receive(socket_channel);
-		} catch (IOException e) {
-			throw new WinsomeDB_Exception.GenericException(
-					"Problems with the TCP connection, unable to send/receive packages.");
-		}
+		// 2. Send comment post request to server + // 3. Receive comment post response from server of unknown size
+		WinMessage comment_post_response = exchange(comment_post_request);
 
 		// 4. Check the response.
 		if (!comment_post_response.getString(0).equals(WinMessage.SUCCESS)) {
@@ -789,17 +1165,8 @@ public class WinsomeServerSender {
 		WinMessage wallet_request = new WinMessage();
 		wallet_request.addString(WinMessage.WALLET_REQUEST);
 
-		WinMessage wallet_response;
-		try {
-			// 2. Send wallet request to server
-			wallet_request.send(socket_channel);
-
-			// 3. Receive wallet response from server of unknown size
-			wallet_response = WinMessage.receive(socket_channel);
-		} catch (IOException e) {
-			throw new WinsomeDB_Exception.GenericException(
-					"Problems with the TCP connection, unable to send/receive packages.");
-		}
+		// 2. Send wallet request to server + // 3. Receive wallet response from server of unknown size
+		WinMessage wallet_response = exchange(wallet_request);
 
 		// 4. Check the response.
 		if (!wallet_response.getString(0).equals(WinMessage.SUCCESS)) {
@@ -809,7 +1176,7 @@ public class WinsomeServerSender {
 		}
 
 		// Wallet successful.
-		return new WalletRepr(wallet_response.getString(1));
+		return wallet_response.getObject(1, WalletRepr::new);
 	}
 
 	/**
@@ -838,17 +1205,8 @@ public class WinsomeServerSender {
 		WinMessage wallet_btc_request = new WinMessage();
 		wallet_btc_request.addString(WinMessage.WALLET_BTC_REQUEST);
 
-		WinMessage wallet_btc_response;
-		try {
-			// 2. Send wallet btc request to server
-			wallet_btc_request.send(socket_channel);
-
-			// 3. Receive wallet btc response from server of unknown size
-			wallet_btc_response = WinMessage.receive(socket_channel);
-		} catch (IOException e) {
-			throw new WinsomeDB_Exception.GenericException(
-					"Problems with the TCP connection, unable to send/receive packages.");
-		}
+		// 2. Send wallet btc request to server + // 3. Receive wallet btc response from server of unknown size
+		WinMessage wallet_btc_response = exchange(wallet_btc_request);
 
 		// 4. Check the response.
 		if (!wallet_btc_response.getString(0).equals(WinMessage.SUCCESS)) {
@@ -861,6 +1219,63 @@ public class WinsomeServerSender {
 		return Double.parseDouble(wallet_btc_response.getString(1));
 	}
 
+	/**
+	 * Send more requests in a single frame.
+	 * The server serves them in order, the consecutive SHOW_POST, RATE and FOLLOW requests are served
+	 * with a single access to the database.
+	 *
+	 * @param requests = the requests (built as for the single methods, e.g. [RATE, post id, vote]).
+	 * @return the response of each request, in the same order (each one starts with SUCCESS / ERROR).
+	 * @throws WinsomeException if the whole batch fails (check the message for details).
+	 */
+	public WinMessage[] batch(WinMessage... requests) throws WinsomeException {
+		/*
+		 * batch request:
+		 * 1. request type = BATCH_REQUEST
+		 * 2. request 1
+		 * 3. request 2
+		 * ...
+		 *
+		 * batch response:
+		 * 1. SUCCESS / ERROR
+		 * 2. message (if error)
+		 * 3. response 1
+		 * 4. response 2
+		 * ...
+		 *
+		 * 1. Create the request.
+		 * 2. Send the request.
+		 * 3. Receive the response.
+		 * 4. Check the response.
+		 */
+
+		// 1. Create the request.
+		WinMessage batch_request = new WinMessage();
+		batch_request.addString(WinMessage.BATCH_REQUEST);
+		for (WinMessage request : requests)
+			batch_request.addMessage(request);
+
+		// 2. Send batch request to server + // 3. Receive batch response from server
+		WinMessage batch_response = exchange(batch_request);
+
+		// 4. Check the response.
+		if (!batch_response.getString(0).equals(WinMessage.SUCCESS)) {
+			// Batch failed.
+			throw new WinsomeDB_Exception.GenericException(
+					batch_response.getString(1));
+		}
+
+		// Batch successful.
+		WinMessage[] responses = new WinMessage[batch_response.size() - 1];
+		try {
+			for (int i = 1; i < batch_response.size(); i++)
+				responses[i - 1] = batch_response.getMessage(i);
+		} catch (IOException e) {
+			throw new WinsomeDB_Exception.GenericException("Invalid batch response.");
+		}
+		return responses;
+	}
+
 	/**
 	 * Disconnect from the server.
 	 *
@@ -885,7 +1300,9 @@ public class WinsomeServerSender {
 
 		try {
 			// 2. Send disconnect request to server
-			disconnect_request.send(socket_channel);
+			synchronized (this.send_lock) {
+				disconnect_request.send(socket_channel, protocol);
+			}
 
 		} catch (IOException e) {
 			throw new WinsomeDB_Exception.GenericException(
@@ -0,0 +1,324 @@
+package winsome_server;
+
+import winsome_communication.WinBufferPool;
+import winsome_communication.WinMessage;
+import winsome_communication.WinMessageDecoder;
+import winsome_communication.WinProtocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * CChannel class
+ * This class holds the state of a client channel registered to the selector of a ServerReactor.
+ * An instance is attached to the SelectionKey of the channel when the reactor registers the connection.
+ * <p></p>
+ * It contains:
+ * 1. The decoder of the incoming frames.
+ * 2. The queue of the encoded responses waiting to be written.
+ * 3. The protocol used to encode the responses (negotiated with the HELLO request, JSON by default).
+ * 4. The requests with a request id that are in flight, and the queue of the ones that must be served in order.
+ * <p></p>
+ * A request without a request id stops the reading until its response has been written (one request at a time):
+ * the reading starts again only when the response has been queued (enqueue) and the queue has been drained,
+ * the NOTIFY frames (push) share the queue but never start the reading.
+ * The requests with a request id are pipelined: the reading goes on until MAX_IN_FLIGHT of them are being served,
+ * the read-only ones run concurrently, the others run one at a time in the order they have been received
+ * (a read-only request received while another request of the channel is queued waits for it, so it sees its effects).
+ * <p></p>
+ * The queued frames and the payload buffer of the decoder are taken from WinBufferPool.SHARED,
+ * they are given back when they have been written or when the channel is closed.
+ * <p></p>
+ * The interest set of the key is always updated while holding the lock of the CChannel,
+ * so the selector thread and the workers never overwrite each other's changes.
+ */
+public class CChannel {
+	// class constants
+	public static final int MAX_IN_FLIGHT = 32;
+
+	// member variables
+	private final SocketChannel socket_channel;
+	private final SelectionKey selection_key;
+	private final ServerReactor reactor;
+	private final WinMessageDecoder decoder = new WinMessageDecoder();
+	private final ArrayDeque<ByteBuffer> output_queue = new ArrayDeque<>();
+	private boolean reading = true;
+	private boolean awaiting_response = false; // a request without id is being served
+	private int in_flight = 0;
+	private final ArrayDeque<Runnable> serial_queue = new ArrayDeque<>();
+	private boolean serial_running = false;
+	private boolean closed = false;
+	private volatile WinProtocol protocol = WinProtocol.JSON;
+
+	// constructor
+	public CChannel(SocketChannel socket_channel, SelectionKey selection_key, ServerReactor reactor) {
+		this.socket_channel = socket_channel;
+		this.selection_key = selection_key;
+		this.reactor = reactor;
+	}
+
+	// getters
+	public SocketChannel get_socket_channel() {
+		return this.socket_channel;
+	}
+
+	public SelectionKey get_selection_key() {
+		return this.selection_key;
+	}
+
+	public WinProtocol get_protocol() {
+		return this.protocol;
+	}
+
+	public synchronized boolean is_closed() {
+		return this.closed;
+	}
+
+	// setters
+	public void set_protocol(WinProtocol protocol) {
+		this.protocol = protocol;
+	}
+
+	// methods
+
+	/**
+	 * read_message
+	 * this method is used to read the available bytes of the channel
+	 * it must be called only by the selector thread when the channel is readable
+	 *
+	 * @return the received message if a whole frame is available, null otherwise
+	 * @throws IOException if the channel has been closed or the frame is not valid
+	 */
+	public WinMessage read_message() throws IOException {
+		return this.decoder.read(this.socket_channel);
+	}
+
+	/**
+	 * pause_reading
+	 * this method is used to stop reading from the channel while a request is being served
+	 */
+	public synchronized void pause_reading() {
+		this.reading = false;
+		this.awaiting_response = true;
+		update_interest();
+	}
+
+	/**
+	 * is_reading
+	 * @return true if the channel can receive a new request
+	 */
+	public synchronized boolean is_reading() {
+		return this.reading && this.in_flight < MAX_IN_FLIGHT;
+	}
+
+	/**
+	 * request_started
+	 * this method is used to count a pipelined request (with a request id) being served,
+	 * the reading is stopped while MAX_IN_FLIGHT requests are in flight
+	 */
+	public synchronized void request_started() {
+		this.in_flight++;
+		update_interest();
+	}
+
+	/**
+	 * submit
+	 * this method is used to run the task of a pipelined request
+	 *
+	 * @param task    the task serving the request
+	 * @param serial  true if the task must run after the previous serial tasks of the channel (not read-only)
+	 * @param workers the executor of the tasks
+	 */
+	public void submit(Runnable task, boolean serial, Executor workers) {
+		/*
+		 * 1. if the task is read-only and no task of the channel is queued, run it at once
+		 * 2. otherwise queue it and start the serial runner if it is not running
+		 */
+		synchronized (this) {
+			// 1. if the task is read-only and no task of the channel is queued, run it at once
+			if (!serial && !this.serial_running) {
+				workers.execute(task);
+				return;
+			}
+
+			// 2. otherwise queue it and start the serial runner if it is not running
+			this.serial_queue.add(task);
+			if (this.serial_running)
+				return;
+			this.serial_running = true;
+		}
+		workers.execute(this::run_serial);
+	}
+
+	private void run_serial() {
+		/*
+		 * run the queued tasks in order, until the queue is empty
+		 * (a failing task does not stop the tasks queued after it, and the runner is always marked as stopped
+		 * when it ends, so the next serial task starts a new runner)
+		 */
+		boolean stopped = false;
+		try {
+			while (true) {
+				Runnable task;
+				synchronized (this) {
+					task = this.serial_queue.poll();
+					if (task == null) {
+						this.serial_running = false;
+						stopped = true;
+						return;
+					}
+				}
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					System.err.println("Error while serving a request of " + this.socket_channel);
+					e.printStackTrace();
+				}
+			}
+		} finally {
+			if (!stopped) {
+				synchronized (this) {
+					this.serial_running = false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * enqueue
+	 * this method is used to queue a response to be written by the selector thread
+	 * the selector is woken up, so the response is written as soon as possible
+	 *
+	 * @param response the response to be sent
+	 */
+	public void enqueue(WinMessage response) {
+		queue(response, true);
+	}
+
+	/**
+	 * push
+	 * this method is used to queue a frame that is not the response to a request (a NOTIFY frame)
+	 * the frame is written as a response, but the channel keeps waiting for the response of the current request
+	 *
+	 * @param notification the frame to be sent
+	 */
+	public void push(WinMessage notification) {
+		queue(notification, false);
+	}
+
+	private void queue(WinMessage message, boolean response) {
+		/*
+		 * queue the frame
+		 *
+		 * 1. encode the frame with the protocol of the channel (outside the lock)
+		 * 2. add the frame to the queue and ask for OP_WRITE
+		 *    (a response without id is the one of the request that has stopped the reading)
+		 * 3. wake up the selector
+		 */
+
+		// 1. encode the frame with the protocol of the channel (outside the lock)
+		ByteBuffer frame = message.encode(this.protocol);
+
+		// 2. add the frame to the queue and ask for OP_WRITE
+		synchronized (this) {
+			if (response && message.hasId() && this.in_flight > 0)
+				this.in_flight--;
+			if (response && !message.hasId())
+				this.awaiting_response = false;
+			if (this.closed) {
+				WinBufferPool.SHARED.release(frame);
+				return;
+			}
+			this.output_queue.add(frame);
+			update_interest();
+		}
+
+		// 3. wake up the selector
+		this.selection_key.selector().wakeup();
+	}
+
+	/**
+	 * flush
+	 * this method is used to write as much of the queued frames as the socket accepts
+	 * it must be called only by the selector thread when the channel is writable
+	 * OP_WRITE is kept only while there is data left to write
+	 *
+	 * @return true if every queued frame has been written, false otherwise
+	 * @throws IOException if the channel has been closed
+	 */
+	public synchronized boolean flush() throws IOException {
+		/*
+		 * write the queued frames in order
+		 *
+		 * 1. write the first frame of the queue
+		 * 2. if the frame has not been written completely, stop (the socket buffer is full)
+		 * 3. otherwise remove it, give it back to the pool and continue with the next one
+		 * 4. if the queue is empty and the response of the request without id has been written, start reading again
+		 * 5. update the interest set
+		 */
+
+		while (!this.output_queue.isEmpty()) {
+			// 1. write the first frame of the queue
+			ByteBuffer frame = this.output_queue.peek();
+			this.socket_channel.write(frame);
+
+			// 2. if the frame has not been written completely, stop (the socket buffer is full)
+			if (frame.hasRemaining())
+				break;
+
+			// 3. otherwise remove it, give it back to the pool and continue with the next one
+			WinBufferPool.SHARED.release(this.output_queue.poll());
+		}
+
+		// 4. if the queue is empty and the response of the request without id has been written, start reading again
+		// (a NOTIFY frame written while the request is being served does not start it)
+		boolean drained = this.output_queue.isEmpty();
+		if (drained && !this.awaiting_response)
+			this.reading = true;
+
+		// 5. update the interest set
+		update_interest();
+		return drained;
+	}
+
+	/**
+	 * close
+	 * this method is used to close the channel and give back the buffers that are still in use
+	 * the frames that have not been written are discarded
+	 */
+	public synchronized void close() {
+		if (this.closed)
+			return;
+		this.closed = true;
+
+		this.selection_key.cancel();
+		try {
+			this.socket_channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		while (!this.output_queue.isEmpty())
+			WinBufferPool.SHARED.release(this.output_queue.poll());
+		this.decoder.release();
+
+		this.reactor.connection_closed();
+	}
+
+	private void update_interest() {
+		/*
+		 * OP_READ while the channel is reading requests and not too many are in flight,
+		 * OP_WRITE while there are frames to write
+		 */
+		if (!this.selection_key.isValid())
+			return;
+
+		int ops = (this.reading && this.in_flight < MAX_IN_FLIGHT ? SelectionKey.OP_READ : 0) |
+				(this.output_queue.isEmpty() ? 0 : SelectionKey.OP_WRITE);
+		this.selection_key.interestOps(ops);
+	}
+}
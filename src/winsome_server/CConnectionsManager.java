@@ -10,179 +10,193 @@ import java.util.concurrent.ConcurrentHashMap;
 /**
  * CConections_Manager class
  * This class is used to manage the client connections.
+ * <p></p>
+ * The sessions are indexed:
+ * 1. by id = every open session, added when the connection is accepted and removed when it is closed.
+ * 2. by username = the sessions with a logged-in user, added by login and removed by logout (or by the close).
+ * <p></p>
+ * Every lookup is a single hash lookup, no method scans the sessions.
+ * The uniqueness of the logged-in users is enforced by the username index itself (putIfAbsent),
+ * and the entries are removed only if they still belong to the session being closed or logged out (remove(key, value)),
+ * so the two indexes stay consistent without a global lock.
  */
-public class CConnectionsManager extends ConcurrentHashMap<String, CConnection> {
+public class CConnectionsManager {
 	// constants
 	public static final int CONNECTIONS_MANAGER_OK = 0;
 	public static final int CONNECTIONS_MANAGER_ERROR = -1;
 	public static final int CONNECTIONS_MANAGER_ALREADY_EXISTS = -2;
 	public static final int CONNECTIONS_MANAGER_DOES_NOT_EXIST = -3;
 
+	// member variables
+	private final ConcurrentHashMap<Long, Session> sessions = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, Session> users = new ConcurrentHashMap<>();
+
+	/**
+	 * add_session
+	 * this method is used to add the session of a new connection to the connections manager
+	 *
+	 * @param session the session to be added
+	 */
+	public void add_session(Session session) {
+		if (session == null)
+			return;
+		this.sessions.put(session.get_id(), session);
+	}
+
 	/**
-	 * add_connection
-	 * this method is used to add a new connection to the connections manager
-	 * the method returns an integer value to indicate if the connection was added successfully or not
+	 * remove_session
+	 * this method is used to remove the session of a closed connection from the connections manager
+	 * the user logged in with the session, if any, is logged out
+	 *
+	 * @param session the session to be removed
+	 */
+	public void remove_session(Session session) {
+		if (session == null)
+			return;
+		this.sessions.remove(session.get_id());
+		logout(session);
+	}
+
+	/**
+	 * login
+	 * this method is used to associate a user to a session
+	 * the method returns an integer value to indicate if the user was added successfully or not
 	 * if not successful, the method returns the error code
 	 *
-	 * @param connection the connection to be added
-	 * @return 0 if the connection was added successfully, an error code otherwise
+	 * @param session  the session of the client
+	 * @param username the username of the user
+	 * @return 0 if the user was added successfully, an error code otherwise
 	 */
-	public int add_connection(CConnection connection) {
+	public int login(Session session, String username) {
 		/*
-		 * add the connection to the connections manager
+		 * add the user to the connections manager
 		 *
 		 * 1. check the parameters
-		 * 2. check if the connection already exists:
-		 *  loop through the connections manager and check if the username or the address already exists
-		 * 3. if the connection does not exist, add it to the connections manager
-		 * 4. return the result
+		 * 2. check if the session is already logged in
+		 * 3. add the session to the username index, only if no other session is logged in with the same user
+		 *    (putIfAbsent, so two concurrent logins of the same user can not both succeed)
+		 * 4. if the session has been closed meanwhile, undo the login
+		 *    (the close sets the closed flag before removing the session, so either it sees the username or we see the flag)
+		 * 5. return the result
 		 */
 
 		// 1. check the parameters
-		if (connection == null)
+		if (session == null || username == null)
 			return CONNECTIONS_MANAGER_ERROR;
 
-		// 2. check if the connection already exists:
-		// loop through the connections manager and check if the username or the address already exists
-		for (CConnection c : this.values()) {
-			if (c.get_username().equals(connection.get_username()))
-				return CONNECTIONS_MANAGER_ALREADY_EXISTS;
-			if (c.get_address().equals(connection.get_address()))
-				return CONNECTIONS_MANAGER_ALREADY_EXISTS;
-		}
+		// 2. check if the session is already logged in
+		// (the requests that change the state of a session are served one at a time)
+		if (session.is_logged_in())
+			return CONNECTIONS_MANAGER_ALREADY_EXISTS;
+
+		// 3. add the session to the username index, only if no other session is logged in with the same user
+		if (this.users.putIfAbsent(username, session) != null)
+			return CONNECTIONS_MANAGER_ALREADY_EXISTS;
+		session.set_username(username);
 
-		// 3. if the connection does not exist, add it to the connections manager
-		this.put(connection.get_address(), connection);
+		// 4. if the session has been closed meanwhile, undo the login
+		if (session.is_closed()) {
+			logout(session);
+			return CONNECTIONS_MANAGER_DOES_NOT_EXIST;
+		}
 
-		// 4. return the result
+		// 5. return the result
 		return CONNECTIONS_MANAGER_OK;
 	}
 
 	/**
-	 * remove_connection
-	 * this method is used to remove a connection from the connections manager
-	 * the method returns an integer value to indicate if the connection was removed successfully or not
-	 * if not successful, the method returns the error code
+	 * logout
+	 * this method is used to remove the user of a session from the connections manager
 	 *
-	 * @param address the connection to be removed
+	 * @param session the session of the client
+	 * @return 0 if the user was removed, an error code otherwise
 	 */
-	public void remove_connection(String address) {
+	public int logout(Session session) {
 		/*
-		 * remove the connection from the connections manager
+		 * remove the user from the connections manager
 		 *
 		 * 1. check the parameters
-		 * 2. check if the connection exists:
-		 * 3. if the connection exists, remove it from the connections manager
-		 * 4. return the result
+		 * 2. check if a user is logged in with the session
+		 * 3. remove the user from the username index and clear the session
 		 */
 
 		// 1. check the parameters
-		if (address == null)
-			return;
-
-		// 2. check if the connection exists:
-		// loop through the connections manager and check if the address exists
-		if (!this.containsKey(address))
-			return;
+		if (session == null)
+			return CONNECTIONS_MANAGER_ERROR;
 
-		// 3. if the connection exists, remove it from the connections manager
-		this.remove(address);
+		// 2. check if a user is logged in with the session
+		String username = session.get_username();
+		if (username == null)
+			return CONNECTIONS_MANAGER_DOES_NOT_EXIST;
 
-		// 4. return the result
+		// 3. remove the user from the username index and clear the session
+		// (only if the index still maps the user to this session, a newer login of the same user is kept)
+		this.users.remove(username, session);
+		session.set_username(null);
+		session.set_callback(null);
+		return CONNECTIONS_MANAGER_OK;
 	}
 
 	/**
-	 * get_callback_of_address
-	 * this method is used to get the callback object of a connection
-	 *
-	 * @param address the address of the connection
-	 * @return the callback object of the connection associated with the address
-	 * if successful, null otherwise
+	 * get_session
+	 * @param id the id of the session
+	 * @return the open session with the given id, null if not found
 	 */
-	public ClientRMI_Interface get_callback_of_address(String address) {
-		/*
-		 * get the callback object of a connection
-		 *
-		 * 1. check the parameters
-		 * 2. check if the connection exists:
-		 * 3. if the connection exists, return the callback object
-		 */
-
-		// 1. check the parameters
-		if (address == null)
-			return null;
+	public Session get_session(long id) {
+		return this.sessions.get(id);
+	}
 
-		// 2. check if the connection exists:
-		// loop through the connections manager and check if the address exists
-		if (!this.containsKey(address))
+	/**
+	 * get_session_of_username
+	 * @param username the username of the user
+	 * @return the session the user is logged in with, null if the user is not logged in
+	 */
+	public Session get_session_of_username(String username) {
+		if (username == null)
 			return null;
-
-		// 3. if the connection exists, return the callback object
-		return this.get(address).get_callback();
+		return this.users.get(username);
 	}
 
 	/**
 	 * get_callback_of_username
-	 * this method is used to get the address of a connection
+	 * this method is used to get the callback object of a logged-in user
 	 *
-	 * @param username the username of the connection
-	 * @return the callback object of the connection associated with the username
-	 * if successful, null otherwise
+	 * @param username the username of the user
+	 * @return the callback object of the session of the user if successful, null otherwise
 	 */
 	public ClientRMI_Interface get_callback_of_username(String username) {
-		/*
-		 * get the callback object of a connection
-		 *
-		 * 1. check the parameters
-		 * 2. check if the connection exists:
-		 *  loop through the connections manager and check if the username exists
-		 * 3. if the connection exists, return the callback object
-		 */
-
-		// 1. check the parameters
-		if (username == null)
-			return null;
-
-		// 2. check if the connection exists:
-		// loop through the connections manager and check if the username exists
-		for (CConnection c : this.values()) {
-			if (c.get_username().equals(username))
-				return c.get_callback();
-		}
-
-		// 3. if the connection exists, return the callback object
-		return null;
+		Session session = get_session_of_username(username);
+		return session != null ? session.get_callback() : null;
 	}
 
-
 	/**
-	 * get_address
-	 * this method is used to get multiple callback objects of connections
+	 * get_callbacks
+	 * this method is used to get the callback objects of multiple users
 	 *
-	 * @param addresses the addresses of the connections
-	 * @return the callback objects of the connections, null if not found
+	 * @param usernames the usernames of the users
+	 * @return the callback objects of the logged-in users, null if none is found
 	 */
-	public List<ClientRMI_Interface> get_callbacks(List<String> addresses) {
+	public List<ClientRMI_Interface> get_callbacks(List<String> usernames) {
 		/*
-		 * get the callback objects of connections
+		 * get the callback objects of the users
 		 *
 		 * 1. check the parameters
-		 * 2. loop through the addresses
-		 * 3. get the callback object of the connection
+		 * 2. loop through the usernames
+		 * 3. get the callback object of the user
 		 * 4. if not null, add the callback object to the list
 		 * 5. return the list
 		 */
 
 		// 1. check the parameters
-		if (addresses == null)
+		if (usernames == null)
 			return null;
 
 		List<ClientRMI_Interface> callbacks = new ArrayList<>();
 
-		// 2. loop through the addresses
-		for (String address : addresses) {
-			// 3. get the callback object of the connection
-			ClientRMI_Interface callback = this.get_callback_of_address(address);
+		// 2. loop through the usernames
+		for (String username : usernames) {
+			// 3. get the callback object of the user
+			ClientRMI_Interface callback = this.get_callback_of_username(username);
 
 			// 4. if not null, add the callback object to the list
 			if (callback != null)
@@ -193,35 +207,6 @@ public class CConnectionsManager extends ConcurrentHashMap<String, CConnection>
 		return callbacks.isEmpty() ? null : callbacks;
 	}
 
-	/**
-	 * get_username
-	 * this method is used to get the username of a connection
-	 *
-	 * @param address the address of the connection
-	 * @return the username of the connection
-	 */
-	public String get_username(String address) {
-		/*
-		 * get the username of a connection
-		 *
-		 * 1. check the parameters
-		 * 2. check if the connection exists:
-		 * 3. if the connection exists, return the username
-		 */
-
-		// 1. check the parameters
-		if (address == null)
-			return null;
-
-		// 2. check if the connection exists:
-		// loop through the connections manager and check if the address exists
-		if (!this.containsKey(address))
-			return null;
-
-		// 3. if the connection exists, return the username
-		return this.get(address).get_username();
-	}
-
 	/**
 	 * is_user_connected
 	 * this method is used to check if a user is connected
@@ -230,49 +215,7 @@ public class CConnectionsManager extends ConcurrentHashMap<String, CConnection>
 	 * @return true if the user is connected, false otherwise
 	 */
 	public boolean is_user_connected(String username) {
-		/*
-		 * check if a user is connected
-		 *
-		 * 1. check the parameters
-		 * 2. loop through the connections manager
-		 * 3. check if the username exists
-		 */
-
-		// 1. check the parameters
-		if (username == null)
-			return false;
-
-		// 2. loop through the connections manager
-		for (CConnection c : this.values()) {
-			// 3. check if the username exists
-			if (c.get_username().equals(username))
-				return true;
-		}
-
-		return false;
-	}
-
-	/**
-	 * is_address_connected
-	 * this method is used to check if a client is connected with a specific address
-	 *
-	 * @param address the address of the client
-	 * @return true if the client is connected, false otherwise
-	 */
-	public boolean is_address_connected(String address) {
-		/*
-		 * check if a client is connected with a specific address
-		 *
-		 * 1. check the parameters
-		 * 2. return the result
-		 */
-
-		// 1. check the parameters
-		if (address == null)
-			return false;
-
-		// 2. return the result
-		return this.containsKey(address);
+		return username != null && this.users.containsKey(username);
 	}
 
 	/**
@@ -283,27 +226,37 @@ public class CConnectionsManager extends ConcurrentHashMap<String, CConnection>
 	 * @param callback the callback of the user
 	 */
 	public void register_callback_of_user(String username, ClientRMI_Interface callback) {
-		/*
-		 * register the callback of a user
-		 *
-		 * 1. check the parameters
-		 * 2. loop through the connections manager
-		 * 3. if the username exists, register the callback
-		 * 4. return the result
-		 */
-
-		// 1. check the parameters
-		if (username == null || callback == null)
+		if (callback == null)
 			return;
+		Session session = get_session_of_username(username);
+		if (session != null)
+			session.set_callback(callback);
+	}
 
-		// 2. loop through the connections manager
-		for (CConnection c : this.values()) {
-			// 3. if the username exists, register the callback
-			if (c.get_username().equals(username)) {
-				c.set_callback(callback);
-				return;
-			}
-		}
+	/**
+	 * unregister_callback_of_user
+	 * this method is used to remove the callback of a user, only if it is still the registered one
+	 *
+	 * @param username the username of the user
+	 * @param callback the callback to remove
+	 */
+	public void unregister_callback_of_user(String username, ClientRMI_Interface callback) {
+		Session session = get_session_of_username(username);
+		if (session != null && callback != null)
+			session.compare_and_clear_callback(callback);
+	}
 
+	/**
+	 * @return the number of open sessions
+	 */
+	public int get_sessions_count() {
+		return this.sessions.size();
+	}
+
+	/**
+	 * @return the number of logged-in users
+	 */
+	public int get_users_count() {
+		return this.users.size();
 	}
 }
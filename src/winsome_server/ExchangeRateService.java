@@ -0,0 +1,169 @@
+package winsome_server;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class provides the exchange rate between wincoins and BTC without blocking the caller on the network.
+ * <p></p>
+ * The last rate obtained from the ExchangeRateSource is cached:
+ * 1. get_rate returns the cached rate at once, even if it is older than the time to live (stale-while-revalidate),
+ *    a stale rate only starts an asynchronous refresh.
+ * 2. the refresh thread also refreshes the rate every time to live, so the cached rate is usually fresh.
+ * 3. at most one refresh runs at a time.
+ * 4. circuit breaker: after FAILURE_THRESHOLD consecutive failures of the source no refresh is attempted for OPEN_TIME ms,
+ *    then a single refresh is tried again (if it fails the breaker opens again, if it succeeds it is closed).
+ * <p></p>
+ * get_rate fails only until the first rate has been obtained.
+ */
+public class ExchangeRateService {
+	// class constants
+	public static final int FAILURE_THRESHOLD = 3;
+	public static final long OPEN_TIME = 30000;
+
+	// member variables
+	private final ExchangeRateSource source;
+	private final long ttl;
+	private final ScheduledExecutorService refresher;
+	private volatile CachedRate cached = null;
+	private final AtomicBoolean refreshing = new AtomicBoolean(false);
+	// circuit breaker (the failures are updated only by the refresh thread)
+	private int consecutive_failures = 0;
+	private volatile long open_until = 0;
+	// statistics
+	private final AtomicLong fresh_hits = new AtomicLong();
+	private final AtomicLong stale_hits = new AtomicLong();
+	private final AtomicLong refreshes = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+
+	/**
+	 * This class is a rate and the time it has been obtained (immutable).
+	 */
+	private static class CachedRate {
+		final double rate;
+		final long time;
+
+		CachedRate(double rate, long time) {
+			this.rate = rate;
+			this.time = time;
+		}
+	}
+
+	// constructor
+	public ExchangeRateService(ExchangeRateSource source, long ttl) {
+		this.source = source;
+		this.ttl = ttl;
+		this.refresher = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "winsome-btc-rate");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		// the first rate is requested at once, then the rate is refreshed every time to live
+		this.refresher.scheduleWithFixedDelay(this::request_refresh, 0, ttl, TimeUnit.MILLISECONDS);
+	}
+
+	// getters
+	public ExchangeRateSource get_source() {
+		return this.source;
+	}
+
+	/**
+	 * @return true if the circuit breaker is open (the source is not used)
+	 */
+	public boolean is_open() {
+		return System.currentTimeMillis() < this.open_until;
+	}
+
+	// methods
+
+	/**
+	 * get_rate
+	 * this method is used to get the value of a wincoin in BTC, it never blocks on the network
+	 *
+	 * @return the last rate obtained from the source
+	 * @throws IOException if no rate has been obtained yet
+	 */
+	public double get_rate() throws IOException {
+		/*
+		 * 1. read the cached rate
+		 * 2. if it is older than the time to live (or missing), start a refresh
+		 * 3. return the cached rate, even if it is stale
+		 */
+
+		// 1. read the cached rate
+		CachedRate rate = this.cached;
+
+		// 2. if it is older than the time to live (or missing), start a refresh
+		boolean stale = rate == null || System.currentTimeMillis() - rate.time > this.ttl;
+		if (stale)
+			request_refresh();
+
+		// 3. return the cached rate, even if it is stale
+		if (rate == null)
+			throw new IOException("The BTC rate is not available yet");
+		(stale ? this.stale_hits : this.fresh_hits).incrementAndGet();
+		return rate.rate;
+	}
+
+	private void request_refresh() {
+		/*
+		 * start a refresh on the refresh thread, unless one is running or the circuit breaker is open
+		 */
+		if (is_open() || !this.refreshing.compareAndSet(false, true))
+			return;
+		try {
+			this.refresher.execute(this::refresh);
+		} catch (RejectedExecutionException e) {
+			// the service has been shut down
+			this.refreshing.set(false);
+		}
+	}
+
+	private void refresh() {
+		/*
+		 * 1. get a new rate from the source
+		 * 2. if it succeeds, cache it and close the circuit breaker
+		 * 3. otherwise count the failure and open the circuit breaker after FAILURE_THRESHOLD consecutive failures
+		 */
+		try {
+			// 1. get a new rate from the source
+			double rate = this.source.fetch_rate();
+
+			// 2. if it succeeds, cache it and close the circuit breaker
+			this.cached = new CachedRate(rate, System.currentTimeMillis());
+			this.consecutive_failures = 0;
+			this.refreshes.incrementAndGet();
+		} catch (IOException | RuntimeException e) {
+			// 3. otherwise count the failure and open the circuit breaker after FAILURE_THRESHOLD consecutive failures
+			this.failures.incrementAndGet();
+			if (++this.consecutive_failures >= FAILURE_THRESHOLD) {
+				this.open_until = System.currentTimeMillis() + OPEN_TIME;
+				System.err.println("BTC rate source " + this.source.get_name() + " failed " +
+						this.consecutive_failures + " times, not used for " + OPEN_TIME + " ms : " + e.getMessage());
+			}
+		} finally {
+			this.refreshing.set(false);
+		}
+	}
+
+	/**
+	 * shutdown
+	 * this method is used to stop the refresh thread
+	 */
+	public void shutdown() {
+		this.refresher.shutdownNow();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("BTC rate [%s] : fresh hits = %d, stale hits = %d, refreshes = %d, failures = %d%s",
+				this.source.get_name(), this.fresh_hits.get(), this.stale_hits.get(), this.refreshes.get(),
+				this.failures.get(), is_open() ? " (circuit open)" : "");
+	}
+}
@@ -0,0 +1,40 @@
+package winsome_server;
+
+import java.io.IOException;
+
+/**
+ * This interface is a source of the exchange rate between wincoins and BTC, used by the ExchangeRateService.
+ * <p></p>
+ * Available sources:
+ * 1. RandomOrgRateSource = the rate is a random number generated by the website random.org (default).
+ * 2. LocalRateSource = the rate is generated locally with a seeded generator (deterministic, no network).
+ */
+public interface ExchangeRateSource {
+	/**
+	 * @return the name of the source (the value of the BTC_RATE_SOURCE property)
+	 */
+	String get_name();
+
+	/**
+	 * fetch_rate
+	 * this method is used to get a new exchange rate, it can block (it is called only by the refresh thread)
+	 *
+	 * @return the value of a wincoin in BTC
+	 * @throws IOException if the rate can not be obtained
+	 */
+	double fetch_rate() throws IOException;
+
+	/**
+	 * by_name
+	 * this method is used to create the source with the given name
+	 *
+	 * @param name    the name of the source (RANDOM_ORG or LOCAL)
+	 * @param timeout the connect and read timeout of the network sources, in milliseconds
+	 * @return the source, RandomOrgRateSource if the name is unknown
+	 */
+	static ExchangeRateSource by_name(String name, int timeout) {
+		if (LocalRateSource.NAME.equalsIgnoreCase(name))
+			return new LocalRateSource(LocalRateSource.DEFAULT_SEED);
+		return new RandomOrgRateSource(timeout);
+	}
+}
@@ -0,0 +1,34 @@
+package winsome_server;
+
+import java.util.Random;
+
+/**
+ * This class generates the exchange rate locally, without using the network.
+ * <p></p>
+ * The rates have the same distribution of the ones of random.org (an integer between 0 and 1000, divided by 1000),
+ * they are generated by a seeded generator, so the same seed always gives the same sequence of rates
+ * (useful to run the server offline and to compare benchmarks).
+ */
+public class LocalRateSource implements ExchangeRateSource {
+	// class constants
+	public static final String NAME = "LOCAL";
+	public static final long DEFAULT_SEED = 42;
+
+	// member variables
+	private final Random random;
+
+	// constructor
+	public LocalRateSource(long seed) {
+		this.random = new Random(seed);
+	}
+
+	@Override
+	public String get_name() {
+		return NAME;
+	}
+
+	@Override
+	public synchronized double fetch_rate() {
+		return this.random.nextInt(1001) / 1000.0;
+	}
+}
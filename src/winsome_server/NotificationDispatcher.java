@@ -0,0 +1,264 @@
+package winsome_server;
+
+import winsome_communication.ClientRMI_Interface;
+import winsome_communication.WinMessage;
+
+import java.rmi.RemoteException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class sends the follower updates to the RMI callbacks of the clients, outside the worker threads.
+ * <p></p>
+ * The workers only queue the updates (notify_follower), the remote calls are made by a small pool of dispatcher threads,
+ * so a slow or unreachable client never blocks the request that has generated the update.
+ * If the client has asked for them in the handshake, the updates are pushed as a NOTIFY frame on the TCP connection
+ * of its session instead (no RMI call, the frame is only queued and written by the reactor of the session).
+ * <p></p>
+ * Every recipient (username) has its own queue of pending updates:
+ * 1. the queue holds at most one update per follower, a follow and an unfollow of the same follower cancel out.
+ * 2. all the pending updates of a recipient are sent with a single remote call (send_follower_updates) or NOTIFY frame.
+ * 3. at most one dispatcher thread serves a recipient at a time, so the updates are delivered in order.
+ * 4. if the queue of a recipient exceeds MAX_PENDING updates, its pending updates are dropped:
+ *    a session that receives NOTIFY frames is sent a RESET notification (the client reloads its followers with LIST_FOLLOWERS),
+ *    the other recipients are evicted and their callback is unregistered
+ *    (the client gets the whole list of followers again when it registers a new callback).
+ * 5. if a remote call fails, the recipient is evicted.
+ */
+public class NotificationDispatcher {
+	// class constants
+	public static final int DEFAULT_THREADS = 2;
+	public static final int MAX_PENDING = 1024;
+
+	// member variables
+	private final CConnectionsManager connections_manager;
+	private final ExecutorService dispatchers;
+	private final ConcurrentHashMap<String, Recipient> recipients = new ConcurrentHashMap<>();
+	private final AtomicLong sent_calls = new AtomicLong();
+	private final AtomicLong sent_updates = new AtomicLong();
+	private final AtomicLong pushed_frames = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong evicted = new AtomicLong();
+	private final AtomicLong resets = new AtomicLong();
+
+	// constructor
+	public NotificationDispatcher(CConnectionsManager connections_manager, int threads) {
+		this.connections_manager = connections_manager;
+		this.dispatchers = Executors.newFixedThreadPool(Math.max(1, threads), task -> {
+			Thread thread = new Thread(task, "winsome-notify");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * This class holds the pending updates of a recipient.
+	 * All the fields are guarded by the lock of the instance.
+	 */
+	private static class Recipient {
+		final LinkedHashMap<String, Boolean> pending = new LinkedHashMap<>();
+		boolean scheduled = false;
+		boolean retired = false;
+		// the pending updates have overflowed, a RESET notification is sent before the next updates
+		boolean reset = false;
+	}
+
+	// methods
+
+	/**
+	 * notify_follower
+	 * this method is used to queue a follower update for a user, it never blocks on the network
+	 * the update is discarded if the user has not registered a callback and does not receive NOTIFY frames
+	 *
+	 * @param username the user to notify
+	 * @param follower the user that has followed or unfollowed username
+	 * @param add      true if follower has followed username, false if it has unfollowed username
+	 */
+	public void notify_follower(String username, String follower, boolean add) {
+		/*
+		 * 1. discard the update if the user has no callback and does not receive NOTIFY frames
+		 * 2. add the update to the queue of the user (coalescing it with a pending opposite update)
+		 * 3. if the queue overflows, drop the updates and reset the user (or evict it if it does not receive NOTIFY frames)
+		 * 4. if the user is not scheduled, schedule a dispatcher for it
+		 */
+
+		// 1. discard the update if the user has no callback and does not receive NOTIFY frames
+		Session session = this.connections_manager.get_session_of_username(username);
+		if (session == null || (!session.is_push_enabled() && session.get_callback() == null))
+			return;
+
+		while (true) {
+			Recipient recipient = this.recipients.computeIfAbsent(username, u -> new Recipient());
+			boolean schedule;
+			synchronized (recipient) {
+				// the recipient has been removed from the map meanwhile, use a new one
+				if (recipient.retired)
+					continue;
+
+				// 2. add the update to the queue of the user (coalescing it with a pending opposite update)
+				Boolean previous = recipient.pending.get(follower);
+				if (previous != null && previous != add) {
+					recipient.pending.remove(follower);
+					this.coalesced.incrementAndGet();
+				} else {
+					recipient.pending.put(follower, add);
+				}
+
+				// 3. if the queue overflows, drop the updates and reset the user (or evict it if it does not receive NOTIFY frames)
+				if (recipient.pending.size() > MAX_PENDING) {
+					recipient.pending.clear();
+					if (!session.is_push_enabled()) {
+						evict(username, null);
+						return;
+					}
+					recipient.reset = true;
+				}
+
+				// 4. if the user is not scheduled, schedule a dispatcher for it
+				schedule = !recipient.scheduled && (recipient.reset || !recipient.pending.isEmpty());
+				if (schedule)
+					recipient.scheduled = true;
+			}
+			if (schedule)
+				schedule(username, recipient);
+			return;
+		}
+	}
+
+	private void schedule(String username, Recipient recipient) {
+		try {
+			this.dispatchers.execute(() -> dispatch(username, recipient));
+		} catch (RejectedExecutionException e) {
+			// the dispatcher has been shut down, the updates are dropped
+			synchronized (recipient) {
+				recipient.pending.clear();
+				recipient.reset = false;
+				recipient.scheduled = false;
+			}
+		}
+	}
+
+	private void dispatch(String username, Recipient recipient) {
+		/*
+		 * 1. take all the pending updates of the recipient (or retire it if there are none)
+		 * 2. push them with a NOTIFY frame if the session of the recipient receives them
+		 *    (after a RESET notification if some updates have been dropped)
+		 * 3. otherwise send them with a single remote call
+		 *    (the updates have been dropped without a RESET, the recipient is evicted)
+		 * 4. if the call fails, evict the recipient
+		 */
+
+		while (true) {
+			// 1. take all the pending updates of the recipient (or retire it if there are none)
+			String[] followers;
+			boolean[] adds;
+			boolean reset;
+			synchronized (recipient) {
+				if (recipient.pending.isEmpty() && !recipient.reset) {
+					recipient.scheduled = false;
+					recipient.retired = true;
+					this.recipients.remove(username, recipient);
+					return;
+				}
+				followers = new String[recipient.pending.size()];
+				adds = new boolean[followers.length];
+				int i = 0;
+				for (Map.Entry<String, Boolean> update : recipient.pending.entrySet()) {
+					followers[i] = update.getKey();
+					adds[i++] = update.getValue();
+				}
+				recipient.pending.clear();
+				reset = recipient.reset;
+				recipient.reset = false;
+			}
+
+			// 2. push them with a NOTIFY frame if the session of the recipient receives them
+			Session session = this.connections_manager.get_session_of_username(username);
+			if (session == null)
+				continue;
+			if (session.is_push_enabled()) {
+				if (reset) {
+					WinMessage notification = new WinMessage();
+					notification.addString(WinMessage.NOTIFY);
+					notification.addString(WinMessage.NOTIFY_RESET);
+					session.push(notification);
+					this.pushed_frames.incrementAndGet();
+					this.resets.incrementAndGet();
+
+					// DEBUG
+					System.out.println("Notifications: reset " + username);
+				}
+				if (followers.length == 0)
+					continue;
+				WinMessage notification = new WinMessage();
+				notification.addString(WinMessage.NOTIFY);
+				for (int i = 0; i < followers.length; i++) {
+					notification.addString(followers[i]);
+					notification.addString(String.valueOf(adds[i]));
+				}
+				session.push(notification);
+				this.pushed_frames.incrementAndGet();
+				this.sent_updates.addAndGet(followers.length);
+				continue;
+			}
+
+			// 3. otherwise send them with a single remote call
+			ClientRMI_Interface callback = session.get_callback();
+			if (callback == null)
+				continue;
+			if (reset) {
+				evict(username, callback);
+				continue;
+			}
+			try {
+				callback.send_follower_updates(followers, adds);
+				this.sent_calls.incrementAndGet();
+				this.sent_updates.addAndGet(followers.length);
+			} catch (RemoteException e) {
+				// 4. if the call fails, evict the recipient
+				System.err.println("Error while sending follower updates to " + username);
+				synchronized (recipient) {
+					recipient.pending.clear();
+				}
+				evict(username, callback);
+			}
+		}
+	}
+
+	private void evict(String username, ClientRMI_Interface callback) {
+		/*
+		 * unregister the callback of the user (only the given one, if not null)
+		 */
+		this.evicted.incrementAndGet();
+		if (callback == null)
+			callback = this.connections_manager.get_callback_of_username(username);
+		this.connections_manager.unregister_callback_of_user(username, callback);
+
+		// DEBUG
+		System.out.println("Notifications: evicted " + username);
+	}
+
+	/**
+	 * shutdown
+	 * this method is used to stop the dispatcher threads, the pending updates are sent if possible
+	 *
+	 * @param timeout the maximum time to wait for the pending updates, in milliseconds
+	 */
+	public void shutdown(long timeout) throws InterruptedException {
+		this.dispatchers.shutdown();
+		this.dispatchers.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Notifications : remote calls = %d, pushed frames = %d, updates sent = %d, coalesced = %d, resets = %d, evicted = %d",
+				this.sent_calls.get(), this.pushed_frames.get(), this.sent_updates.get(), this.coalesced.get(), this.resets.get(),
+				this.evicted.get());
+	}
+}
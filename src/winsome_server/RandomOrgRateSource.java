@@ -0,0 +1,66 @@
+package winsome_server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * This class gets the exchange rate from the website random.org:
+ * the rate is a random integer between 0 and 1000, divided by 1000.
+ * <p></p>
+ * The connection and the read of the response have a timeout, so a slow website never blocks the refresh for long.
+ */
+public class RandomOrgRateSource implements ExchangeRateSource {
+	// class constants
+	public static final String NAME = "RANDOM_ORG";
+	private static final String URL =
+			"https://www.random.org/integers/?num=1&min=0&max=1000&col=1&base=10&format=plain&rnd=new";
+
+	// member variables
+	private final int timeout;
+
+	// constructor
+	public RandomOrgRateSource(int timeout) {
+		this.timeout = timeout;
+	}
+
+	@Override
+	public String get_name() {
+		return NAME;
+	}
+
+	@Override
+	public double fetch_rate() throws IOException {
+		/*
+		 * 1. open the connection with the timeouts
+		 * 2. read the response
+		 * 3. parse the rate
+		 */
+
+		// 1. open the connection with the timeouts
+		HttpURLConnection random_org_connection = (HttpURLConnection) new URL(URL).openConnection();
+		random_org_connection.setRequestMethod("GET");
+		random_org_connection.setConnectTimeout(this.timeout);
+		random_org_connection.setReadTimeout(this.timeout);
+
+		// 2. read the response
+		StringBuilder response = new StringBuilder();
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(random_org_connection.getInputStream()))) {
+			String inputLine;
+			while ((inputLine = in.readLine()) != null) {
+				response.append(inputLine);
+			}
+		} finally {
+			random_org_connection.disconnect();
+		}
+
+		// 3. parse the rate
+		try {
+			return Double.parseDouble(response.toString().trim()) / 1000;
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid response from random.org : " + response);
+		}
+	}
+}
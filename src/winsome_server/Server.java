@@ -1,30 +1,27 @@
 package winsome_server;
 
 import winsome_DB.RateDB;
+import winsome_DB.WinsomeDB_Exception;
 import winsome_DB.WinsomeDatabase;
 import winsome_communication.*;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.*;
 import java.nio.channels.*;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
-import java.util.Arrays;
 import java.util.Iterator;
-import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 public class Server {
 	// Server Properties
 	private final ServerProperties properties;
-	// Worker thread-pool
-	private final ExecutorService workers_thread_poll;
+	// Worker thread-pool (fixed pool or virtual threads, see WorkerExecutor)
+	private final WorkerExecutor workers_thread_poll;
+	// BTC exchange rate (cached, refreshed in background)
+	private final ExchangeRateService exchange_rates;
 	// Rewards thread
 	private final Server_Rewards_Thread rewards_thread;
 
@@ -32,10 +29,16 @@ public class Server {
 	private final WinsomeDatabase server_db;
 	// Connection Manager
 	private final CConnectionsManager connections_manager = new CConnectionsManager();
-	// Server socket and selector
+	// Follower updates sent to the RMI callbacks by the dispatcher threads
+	private final NotificationDispatcher notifications =
+			new NotificationDispatcher(this.connections_manager, NotificationDispatcher.DEFAULT_THREADS);
+	// Server socket and selector (accept only)
 	private ServerSocketChannel server_socket;
 	private DatagramSocket dg_socket;
 	private Selector selector;
+	// I/O selector threads, the accepted connections are shared among them
+	private ServerReactor[] reactors;
+	private int last_reactor = -1;
 	ServerRMI_Imp server_rmi;
 
 	boolean is_running = true;
@@ -47,10 +50,11 @@ public class Server {
 		 *
 		 * 1. Create a new server properties object
 		 * 2. Create a new worker thread poll
+		 * 2.1 Create the BTC exchange rate service
 		 * 3. Create a new server database object
 		 * 3.1 Try to load the server database
 		 * 3.2 If an error occurred, exit the program
-		 * 4. Create a new tcp server socket
+		 * 4. Create a new tcp server socket and the I/O reactors
 		 * 5. Create a new udp server socket
 		 * 6. Create a new server RMI object and bind it to the registry
 		 * 7. Start the reward thread
@@ -72,7 +76,16 @@ public class Server {
 		this.properties.write_properties();
 
 		// 2. Create a new worker thread poll
-		this.workers_thread_poll = Executors.newFixedThreadPool(properties.get_workers());
+		this.workers_thread_poll = new WorkerExecutor(properties.get_worker_mode(),
+				properties.get_workers(), properties.get_max_concurrent_tasks());
+		// DEBUG
+		System.out.println("Worker mode: " + this.workers_thread_poll.get_mode());
+
+		// 2.1 Create the BTC exchange rate service (the first rate is requested at once)
+		this.exchange_rates = new ExchangeRateService(ExchangeRateSource.by_name(
+				properties.get_btc_rate_source(), properties.get_btc_rate_timeout()), properties.get_btc_rate_ttl());
+		// DEBUG
+		System.out.println("BTC rate source: " + this.exchange_rates.get_source().get_name());
 
 		// 3. Create a new server database object
 		this.server_db = WinsomeDatabase.getInstance(
@@ -92,12 +105,15 @@ public class Server {
 
 
 		try {
-			// 4. Create a new tcp server socket
+			// 4. Create a new tcp server socket and the I/O reactors
 			this.server_socket = ServerSocketChannel.open();
 			this.server_socket.socket().bind(new InetSocketAddress(this.properties.get_tcp_port()));
 			this.server_socket.configureBlocking(false);
 			this.selector = Selector.open();
 			this.server_socket.register(this.selector, SelectionKey.OP_ACCEPT);
+			this.reactors = new ServerReactor[this.properties.get_io_threads()];
+			for (int i = 0; i < this.reactors.length; i++)
+				this.reactors[i] = new ServerReactor(this, this.workers_thread_poll, i);
 
 			// 5. Create a new udp server socket
 
@@ -127,44 +143,41 @@ public class Server {
 	 * listen to the server socketChannel and accept new connections
 	 * The socketChannel is non-blocking and uses a selector to listen to the socket
 	 * <p></p>
-	 * When a new connection is accepted, the connection is added to the selector
-	 * When a connection is ready to be read, the connection is sent to a worker task
-	 * When a connection is ready to be written, the response is sent to the connection
-	 * When a connection is closed, the connection is removed from the selector
+	 * The thread that runs this function is only the acceptor:
+	 * every accepted connection is assigned to the ServerReactor with the fewest connections
+	 * (ties are broken round-robin), the reactor reads the requests and writes the responses of the connection
 	 */
 	public void server_welcome_service() {
 		/*
 		 * Welcome_service for the server :
 		 *
-		 * 1. Loop
-		 * 1.1. Wait for a new connection or a new request
-		 * 1.2. If a new connection is accepted, put it in the selector
-		 * 1.3. If a new request is received, add it to the queue of requests to serve
-		 * 1.4. If a client is ready to write, write the response to it
-		 * 2. Close the server socket channel
+		 * 1. Start the reactors
+		 * 2. Loop
+		 * 2.1. Wait for a new connection
+		 * 2.2. If a new connection is accepted, assign it to a reactor
+		 * 3. Close the server
 		 */
 
 		int seconds = 0;
 		int max_seconds = properties.get_server_timeout();
 
-		// 1. Loop
+		// 1. Start the reactors
+		for (ServerReactor reactor : this.reactors)
+			reactor.start();
+
+		// 2. Loop
 		while (true) {
-			// 1.1. Wait for a new connection or a new request
+			// 2.1. Wait for a new connection
+			int ready;
 			try {
-				selector.select(1000);
+				ready = selector.select(1000);
 			} catch (IOException e) {
 				e.printStackTrace();
 				break;
 			}
 
-			// Debug print the number of channel in the selector
-			// System.out.println("Number of channels in the selector: " + selector.keys().size());
-
-			Set<SelectionKey> ready_keys = selector.selectedKeys();
-			Iterator<SelectionKey> iterator = ready_keys.iterator();
-
 			// if there are no clients connected, increase the seconds counter
-			if (!iterator.hasNext() && selector.keys().size() == 1) {
+			if (ready == 0 && connected_clients() == 0) {
 				// increment the seconds counter and check if it is greater than the max seconds
 				if (++seconds > max_seconds) {
 					// if it is, close the server
@@ -175,78 +188,64 @@ public class Server {
 				seconds = 0;
 			}
 
+			Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
 			while (iterator.hasNext()) {
 				SelectionKey key = iterator.next();
 				iterator.remove();
-				try {
-					// 1.2. If a new connection is accepted, put it in the selector
-					if (key.isAcceptable()) {
-						ServerSocketChannel server_socket = (ServerSocketChannel) key.channel();
-						SocketChannel client = server_socket.accept();
-						client.configureBlocking(false);
-
-						// Debug
-						System.out.println("new client accepted : " + client);
-
-						client.register(selector, SelectionKey.OP_READ);
-					}
-
-					// 1.3. If a new request is received, add it to the queue of requests to serve
-					if (key.isReadable()) {
-						SocketChannel client = (SocketChannel) key.channel();
-
-						// Debug
-						System.out.println("client : " + client + " is ready to read");
-
-						key.interestOps(0);
-
-						workers_thread_poll.submit(new WorkerTask(this, selector, key));
+				if (!key.isValid() || !key.isAcceptable())
+					continue;
 
+				// 2.2. If a new connection is accepted, assign it to a reactor
+				try {
+					SocketChannel client = server_socket.accept();
+					if (client == null)
 						continue;
-					}
-
-					// 1.4. If a client is ready to write, write the response to it
-					if (key.isWritable()) {
-						SocketChannel client = (SocketChannel) key.channel();
+					client.configureBlocking(false);
 
-						// Debug
-						System.out.println("client : " + client + " is ready to write");
+					// Debug
+					System.out.println("new client accepted : " + client);
 
-						WinMessage win_message = (WinMessage) key.attachment();
-						win_message.send(client);
-
-						// Debug
-						System.out.println("Server: " + win_message + " inviato al client " + client.getRemoteAddress());
-
-						key.interestOps(SelectionKey.OP_READ);
-					}
+					next_reactor().assign(client);
 				} catch (IOException e) {
-					key.cancel();
-					try {
-						// Debug
-						System.out.println("client disconnected : " + key.channel());
-
-						key.channel().close();
-					} catch (IOException e1) {
-						e1.printStackTrace();
-					}
-				} catch (CancelledKeyException e) {
-					try {
-						// Debug
-						System.out.println("client disconnected : " + key.channel());
-
-						key.channel().close();
-					} catch (IOException e1) {
-						e1.printStackTrace();
-					}
+					e.printStackTrace();
 				}
 			}
 		}
 
-		// 2. Close the server
+		// 3. Close the server
 		this.close();
 	}
 
+	private ServerReactor next_reactor() {
+		/*
+		 * choose the reactor with the fewest connections,
+		 * starting from the one after the last chosen so that ties are broken round-robin
+		 */
+		ServerReactor chosen = null;
+		int n = this.reactors.length;
+		for (int i = 0; i < n; i++) {
+			ServerReactor reactor = this.reactors[(this.last_reactor + 1 + i) % n];
+			if (chosen == null || reactor.get_connections() < chosen.get_connections())
+				chosen = reactor;
+		}
+		for (int i = 0; i < n; i++) {
+			if (this.reactors[i] == chosen)
+				this.last_reactor = i;
+		}
+		return chosen;
+	}
+
+	private int connected_clients() {
+		int clients = 0;
+		for (ServerReactor reactor : this.reactors)
+			clients += reactor.get_connections();
+		return clients;
+	}
+
+	CConnectionsManager get_connections_manager() {
+		return this.connections_manager;
+	}
+
 	// Client Interactions
 	public void register_request(String username, String password, String[] tags) throws WinsomeException {
 		/*
@@ -258,7 +257,7 @@ public class Server {
 		server_db.create_user(username, password, tags);
 	}
 
-	public WinMessage login_request(String username, String password, String address) {
+	public WinMessage login_request(String username, String password, Session session) {
 		/*
 		 * Login a user
 		 *
@@ -277,7 +276,7 @@ public class Server {
 			result.addString(WinMessage.ERROR);
 			result.addString("User already logged in");
 			return result;
-		} else if (this.connections_manager.is_address_connected(address)) {
+		} else if (session.is_logged_in()) {
 			// 2. If the client is already logged in, return an error message
 			result.addString(WinMessage.ERROR);
 			result.addString("Client already logged in with another user");
@@ -288,7 +287,13 @@ public class Server {
 		try {
 			if (this.server_db.check_credentials(username, password)) {
 				// 4. If the username and password are correct, add the user to the logged in users
-				if (this.connections_manager.add_connection(new CConnection(address, username)) != 0) {
+				int login_result = this.connections_manager.login(session, username);
+				if (login_result == CConnectionsManager.CONNECTIONS_MANAGER_ALREADY_EXISTS) {
+					// 5. Return the result (another client has logged in with the same user meanwhile)
+					result.addString(WinMessage.ERROR);
+					result.addString("User already logged in");
+					return result;
+				} else if (login_result != CConnectionsManager.CONNECTIONS_MANAGER_OK) {
 					// DEBUG
 					System.out.println("Error: failed to add the connection to the connections manager");
 
@@ -299,7 +304,7 @@ public class Server {
 				}
 
 				// DEBUG
-				System.out.println("User " + username + " logged in from " + address);
+				System.out.println("User " + username + " logged in from " + session.get_address());
 
 				// 5. Return the result
 				result.addString(WinMessage.SUCCESS);
@@ -316,7 +321,7 @@ public class Server {
 		return result;
 	}
 
-	public WinMessage logout_request(String address) {
+	public WinMessage logout_request(Session session) {
 		/*
 		 * Logout a user
 		 *
@@ -329,7 +334,7 @@ public class Server {
 		WinMessage result = new WinMessage();
 
 		// 1. Check if the user is logged in
-		if (!this.connections_manager.is_address_connected(address)) {
+		if (!session.is_logged_in()) {
 			// 2. If the user is not logged in, return an error message
 			result.addString(WinMessage.ERROR);
 			result.addString("User not logged in with this address");
@@ -337,19 +342,83 @@ public class Server {
 		}
 
 		// DEBUG
-		System.out.println("User " + this.connections_manager.get_username(address) + " logged out from " + address);
+		System.out.println("User " + session.get_username() + " logged out from " + session.get_address());
 
 		// 3. If the user is logged in, remove the user from the logged in users
-		this.connections_manager.remove_connection(address);
+		this.connections_manager.logout(session);
 
 		// 4. Return the result
 		result.addString(WinMessage.SUCCESS);
 		return result;
 	}
 
-	public WinMessage list_users_request(String address) {
+	public WinMessage list_users_request(Session session, String after, int limit) {
 		/*
-		 * List all the users
+		 * List a page of the users with similar interests, starting after the given username (null for the first page)
+		 *
+		 * 1. Check if the user is logged in
+		 * 2. If the user is not logged in, return an error message
+		 * 3. If the user is logged in, return the page of users
+		 */
+
+		WinMessage result = new WinMessage();
+
+		// 1. Check if the user is logged in
+		if (!session.is_logged_in()) {
+			// 2. If the user is not logged in, return an error message
+			result.addString(WinMessage.ERROR);
+			result.addString("User not logged in with this address");
+			return result;
+		}
+
+		// 3. If the user is logged in, return the page of users
+		try {
+			UserRepr[] users = this.server_db.get_similar_users(session.get_username(), after, limit);
+			result.addString(WinMessage.SUCCESS);
+			result.addObjects(users);
+		} catch (WinsomeException e) {
+			result.addString(WinMessage.ERROR);
+			result.addString(e.niceMessage());
+		}
+
+		return result;
+	}
+
+	public WinMessage recommend_request(Session session, int k) {
+		/*
+		 * Recommend at most k users to follow, best first
+		 *
+		 * 1. Check if the user is logged in
+		 * 2. If the user is not logged in, return an error message
+		 * 3. If the user is logged in, return the recommended users
+		 */
+
+		WinMessage result = new WinMessage();
+
+		// 1. Check if the user is logged in
+		if (!session.is_logged_in()) {
+			// 2. If the user is not logged in, return an error message
+			result.addString(WinMessage.ERROR);
+			result.addString("User not logged in with this address");
+			return result;
+		}
+
+		// 3. If the user is logged in, return the recommended users
+		try {
+			UserRepr[] users = this.server_db.recommend_users(session.get_username(), k);
+			result.addString(WinMessage.SUCCESS);
+			result.addObjects(users);
+		} catch (WinsomeException e) {
+			result.addString(WinMessage.ERROR);
+			result.addString(e.niceMessage());
+		}
+
+		return result;
+	}
+
+	public WinMessage list_followings_request(Session session) {
+		/*
+		 * list all the users that the user is following
 		 *
 		 * 1. Check if the user is logged in
 		 * 2. If the user is not logged in, return an error message
@@ -359,7 +428,7 @@ public class Server {
 		WinMessage result = new WinMessage();
 
 		// 1. Check if the user is logged in
-		if (!this.connections_manager.is_address_connected(address)) {
+		if (!session.is_logged_in()) {
 			// 2. If the user is not logged in, return an error message
 			result.addString(WinMessage.ERROR);
 			result.addString("User not logged in with this address");
@@ -368,7 +437,7 @@ public class Server {
 
 		// 3. If the user is logged in, return the list of users
 		try {
-			String[] users = this.server_db.get_similar_users(this.connections_manager.get_username(address));
+			String[] users = this.server_db.get_user_following(session.get_username());
 			result.addString(WinMessage.SUCCESS);
 			result.addStrings(users);
 		} catch (WinsomeException e) {
@@ -379,9 +448,10 @@ public class Server {
 		return result;
 	}
 
-	public WinMessage list_followings_request(String address) {
+	public WinMessage list_followers_request(Session session) {
 		/*
-		 * list all the users that the user is following
+		 * list all the users that are following the user
+		 * (used by a client to reload its followers when the server has dropped some updates)
 		 *
 		 * 1. Check if the user is logged in
 		 * 2. If the user is not logged in, return an error message
@@ -391,7 +461,7 @@ public class Server {
 		WinMessage result = new WinMessage();
 
 		// 1. Check if the user is logged in
-		if (!this.connections_manager.is_address_connected(address)) {
+		if (!session.is_logged_in()) {
 			// 2. If the user is not logged in, return an error message
 			result.addString(WinMessage.ERROR);
 			result.addString("User not logged in with this address");
@@ -400,7 +470,7 @@ public class Server {
 
 		// 3. If the user is logged in, return the list of users
 		try {
-			String[] users = this.server_db.get_user_following(this.connections_manager.get_username(address));
+			String[] users = this.server_db.get_user_followers(session.get_username());
 			result.addString(WinMessage.SUCCESS);
 			result.addStrings(users);
 		} catch (WinsomeException e) {
@@ -411,7 +481,7 @@ public class Server {
 		return result;
 	}
 
-	public WinMessage follow_request(String username, String address) {
+	public WinMessage follow_request(String username, Session session) {
 		/*
 		 * Follow a user
 		 *
@@ -424,7 +494,7 @@ public class Server {
 		WinMessage result = new WinMessage();
 
 		// 1. Check if the user is logged in
-		if (!this.connections_manager.is_address_connected(address)) {
+		if (!session.is_logged_in()) {
 			// 2. If the user is not logged in, return an error message
 			result.addString(WinMessage.ERROR);
 			result.addString("User not logged in with this address");
@@ -433,27 +503,19 @@ public class Server {
 
 		// 3. If the user is logged in, ask the database to follow the user
 		try {
-			this.server_db.user_follows(this.connections_manager.get_username(address), username);
+			this.server_db.user_follows(session.get_username(), username);
 			result.addString(WinMessage.SUCCESS);
 			// 4. notify <username> (if online) that he is followed
-			ClientRMI_Interface callback = this.connections_manager.get_callback_of_username(username);
-
-			if (callback != null) {
-				callback.send_follower_update(this.connections_manager.get_username(address), true);
-			}
-
+			this.notifications.notify_follower(username, session.get_username(), true);
 		} catch (WinsomeException e) {
 			result.addString(WinMessage.ERROR);
 			result.addString(e.niceMessage());
-		} catch (RemoteException e) {
-			result.addString(WinMessage.ERROR);
-			System.err.println("Error while sending follower update to " + username);
 		}
-		
+
 		return result;
 	}
 
-	public WinMessage unfollow_request(String username, String address) {
+	public WinMessage unfollow_request(String username, Session session) {
 		/*
 		 * Unfollow a user
 		 *
@@ -466,7 +528,7 @@ public class Server {
 		WinMessage result = new WinMessage();
 
 		// 1. Check if the user is logged in
-		if (!this.connections_manager.is_address_connected(address)) {
+		if (!session.is_logged_in()) {
 			// 2. If the user is not logged in, return an error message
 			result.addString(WinMessage.ERROR);
 			result.addString("User not logged in with this address");
@@ -475,24 +537,19 @@ public class Server {
 
 		// 3. If the user is logged in, ask the database to unfollow the user
 		try {
-			this.server_db.user_unfollows(this.connections_manager.get_username(address), username);
+			this.server_db.user_unfollows(session.get_username(), username);
 			result.addString(WinMessage.SUCCESS);
 			// 4. notify <username> (if online) that he is unfollowed
-			ClientRMI_Interface callback = this.connections_manager.get_callback_of_username(username);
-			if (callback != null) {
-				callback.send_follower_update(this.connections_manager.get_username(address), false);
-			}
+			this.notifications.notify_follower(username, session.get_username(), false);
 		} catch (WinsomeException e) {
 			result.addString(WinMessage.ERROR);
 			result.addString(e.niceMessage());
-		} catch (RemoteException e) {
-			System.err.println("Error while sending follower update to " + username);
 		}
 
 		return result;
 	}
 
-	public WinMessage create_post_request(String address, String title, String content) {
+	public WinMessage create_post_request(Session session, String title, String content) {
 		/*
 		 * Create a post
 		 *
@@ -505,7 +562,7 @@ public class Server {
 		WinMessage result = new WinMessage();
 
 		// 1. Check if the user is logged in
-		if (!this.connections_manager.is_address_connected(address)) {
+		if (!session.is_logged_in()) {
 			// 2. If the user is not logged in, return an error message
 			result.addString(WinMessage.ERROR);
 			result.addString("User not logged in with this address");
@@ -514,7 +571,7 @@ public class Server {
 
 		// 3. If the user is logged in, ask the database to create the post
 		try {
-			this.server_db.create_post(this.connections_manager.get_username(address), title, content);
+			this.server_db.create_post(session.get_username(), title, content);
 			result.addString(WinMessage.SUCCESS);
 		} catch (WinsomeException e) {
 			result.addString(WinMessage.ERROR);
@@ -524,32 +581,32 @@ public class Server {
 		return result;
 	}
 
-	public WinMessage blog_request(String address) {
+	public WinMessage blog_request(Session session, String since_id, String max_id, int limit) {
 		/*
-		 * Get the blog of the user
+		 * Get a page of the blog of the user (the posts between since_id and max_id, newest first)
 		 *
 		 * 1. Check if the user is logged in
 		 * 2. If the user is not logged in, return an error message
-		 * 3. If the user is logged in, ask the database to get the blog
+		 * 3. If the user is logged in, ask the database to get the page of the blog
 		 * 4. Return the result
 		 */
 
 		WinMessage result = new WinMessage();
 
 		// 1. Check if the user is logged in
-		if (!this.connections_manager.is_address_connected(address)) {
+		if (!session.is_logged_in()) {
 			// 2. If the user is not logged in, return an error message
 			result.addString(WinMessage.ERROR);
 			result.addString("User not logged in with this address");
 			return result;
 		}
 
-		// 3. If the user is logged in, ask the database to get the blog
+		// 3. If the user is logged in, ask the database to get the page of the blog
 		try {
-			PostReprSimple[] posts = this.server_db.get_user_blog(this.connections_manager.get_username(address));
+			PostReprSimple[] posts = this.server_db.get_user_blog(session.get_username(), since_id, max_id, limit);
 			result.addString(WinMessage.SUCCESS);
-			// add an array of strings that are the serialized posts
-			result.addStrings(Arrays.stream(posts).map(PostReprSimple::serialize).toArray(String[]::new));
+			// add the posts, they are encoded by the protocol of the connection
+			result.addObjects(posts);
 		} catch (WinsomeException e) {
 			result.addString(WinMessage.ERROR);
 			result.addString(e.niceMessage());
@@ -558,7 +615,7 @@ public class Server {
 		return result;
 	}
 
-	public WinMessage show_post_request(String address, String post_id) {
+	public WinMessage show_post_request(Session session, String post_id) {
 		/*
 		 * Get the blog of the user
 		 *
@@ -571,7 +628,7 @@ public class Server {
 		WinMessage result = new WinMessage();
 
 		// 1. Check if the user is logged in
-		if (!this.connections_manager.is_address_connected(address)) {
+		if (!session.is_logged_in()) {
 			// 2. If the user is not logged in, return an error message
 			result.addString(WinMessage.ERROR);
 			result.addString("User not logged in with this address");
@@ -582,8 +639,8 @@ public class Server {
 		try {
 			PostReprDetailed post = this.server_db.get_post(post_id);
 			result.addString(WinMessage.SUCCESS);
-			// add an array of strings that are the serialized posts
-			result.addString(post.serialize());
+			// add the post, it is encoded by the protocol of the connection
+			result.addObject(post);
 		} catch (WinsomeException e) {
 			result.addString(WinMessage.ERROR);
 			result.addString(e.niceMessage());
@@ -592,32 +649,32 @@ public class Server {
 		return result;
 	}
 
-	public WinMessage show_feed_request(String address) {
+	public WinMessage show_feed_request(Session session, String since_id, String max_id, int limit) {
 		/*
-		 * Get the feed of the user
+		 * Get a page of the feed of the user (the posts between since_id and max_id, newest first)
 		 *
 		 * 1. Check if the user is logged in
 		 * 2. If the user is not logged in, return an error message
-		 * 3. If the user is logged in, ask the database to get the feed
+		 * 3. If the user is logged in, ask the database to get the page of the feed
 		 * 4. Return the result
 		 */
 
 		WinMessage result = new WinMessage();
 
 		// 1. Check if the user is logged in
-		if (!this.connections_manager.is_address_connected(address)) {
+		if (!session.is_logged_in()) {
 			// 2. If the user is not logged in, return an error message
 			result.addString(WinMessage.ERROR);
 			result.addString("User not logged in with this address");
 			return result;
 		}
 
-		// 3. If the user is logged in, ask the database to get the feed
+		// 3. If the user is logged in, ask the database to get the page of the feed
 		try {
-			PostReprSimple[] posts = this.server_db.get_user_feed(this.connections_manager.get_username(address));
+			PostReprSimple[] posts = this.server_db.get_user_feed(session.get_username(), since_id, max_id, limit);
 			result.addString(WinMessage.SUCCESS);
-			// add an array of strings that are the serialized posts
-			result.addStrings(Arrays.stream(posts).map(PostReprSimple::serialize).toArray(String[]::new));
+			// add the posts, they are encoded by the protocol of the connection
+			result.addObjects(posts);
 		} catch (WinsomeException e) {
 			result.addString(WinMessage.ERROR);
 			result.addString(e.niceMessage());
@@ -626,7 +683,7 @@ public class Server {
 		return result;
 	}
 
-	public WinMessage delete_post_request(String address, String postId) {
+	public WinMessage delete_post_request(Session session, String postId) {
 		/*
 		 * Delete the post identified by postId
 		 *
@@ -639,7 +696,7 @@ public class Server {
 		WinMessage result = new WinMessage();
 
 		// 1. Check if the user is logged in
-		if (!this.connections_manager.is_address_connected(address)) {
+		if (!session.is_logged_in()) {
 			// 2. If the user is not logged in, return an error message
 			result.addString(WinMessage.ERROR);
 			result.addString("User not logged in with this address");
@@ -648,7 +705,7 @@ public class Server {
 
 		// 3. If the user is logged in, ask the database to delete the post
 		try {
-			this.server_db.remove_post(this.connections_manager.get_username(address), postId);
+			this.server_db.remove_post(session.get_username(), postId);
 			result.addString(WinMessage.SUCCESS);
 		} catch (WinsomeException e) {
 			result.addString(WinMessage.ERROR);
@@ -658,7 +715,7 @@ public class Server {
 		return result;
 	}
 
-	public WinMessage rewin_post_request(String address, String postId) {
+	public WinMessage rewin_post_request(Session session, String postId) {
 		/*
 		 * Rewin the post identified by postId
 		 *
@@ -671,7 +728,7 @@ public class Server {
 		WinMessage result = new WinMessage();
 
 		// 1. Check if the user is logged in
-		if (!this.connections_manager.is_address_connected(address)) {
+		if (!session.is_logged_in()) {
 			// 2. If the user is not logged in, return an error message
 			result.addString(WinMessage.ERROR);
 			result.addString("User not logged in with this address");
@@ -680,7 +737,7 @@ public class Server {
 
 		// 3. If the user is logged in, ask the database to rewin the post
 		try {
-			this.server_db.rewin_post(this.connections_manager.get_username(address), postId);
+			this.server_db.rewin_post(session.get_username(), postId);
 			result.addString(WinMessage.SUCCESS);
 		} catch (WinsomeException e) {
 			result.addString(WinMessage.ERROR);
@@ -690,7 +747,7 @@ public class Server {
 		return result;
 	}
 
-	public WinMessage comment_request(String address, String postId, String comment) {
+	public WinMessage comment_request(Session session, String postId, String comment) {
 		/*
 		 * Comment on the post identified by postId
 		 *
@@ -703,7 +760,7 @@ public class Server {
 		WinMessage result = new WinMessage();
 
 		// 1. Check if the user is logged in
-		if (!this.connections_manager.is_address_connected(address)) {
+		if (!session.is_logged_in()) {
 			// 2. If the user is not logged in, return an error message
 			result.addString(WinMessage.ERROR);
 			result.addString("User not logged in with this address");
@@ -712,7 +769,7 @@ public class Server {
 
 		// 3. If the user is logged in, ask the database to comment on the post
 		try {
-			this.server_db.comment_on_post(this.connections_manager.get_username(address), postId, comment);
+			this.server_db.comment_on_post(session.get_username(), postId, comment);
 			result.addString(WinMessage.SUCCESS);
 		} catch (WinsomeException e) {
 			result.addString(WinMessage.ERROR);
@@ -722,7 +779,7 @@ public class Server {
 		return result;
 	}
 
-	public WinMessage rate_request(String address, String postId, String rate) {
+	public WinMessage rate_request(Session session, String postId, String rate) {
 		/*
 		 * Rate the post identified by postId
 		 *
@@ -735,7 +792,7 @@ public class Server {
 		WinMessage result = new WinMessage();
 
 		// 1. Check if the user is logged in
-		if (!this.connections_manager.is_address_connected(address)) {
+		if (!session.is_logged_in()) {
 			// 2. If the user is not logged in, return an error message
 			result.addString(WinMessage.ERROR);
 			result.addString("User not logged in with this address");
@@ -744,7 +801,7 @@ public class Server {
 
 		// 3. If the user is logged in, ask the database to rate the post
 		try {
-			this.server_db.rate_post(this.connections_manager.get_username(address), postId, rate.equals(RateDB.UPVOTE));
+			this.server_db.rate_post(session.get_username(), postId, RateDB.UPVOTE.equals(rate));
 			result.addString(WinMessage.SUCCESS);
 		} catch (WinsomeException e) {
 			result.addString(WinMessage.ERROR);
@@ -754,7 +811,7 @@ public class Server {
 		return result;
 	}
 
-	public WinMessage wallet_request(String address) {
+	public WinMessage wallet_request(Session session) {
 		/*
 		 * Get the wallet of the user
 		 *
@@ -767,7 +824,7 @@ public class Server {
 		WinMessage result = new WinMessage();
 
 		// 1. Check if the user is logged in
-		if (!this.connections_manager.is_address_connected(address)) {
+		if (!session.is_logged_in()) {
 			// 2. If the user is not logged in, return an error message
 			result.addString(WinMessage.ERROR);
 			result.addString("User not logged in with this address");
@@ -777,7 +834,7 @@ public class Server {
 		// 3. If the user is logged in, ask the database to get the wallet
 		try {
 			result.addString(WinMessage.SUCCESS);
-			result.addString(this.server_db.get_user_wallet(this.connections_manager.get_username(address)).serialize());
+			result.addObject(this.server_db.get_user_wallet(session.get_username()));
 		} catch (WinsomeException e) {
 			result.addString(WinMessage.ERROR);
 			result.addString(e.niceMessage());
@@ -786,24 +843,23 @@ public class Server {
 		return result;
 	}
 
-	public WinMessage wallet_btc_request(String address) {
+	public WinMessage wallet_btc_request(Session session) {
 		/*
 		 * Get the user's wallet balance in BTC currency
-		 * The BTC currency is randomly generated querying the website random.org
-		 * The HTTP request ask for a random number between 0 and 1000
-		 *  as the example https://www.random.org/integers/?num=1&min=0&max=1000&col=1&base=10&format=plain&rnd=new
+		 * The BTC currency is the cached rate of the ExchangeRateService (by default randomly generated
+		 * querying the website random.org), the request never waits for the network
 		 *
 		 * 1. Check if the user is logged in
 		 * 2. If the user is not logged in, return an error message
 		 * 3. If the user is logged in, ask the database to get the user's wallet balance
-		 * 4. Get the BTC currency with the random.org website
+		 * 4. Get the BTC currency from the exchange rate service
 		 * 5. Return the wallet balance in BTC currency
 		 */
 
 		WinMessage result = new WinMessage();
 
 		// 1. Check if the user is logged in
-		if (!this.connections_manager.is_address_connected(address)) {
+		if (!session.is_logged_in()) {
 			// 2. If the user is not logged in, return an error message
 			result.addString(WinMessage.ERROR);
 			result.addString("User not logged in with this address");
@@ -812,9 +868,9 @@ public class Server {
 
 		// 3. If the user is logged in, ask the database to get the user's wallet balance
 		try {
-			double balance = this.server_db.get_user_wallet(this.connections_manager.get_username(address)).getBalance();
-			// 4. Get the BTC currency with the random.org website
-			double btc = this.get_btc_rate();
+			double balance = this.server_db.get_user_wallet(session.get_username()).getBalance();
+			// 4. Get the BTC currency from the exchange rate service
+			double btc = this.exchange_rates.get_rate();
 			// 5. Return the wallet balance in BTC currency
 			result.addString(WinMessage.SUCCESS);
 			result.addString(String.valueOf(balance * btc));
@@ -823,32 +879,143 @@ public class Server {
 			result.addString(e.niceMessage());
 		} catch (IOException ee) {
 			result.addString(WinMessage.ERROR);
-			result.addString("Error while getting the BTC rate");
+			result.addString("Error while getting the BTC rate : " + ee.getMessage());
 		}
 
 		return result;
 	}
 
-	private double get_btc_rate() throws IOException {
-		URL random_org_url = new URL("https://www.random.org/integers/?num=1&min=0&max=1000&col=1&base=10&format=plain&rnd=new");
-		HttpURLConnection random_org_connection = (HttpURLConnection) random_org_url.openConnection();
-		random_org_connection.setRequestMethod("GET");
-		BufferedReader in = new BufferedReader(new InputStreamReader(random_org_connection.getInputStream()));
-		String inputLine;
-		StringBuilder response = new StringBuilder();
-		while ((inputLine = in.readLine()) != null) {
-			response.append(inputLine);
+	// batch requests (one response for each item, the database locks are taken once for the whole batch)
+
+	public WinMessage[] show_posts_request(Session session, String[] post_ids) {
+		/*
+		 * Get more posts
+		 *
+		 * 1. Check if the user is logged in
+		 * 2. If the user is not logged in, return an error message for each post
+		 * 3. If the user is logged in, ask the database to get the posts
+		 * 4. Return a result for each post
+		 */
+
+		// 1. Check if the user is logged in
+		if (!session.is_logged_in()) {
+			// 2. If the user is not logged in, return an error message for each post
+			return batch_errors(post_ids.length, "User not logged in with this address");
+		}
+
+		// 3. If the user is logged in, ask the database to get the posts
+		PostReprDetailed[] posts;
+		try {
+			posts = this.server_db.get_posts(post_ids);
+		} catch (WinsomeException e) {
+			return batch_errors(post_ids.length, e.niceMessage());
+		}
+
+		// 4. Return a result for each post
+		WinMessage[] results = new WinMessage[post_ids.length];
+		for (int i = 0; i < post_ids.length; i++) {
+			results[i] = new WinMessage();
+			if (posts[i] == null) {
+				results[i].addString(WinMessage.ERROR);
+				results[i].addString(new WinsomeDB_Exception.PostNotFound(post_ids[i]).niceMessage());
+			} else {
+				results[i].addString(WinMessage.SUCCESS);
+				results[i].addObject(posts[i]);
+			}
+		}
+		return results;
+	}
+
+	public WinMessage[] rate_posts_request(Session session, String[] post_ids, String[] rates) {
+		/*
+		 * Rate more posts
+		 *
+		 * 1. Check if the user is logged in
+		 * 2. If the user is not logged in, return an error message for each post
+		 * 3. If the user is logged in, ask the database to rate the posts
+		 * 4. Return a result for each post
+		 */
+
+		// 1. Check if the user is logged in
+		if (!session.is_logged_in()) {
+			// 2. If the user is not logged in, return an error message for each post
+			return batch_errors(post_ids.length, "User not logged in with this address");
+		}
+
+		// 3. If the user is logged in, ask the database to rate the posts
+		boolean[] votes = new boolean[rates.length];
+		for (int i = 0; i < rates.length; i++)
+			votes[i] = RateDB.UPVOTE.equals(rates[i]);
+		try {
+			return batch_results(this.server_db.rate_posts(
+					session.get_username(), post_ids, votes));
+		} catch (WinsomeException e) {
+			return batch_errors(post_ids.length, e.niceMessage());
+		}
+	}
+
+	public WinMessage[] follow_users_request(Session session, String[] usernames) {
+		/*
+		 * Follow more users
+		 *
+		 * 1. Check if the user is logged in
+		 * 2. If the user is not logged in, return an error message for each user
+		 * 3. If the user is logged in, ask the database to follow the users
+		 * 4. notify every user followed (if online)
+		 * 5. Return a result for each user
+		 */
+
+		// 1. Check if the user is logged in
+		if (!session.is_logged_in()) {
+			// 2. If the user is not logged in, return an error message for each user
+			return batch_errors(usernames.length, "User not logged in with this address");
 		}
-		in.close();
 
-		double btc;
+		// 3. If the user is logged in, ask the database to follow the users
+		String follower = session.get_username();
+		WinsomeException[] errors;
 		try {
-			btc = Double.parseDouble(response.toString())/1000;
-		} catch (NumberFormatException e) {
-			btc = 0;
+			errors = this.server_db.user_follows_many(follower, usernames);
+		} catch (WinsomeException e) {
+			return batch_errors(usernames.length, e.niceMessage());
+		}
+
+		// 4. notify every user followed (if online)
+		for (int i = 0; i < usernames.length; i++) {
+			if (errors[i] != null)
+				continue;
+			this.notifications.notify_follower(usernames[i], follower, true);
+		}
+
+		// 5. Return a result for each user
+		return batch_results(errors);
+	}
+
+	private static WinMessage[] batch_results(WinsomeException[] errors) {
+		/*
+		 * SUCCESS for each item without error, ERROR and the message of the error otherwise
+		 */
+		WinMessage[] results = new WinMessage[errors.length];
+		for (int i = 0; i < errors.length; i++) {
+			results[i] = new WinMessage();
+			if (errors[i] == null) {
+				results[i].addString(WinMessage.SUCCESS);
+			} else {
+				results[i].addString(WinMessage.ERROR);
+				results[i].addString(errors[i].niceMessage());
+			}
 		}
+		return results;
+	}
 
-		return btc;
+	private static WinMessage[] batch_errors(int n, String message) {
+		WinMessage[] results = new WinMessage[n];
+		for (int i = 0; i < n; i++) {
+			results[i] = new WinMessage();
+			results[i].addString(WinMessage.ERROR);
+			results[i].addString(message);
+		}
+		return results;
 	}
 
 	/**
@@ -919,6 +1086,23 @@ public class Server {
 			this.workers_thread_poll.awaitTermination(1, TimeUnit.MINUTES);
 			// DEBUG
 			System.out.println("All workers terminated");
+			System.out.println(this.workers_thread_poll);
+
+			for (ServerReactor reactor : this.reactors) {
+				reactor.shutdown();
+				reactor.join();
+			}
+			// DEBUG
+			System.out.println("Reactors terminated");
+			System.out.println(WinBufferPool.SHARED);
+
+			this.notifications.shutdown(1000);
+			// DEBUG
+			System.out.println(this.notifications);
+
+			this.exchange_rates.shutdown();
+			// DEBUG
+			System.out.println(this.exchange_rates);
 
 			interrupt_rewards_thread();
 			// DEBUG
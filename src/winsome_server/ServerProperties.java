@@ -25,6 +25,12 @@ public class ServerProperties {
 	 * 11. WORKERS=<number of worker threads> (default: 10)
 	 * 12. REWARD_AUTHORS=<reward for authors> (default: 0.7)
 	 * 13. SERVER_TIMEOUT=<server timeout in sec> (default: 10)
+	 * 14. IO_THREADS=<number of I/O selector threads> (default: 4)
+	 * 15. WORKER_MODE=<POOL or VIRTUAL> (default: POOL)
+	 * 16. MAX_CONCURRENT_TASKS=<max tasks running at the same time in VIRTUAL mode> (default: 1000)
+	 * 17. BTC_RATE_SOURCE=<RANDOM_ORG or LOCAL> (default: RANDOM_ORG)
+	 * 18. BTC_RATE_TTL=<time to live of the cached BTC rate in ms> (default: 60000)
+	 * 19. BTC_RATE_TIMEOUT=<connect and read timeout of the BTC rate source in ms> (default: 2000)
 	 *
 	 * the properties are stored in a HashMap<String, String>
 	 *
@@ -140,6 +146,64 @@ public class ServerProperties {
 		}
 	}
 
+	public int get_io_threads() {
+		/*
+		 * return the number of I/O selector threads if it exists, otherwise return the default value
+		 */
+		if (this.properties.containsKey("IO_THREADS")) {
+			return Math.max(1, Integer.parseInt(this.properties.get("IO_THREADS")));
+		} else {
+			return 4;
+		}
+	}
+
+	public String get_worker_mode() {
+		/*
+		 * return the worker mode if it exists, otherwise return the default value
+		 */
+		return this.properties.getOrDefault("WORKER_MODE", WorkerExecutor.POOL_MODE);
+	}
+
+	public int get_max_concurrent_tasks() {
+		/*
+		 * return the max number of concurrent tasks if it exists, otherwise return the default value
+		 */
+		if (this.properties.containsKey("MAX_CONCURRENT_TASKS")) {
+			return Integer.parseInt(this.properties.get("MAX_CONCURRENT_TASKS"));
+		} else {
+			return 1000;
+		}
+	}
+
+	public String get_btc_rate_source() {
+		/*
+		 * return the source of the BTC rate if it exists, otherwise return the default value
+		 */
+		return this.properties.getOrDefault("BTC_RATE_SOURCE", RandomOrgRateSource.NAME);
+	}
+
+	public long get_btc_rate_ttl() {
+		/*
+		 * return the time to live of the cached BTC rate if it exists, otherwise return the default value
+		 */
+		if (this.properties.containsKey("BTC_RATE_TTL")) {
+			return Math.max(1, Long.parseLong(this.properties.get("BTC_RATE_TTL")));
+		} else {
+			return 60000;
+		}
+	}
+
+	public int get_btc_rate_timeout() {
+		/*
+		 * return the timeout of the BTC rate source if it exists, otherwise return the default value
+		 */
+		if (this.properties.containsKey("BTC_RATE_TIMEOUT")) {
+			return Math.max(1, Integer.parseInt(this.properties.get("BTC_RATE_TIMEOUT")));
+		} else {
+			return 2000;
+		}
+	}
+
 	public double get_reward_authors() {
 		/*
 		 * return the reward for authors if it exists, otherwise return the default value
@@ -242,6 +306,12 @@ public class ServerProperties {
 		properties.put("MULTICAST_ADDRESS", "224.0.1.1");
 		properties.put("REWARD_TIME", "10");
 		properties.put("WORKERS", "10");
+		properties.put("IO_THREADS", "4");
+		properties.put("WORKER_MODE", WorkerExecutor.POOL_MODE);
+		properties.put("MAX_CONCURRENT_TASKS", "1000");
+		properties.put("BTC_RATE_SOURCE", RandomOrgRateSource.NAME);
+		properties.put("BTC_RATE_TTL", "60000");
+		properties.put("BTC_RATE_TIMEOUT", "2000");
 		properties.put("REWARD_AUTHORS", "0.7");
 		properties.put("SERVER_TIMEOUT", "10");
 
@@ -284,7 +354,9 @@ public class ServerProperties {
 				// skip the properties that are not used by the client
 				if (key.equals("POSTS_DATABASE") || key.equals("USERS_DATABASE") ||
 					key.equals("WORKERS") || key.equals("REWARD_TIME") ||
-					key.equals("REWARD_AUTHORS") || key.equals("SERVER_TIMEOUT")) {
+					key.equals("REWARD_AUTHORS") || key.equals("SERVER_TIMEOUT") ||
+					key.equals("IO_THREADS") || key.equals("WORKER_MODE") ||
+					key.equals("MAX_CONCURRENT_TASKS") || key.startsWith("BTC_RATE_")) {
 					continue;
 				}
 
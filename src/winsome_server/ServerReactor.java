@@ -0,0 +1,247 @@
+package winsome_server;
+
+import winsome_communication.WinMessage;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class is an I/O selector thread of the server.
+ * <p></p>
+ * The server accepts the connections on its own selector and assigns every accepted channel
+ * to one of the reactors, the channel is then served only by the selector of that reactor:
+ * 1. the channel is registered to the selector with a new Session attached (the session is added to the connections manager).
+ * 2. when the channel is readable, the available bytes are decoded and every whole request is sent to a worker.
+ * 3. when the channel is writable, the queued responses are written without blocking.
+ * 4. when the channel is closed, the connection is removed from the selector.
+ * <p></p>
+ * The channels are registered by the reactor thread itself (Selector.register blocks while the selector is selecting),
+ * the other threads only add them to the pending queue and wake up the selector.
+ */
+public class ServerReactor extends Thread {
+	// member variables
+	private final Server server;
+	private final ExecutorService workers;
+	private final Selector selector;
+	private final ConcurrentLinkedQueue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger connections = new AtomicInteger();
+	private volatile boolean running = true;
+
+	// constructor
+	public ServerReactor(Server server, ExecutorService workers, int id) throws IOException {
+		super("winsome-io-" + id);
+		this.server = server;
+		this.workers = workers;
+		this.selector = Selector.open();
+	}
+
+	// getters
+
+	/**
+	 * @return the number of connections served by this reactor (including the ones not registered yet)
+	 */
+	public int get_connections() {
+		return this.connections.get();
+	}
+
+	// methods
+
+	/**
+	 * assign
+	 * this method is used to give an accepted channel to the reactor
+	 * it can be called by any thread
+	 *
+	 * @param client the accepted channel (already non-blocking)
+	 */
+	public void assign(SocketChannel client) {
+		this.connections.incrementAndGet();
+		this.pending.add(client);
+		this.selector.wakeup();
+	}
+
+	/**
+	 * connection_closed
+	 * this method is called by the CChannel of a connection of this reactor when it is closed
+	 */
+	void connection_closed() {
+		this.connections.decrementAndGet();
+	}
+
+	/**
+	 * shutdown
+	 * this method is used to stop the reactor, the open connections are closed
+	 */
+	public void shutdown() {
+		this.running = false;
+		this.selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+		/*
+		 * reactor loop
+		 *
+		 * 1. Loop
+		 * 1.1. Wait for a new request, a writable channel or a new channel to register
+		 * 1.2. Register the channels assigned by the server
+		 * 1.3. If a new request is received, add it to the queue of requests to serve
+		 *      (the bytes are accumulated by the CChannel of the key until a whole frame is received)
+		 * 1.4. If a client is ready to write, write the queued responses to it
+		 * 2. Close the connections and the selector
+		 */
+
+		// 1. Loop
+		while (this.running) {
+			// 1.1. Wait for a new request, a writable channel or a new channel to register
+			try {
+				this.selector.select(1000);
+			} catch (IOException | ClosedSelectorException e) {
+				e.printStackTrace();
+				break;
+			}
+
+			// 1.2. Register the channels assigned by the server
+			register_pending();
+
+			Iterator<SelectionKey> iterator = this.selector.selectedKeys().iterator();
+			while (iterator.hasNext()) {
+				SelectionKey key = iterator.next();
+				iterator.remove();
+				CChannel channel = (CChannel) key.attachment();
+				try {
+					// 1.3. If a new request is received, add it to the queue of requests to serve
+					if (key.isReadable()) {
+						// accumulate the available bytes, only whole frames are sent to the workers
+						// (a pipelining client can have sent more frames, they are read while the channel accepts them)
+						WinMessage request;
+						while (channel.is_reading() && (request = channel.read_message()) != null) {
+							// Debug
+							System.out.println("client : " + channel.get_socket_channel() + " sent a request");
+
+							dispatch(key, channel, request);
+						}
+
+						continue;
+					}
+
+					// 1.4. If a client is ready to write, write the queued responses to it
+					if (key.isWritable()) {
+						SocketChannel client = channel.get_socket_channel();
+
+						// Debug
+						System.out.println("client : " + client + " is ready to write");
+
+						// write as much as the socket accepts, OP_WRITE is kept until the queue is drained
+						if (channel.flush()) {
+							// Debug
+							System.out.println("Server: responses sent to the client " + client.getRemoteAddress());
+						}
+					}
+				} catch (IOException | CancelledKeyException | RejectedExecutionException e) {
+					// Debug
+					System.out.println("client disconnected : " + key.channel());
+
+					channel.close();
+				} catch (RuntimeException e) {
+					// a failure serving a client closes only its connection,
+					// the reactor keeps serving the other connections of its selector
+					System.err.println("client : " + key.channel() + " closed after an error");
+					e.printStackTrace();
+
+					channel.close();
+				}
+			}
+		}
+
+		// 2. Close the connections and the selector
+		close();
+	}
+
+	private void dispatch(SelectionKey key, CChannel channel, WinMessage request) {
+		/*
+		 * send a request to the workers
+		 *
+		 * 1. a request without a type (an empty or null message) is answered with an error at once
+		 * 2. a request without id stops the reading until its response has been written
+		 * 3. a request with id is pipelined, the read-only ones run concurrently and the others in order
+		 */
+
+		// 1. a request without a type (an empty or null message) is answered with an error at once
+		if (request.size() == 0 || request.getString(0) == null) {
+			WinMessage response = new WinMessage();
+			response.addString(WinMessage.ERROR);
+			response.addString("Invalid request");
+			response.setId(request.getId());
+			if (request.hasId())
+				channel.request_started();
+			channel.enqueue(response);
+			return;
+		}
+
+		WorkerTask task = new WorkerTask(this.server, key, request);
+
+		// 2. a request without id stops the reading until its response has been written
+		if (!request.hasId()) {
+			channel.pause_reading();
+			this.workers.execute(task);
+			return;
+		}
+
+		// 3. a request with id is pipelined, the read-only ones run concurrently and the others in order
+		channel.request_started();
+		channel.submit(task, !task.is_read_only(), this.workers);
+	}
+
+	private void register_pending() {
+		/*
+		 * register the channels assigned by the server to the selector of the reactor
+		 */
+		SocketChannel client;
+		while ((client = this.pending.poll()) != null) {
+			try {
+				SelectionKey client_key = client.register(this.selector, SelectionKey.OP_READ);
+				Session session = new Session(client, client_key, this, this.server.get_connections_manager());
+				client_key.attach(session);
+				this.server.get_connections_manager().add_session(session);
+			} catch (IOException e) {
+				this.connections.decrementAndGet();
+				try {
+					client.close();
+				} catch (IOException e1) {
+					e1.printStackTrace();
+				}
+			}
+		}
+	}
+
+	private void close() {
+		/*
+		 * close every connection of the reactor and the selector
+		 */
+		for (SelectionKey key : this.selector.keys()) {
+			if (key.attachment() instanceof CChannel)
+				((CChannel) key.attachment()).close();
+		}
+		for (SocketChannel client : this.pending) {
+			try {
+				client.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		try {
+			this.selector.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package winsome_server;
+
+import winsome_communication.ClientRMI_Interface;
+
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Session class
+ * This class is the state of a client connection, created by the reactor when the connection is accepted
+ * and attached to the SelectionKey of the channel.
+ * <p></p>
+ * It contains (in addition to the state of the CChannel):
+ * 1. The id of the session, unique while the server is running.
+ * 2. The username of the logged-in user (null if no user is logged in).
+ * 3. The RMI callback registered by the client (null if not registered).
+ * 4. The counters of the requests served and of the error responses.
+ * 5. Whether the client has asked (in the handshake) to receive the follower updates as NOTIFY frames on this connection.
+ * <p></p>
+ * The handlers of the server receive the session of the request, so they do not look up the
+ * remote address of the channel. The session is indexed by the CConnectionsManager by id and,
+ * while a user is logged in, by username; it is removed from the manager when the channel is closed.
+ */
+public class Session extends CChannel {
+	// class variables
+	private static final AtomicLong next_id = new AtomicLong();
+
+	// member variables
+	private final long id = next_id.incrementAndGet();
+	private final CConnectionsManager connections_manager;
+	private final String address;
+	private volatile String username = null;
+	private volatile ClientRMI_Interface callback = null;
+	private volatile boolean push_notifications = false;
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+
+	// constructor
+	public Session(SocketChannel socket_channel, SelectionKey selection_key, ServerReactor reactor,
+	               CConnectionsManager connections_manager) {
+		super(socket_channel, selection_key, reactor);
+		this.connections_manager = connections_manager;
+		this.address = String.valueOf(socket_channel.socket().getRemoteSocketAddress());
+	}
+
+	// getters
+	public long get_id() {
+		return this.id;
+	}
+
+	/**
+	 * @return the remote address of the client, computed once when the session is created
+	 */
+	public String get_address() {
+		return this.address;
+	}
+
+	public String get_username() {
+		return this.username;
+	}
+
+	public ClientRMI_Interface get_callback() {
+		return this.callback;
+	}
+
+	public long get_requests() {
+		return this.requests.get();
+	}
+
+	public long get_errors() {
+		return this.errors.get();
+	}
+
+	/**
+	 * @return true if the follower updates are pushed on the connection instead of using the RMI callback
+	 */
+	public boolean is_push_enabled() {
+		return this.push_notifications;
+	}
+
+	/**
+	 * @return true if a user is logged in with this session
+	 */
+	public boolean is_logged_in() {
+		return this.username != null;
+	}
+
+	// setters
+	void set_username(String username) {
+		this.username = username;
+	}
+
+	void set_push_enabled(boolean push_notifications) {
+		this.push_notifications = push_notifications;
+	}
+
+	synchronized void set_callback(ClientRMI_Interface callback) {
+		this.callback = callback;
+	}
+
+	synchronized void compare_and_clear_callback(ClientRMI_Interface callback) {
+		if (this.callback == callback)
+			this.callback = null;
+	}
+
+	// methods
+
+	/**
+	 * request_served
+	 * this method is used to update the counters of the session after a request has been served
+	 *
+	 * @param error true if the response is an error
+	 */
+	public void request_served(boolean error) {
+		this.requests.incrementAndGet();
+		if (error)
+			this.errors.incrementAndGet();
+	}
+
+	/**
+	 * close
+	 * this method is used to close the channel and remove the session from the connections manager
+	 * (the user of the session, if any, is logged out)
+	 */
+	@Override
+	public void close() {
+		super.close();
+		this.connections_manager.remove_session(this);
+	}
+
+	@Override
+	public String toString() {
+		return "Session #" + this.id + " [" + this.address + (this.username != null ? ", " + this.username : "") +
+				", requests = " + this.requests.get() + ", errors = " + this.errors.get() + "]";
+	}
+}
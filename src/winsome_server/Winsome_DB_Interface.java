@@ -4,7 +4,9 @@ import winsome_DB.WinsomeDB_Exception;
 import winsome_communication.CommentRepr;
 import winsome_communication.PostReprDetailed;
 import winsome_communication.PostReprSimple;
+import winsome_communication.UserRepr;
 import winsome_communication.WalletRepr;
+import winsome_communication.WinsomeException;
 
 /**
  * This interface is used by the Winsome Server to communicate with the Database.
@@ -35,8 +37,9 @@ import winsome_communication.WalletRepr;
  * // GENERAL //
  * 1. Get a user's blog
  * 2. Get a user's feed
- * 3. Get a list of usernames with similar interests with a given user.
- * 4. ...
+ * 3. Get a list of usernames with similar interests with a given user (a page at a time).
+ * 4. Get the users recommended to a given user.
+ * 5. ...
  * <p></p>
  * // GLOBAL //
  * 1. Reward every user with a given amount of winsome.
@@ -49,6 +52,13 @@ import winsome_communication.WalletRepr;
  * @since 1.0
  */
 public interface Winsome_DB_Interface {
+	// the maximum number of users in a page of get_similar_users
+	int SIMILAR_USERS_MAX_LIMIT = 100;
+	// the maximum number of users recommended by recommend_users
+	int RECOMMEND_MAX_K = 50;
+	// the maximum number of posts in a page of get_user_blog and get_user_feed
+	int FEED_MAX_LIMIT = 100;
+
 	// USERS //
 
 	/**
@@ -85,6 +95,17 @@ public interface Winsome_DB_Interface {
 			throws WinsomeDB_Exception.UsernameNotFound, WinsomeDB_Exception.UsernameAlreadyFollows,
 			WinsomeDB_Exception.DatabaseNotInitialized, WinsomeDB_Exception.UsernameFollowItself;
 
+	/**
+	 * This method makes a user follow more users (the lock is taken once for the whole batch).
+	 * @param username The username of the user that wants to follow.
+	 * @param usernames_to_follow The usernames of the users to follow.
+	 * @return for each user to follow, null if it is now followed, the reason of the failure otherwise.
+	 * @throws WinsomeDB_Exception.UsernameNotFound if the username is not found in the database.
+	 * @throws WinsomeDB_Exception.DatabaseNotInitialized if the database is not initialized.
+	 */
+	WinsomeException[] user_follows_many(String username, String[] usernames_to_follow)
+			throws WinsomeDB_Exception.UsernameNotFound, WinsomeDB_Exception.DatabaseNotInitialized;
+
 	/**
 	 * This method makes a user unfollow another user.
 	 * @param username The username of the user that wants to unfollow.
@@ -200,6 +221,18 @@ public interface Winsome_DB_Interface {
 			throws WinsomeDB_Exception.UsernameNotFound, WinsomeDB_Exception.PostNotFound,
 			WinsomeDB_Exception.PostAlreadyRated, WinsomeDB_Exception.DatabaseNotInitialized, WinsomeDB_Exception.PostRatedByAuthor;
 
+	/**
+	 * This method is used to like/dislike more posts (the locks are taken once for the whole batch).
+	 * @param username The username of the user who wants to rate the posts.
+	 * @param post_ids The ids of the posts to rate.
+	 * @param rates The rates of the user to the posts.
+	 * @return for each post, null if the rate has been added, the reason of the failure otherwise.
+	 * @throws WinsomeDB_Exception.UsernameNotFound if the username is not found in the database.
+	 * @throws WinsomeDB_Exception.DatabaseNotInitialized if the database is not initialized.
+	 */
+	WinsomeException[] rate_posts(String username, String[] post_ids, boolean[] rates)
+			throws WinsomeDB_Exception.UsernameNotFound, WinsomeDB_Exception.DatabaseNotInitialized;
+
 	/**
 	 * This method is used to comment a post.
 	 * @param username The username of the user who wants to comment the post.
@@ -244,6 +277,15 @@ public interface Winsome_DB_Interface {
 	PostReprDetailed get_post(String post_id)
 			throws WinsomeDB_Exception.PostNotFound, WinsomeDB_Exception.DatabaseNotInitialized;
 
+	/**
+	 * This method is used to get the full representation of more posts (the lock is taken once).
+	 * @param post_ids the ids of the posts.
+	 * @return the representations of the posts in the same order (null if a post is not found).
+	 * @throws WinsomeDB_Exception.DatabaseNotInitialized if the database is not initialized.
+	 */
+	PostReprDetailed[] get_posts(String[] post_ids)
+			throws WinsomeDB_Exception.DatabaseNotInitialized;
+
 	// GENERAL //
 
 	/**
@@ -252,28 +294,85 @@ public interface Winsome_DB_Interface {
 	 * @return An array of PostReprSimple objects with the posts' information.
 	 * @throws WinsomeDB_Exception.UsernameNotFound if the username is not found in the database.
 	 * @throws WinsomeDB_Exception.DatabaseNotInitialized if the database is not initialized.
+	 * @deprecated the result is not bounded, use get_user_blog(username, since_id, max_id, limit).
 	 */
+	@Deprecated
 	PostReprSimple[] get_user_blog(String username)
 			throws WinsomeDB_Exception.UsernameNotFound, WinsomeDB_Exception.DatabaseNotInitialized;
 
+	/**
+	 * This method is used to get a page of the posts of a user, newest first.
+	 * @param username The username of the user to get the posts.
+	 * @param since_id Only the posts newer than this one are returned, null or empty for no limit.
+	 * @param max_id Only the posts older than this one are returned (the last post of the previous page), null or empty for no limit.
+	 * @param limit The maximum number of posts to return (at most FEED_MAX_LIMIT).
+	 * @return An array of PostReprSimple objects with the posts' information, newest first.
+	 * @throws WinsomeDB_Exception.UsernameNotFound if the username is not found in the database.
+	 * @throws WinsomeDB_Exception.PostNotFound if since_id or max_id is not a valid post id.
+	 * @throws WinsomeDB_Exception.DatabaseNotInitialized if the database is not initialized.
+	 */
+	PostReprSimple[] get_user_blog(String username, String since_id, String max_id, int limit)
+			throws WinsomeDB_Exception.UsernameNotFound, WinsomeDB_Exception.PostNotFound, WinsomeDB_Exception.DatabaseNotInitialized;
+
 	/**
 	 * This method is used to get the posts of a user's feed.
 	 * @param username The username of the user to get the feed.
 	 * @return An array of PostReprSimple objects with the posts' information.
 	 * @throws WinsomeDB_Exception.UsernameNotFound if the username is not found in the database.
 	 * @throws WinsomeDB_Exception.DatabaseNotInitialized if the database is not initialized.
+	 * @deprecated the result is not bounded, use get_user_feed(username, since_id, max_id, limit).
 	 */
+	@Deprecated
 	PostReprSimple[] get_user_feed(String username)
 			throws WinsomeDB_Exception.UsernameNotFound, WinsomeDB_Exception.DatabaseNotInitialized;
 
+	/**
+	 * This method is used to get a page of a user's feed, newest first.
+	 * @param username The username of the user to get the feed.
+	 * @param since_id Only the posts newer than this one are returned, null or empty for no limit.
+	 * @param max_id Only the posts older than this one are returned (the last post of the previous page), null or empty for no limit.
+	 * @param limit The maximum number of posts to return (at most FEED_MAX_LIMIT).
+	 * @return An array of PostReprSimple objects with the posts' information, newest first.
+	 * @throws WinsomeDB_Exception.UsernameNotFound if the username is not found in the database.
+	 * @throws WinsomeDB_Exception.PostNotFound if since_id or max_id is not a valid post id.
+	 * @throws WinsomeDB_Exception.DatabaseNotInitialized if the database is not initialized.
+	 */
+	PostReprSimple[] get_user_feed(String username, String since_id, String max_id, int limit)
+			throws WinsomeDB_Exception.UsernameNotFound, WinsomeDB_Exception.PostNotFound, WinsomeDB_Exception.DatabaseNotInitialized;
+
 	/**
 	 * This method is used to get the usernames of users with similar interests with the given user.
 	 * @param username The username of the user to get the similar users.
-	 * @return An array of strings with the usernames of the similar users.
+	 * @return An array with the representations of all the similar users.
+	 * @throws WinsomeDB_Exception.UsernameNotFound if the username is not found in the database.
+	 * @throws WinsomeDB_Exception.DatabaseNotInitialized if the database is not initialized.
+	 * @deprecated the result is not bounded, use get_similar_users(username, after, limit).
+	 */
+	@Deprecated
+	UserRepr[] get_similar_users(String username)
+			throws WinsomeDB_Exception.UsernameNotFound, WinsomeDB_Exception.DatabaseNotInitialized;
+
+	/**
+	 * This method is used to get a page of the users with similar interests with the given user.
+	 * @param username The username of the user to get the similar users.
+	 * @param after The username of the last user of the previous page, null or empty for the first page.
+	 * @param limit The maximum number of users to return (at most SIMILAR_USERS_MAX_LIMIT).
+	 * @return An array with the representations of the similar users, shorter than limit only on the last page.
+	 * @throws WinsomeDB_Exception.UsernameNotFound if the username (or the after username) is not found in the database.
+	 * @throws WinsomeDB_Exception.DatabaseNotInitialized if the database is not initialized.
+	 */
+	UserRepr[] get_similar_users(String username, String after, int limit)
+			throws WinsomeDB_Exception.UsernameNotFound, WinsomeDB_Exception.DatabaseNotInitialized;
+
+	/**
+	 * This method is used to get the users recommended to a user, scored by shared tags and friends of friends.
+	 * @param username The username of the user to get the recommendations.
+	 * @param k The maximum number of users to recommend (at most RECOMMEND_MAX_K).
+	 * @return An array with the representations of the recommended users, best first.
 	 * @throws WinsomeDB_Exception.UsernameNotFound if the username is not found in the database.
 	 * @throws WinsomeDB_Exception.DatabaseNotInitialized if the database is not initialized.
 	 */
-	String[] get_similar_users(String username)
+	UserRepr[] recommend_users(String username, int k)
 			throws WinsomeDB_Exception.UsernameNotFound, WinsomeDB_Exception.DatabaseNotInitialized;
 
 	// GLOBAL //
@@ -0,0 +1,176 @@
+package winsome_server;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class runs the WorkerTasks of the server.
+ * <p></p>
+ * Available modes (WORKER_MODE property):
+ * 1. POOL = the tasks run on a fixed pool of WORKERS threads (default).
+ * 2. VIRTUAL = every task runs on its own virtual thread, so a task blocked on the network (RMI callbacks,
+ *    the exchange rate request) or on a DB lock does not hold a pool thread. At most MAX_CONCURRENT_TASKS
+ *    tasks run at the same time, the others wait on a semaphore inside their own thread.
+ *    If the JVM has no virtual threads, the POOL mode is used instead (a platform thread per task waiting
+ *    on the semaphore would make the number of blocked threads unbounded).
+ * <p></p>
+ * Both modes collect the same metrics (completed tasks, throughput, average task time, peak of running tasks),
+ * so the two modes can be compared on the same workload.
+ */
+public class WorkerExecutor extends AbstractExecutorService {
+	// class constants
+	public static final String POOL_MODE = "POOL";
+	public static final String VIRTUAL_MODE = "VIRTUAL";
+
+	// member variables
+	private final String mode;
+	private final ExecutorService executor;
+	private final Semaphore permits;
+	private final long start_time = System.nanoTime();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong busy_nanos = new AtomicLong();
+	private final AtomicInteger running = new AtomicInteger();
+	private final AtomicInteger peak_running = new AtomicInteger();
+
+	// constructor
+	public WorkerExecutor(String mode, int workers, int max_concurrent_tasks) {
+		/*
+		 * 1. if the mode is VIRTUAL, create a virtual thread per task executor and the semaphore
+		 * 2. otherwise (or if the JVM has no virtual threads) create a fixed pool of threads
+		 */
+
+		ExecutorService virtual = VIRTUAL_MODE.equalsIgnoreCase(mode) ? new_virtual_thread_executor() : null;
+		if (virtual != null) {
+			// 1. if the mode is VIRTUAL, create a virtual thread per task executor and the semaphore
+			this.mode = VIRTUAL_MODE;
+			this.executor = virtual;
+			this.permits = new Semaphore(Math.max(1, max_concurrent_tasks));
+		} else {
+			// 2. otherwise (or if the JVM has no virtual threads) create a fixed pool of threads
+			this.mode = POOL_MODE;
+			this.executor = Executors.newFixedThreadPool(workers);
+			this.permits = null;
+		}
+	}
+
+	private static ExecutorService new_virtual_thread_executor() {
+		/*
+		 * Executors.newVirtualThreadPerTaskExecutor is looked up at runtime,
+		 * so the server still builds and runs on JVMs without virtual threads
+		 */
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException | UnsupportedOperationException e) {
+			System.err.println("WARNING: virtual threads are not available, using the " + POOL_MODE + " mode");
+			return null;
+		}
+	}
+
+	// getters
+	public String get_mode() {
+		return this.mode;
+	}
+
+	public long get_completed() {
+		return this.completed.get();
+	}
+
+	public int get_peak_running() {
+		return this.peak_running.get();
+	}
+
+	/**
+	 * @return the number of completed tasks per second since the executor has been created
+	 */
+	public double get_throughput() {
+		double seconds = (System.nanoTime() - this.start_time) / 1e9;
+		return seconds > 0 ? this.completed.get() / seconds : 0;
+	}
+
+	/**
+	 * @return the average time spent running a task (waiting for a permit excluded), in milliseconds
+	 */
+	public double get_average_task_millis() {
+		long n = this.completed.get();
+		return n > 0 ? this.busy_nanos.get() / 1e6 / n : 0;
+	}
+
+	// methods
+	@Override
+	public void execute(Runnable task) {
+		this.executor.execute(() -> run_measured(task));
+	}
+
+	private void run_measured(Runnable task) {
+		/*
+		 * 1. wait for a permit (VIRTUAL mode only)
+		 * 2. run the task and update the metrics
+		 * 3. give back the permit
+		 */
+
+		// 1. wait for a permit (VIRTUAL mode only)
+		if (this.permits != null) {
+			try {
+				this.permits.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+
+		// 2. run the task and update the metrics
+		int now_running = this.running.incrementAndGet();
+		this.peak_running.accumulateAndGet(now_running, Math::max);
+		long start = System.nanoTime();
+		try {
+			task.run();
+		} finally {
+			this.busy_nanos.addAndGet(System.nanoTime() - start);
+			this.completed.incrementAndGet();
+			this.running.decrementAndGet();
+
+			// 3. give back the permit
+			if (this.permits != null)
+				this.permits.release();
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		this.executor.shutdown();
+	}
+
+	@Override
+	public List<Runnable> shutdownNow() {
+		return this.executor.shutdownNow();
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return this.executor.isShutdown();
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return this.executor.isTerminated();
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return this.executor.awaitTermination(timeout, unit);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Workers [%s] : completed = %d, throughput = %.2f tasks/s, average task = %.3f ms, peak running = %d",
+				get_mode(), get_completed(), get_throughput(), get_average_task_millis(), get_peak_running());
+	}
+}
@@ -1,75 +1,162 @@
 package winsome_server;
 
 import winsome_communication.WinMessage;
+import winsome_communication.WinProtocol;
 
 import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
-import java.nio.channels.SocketChannel;
+import java.util.Arrays;
 
 public class WorkerTask implements Runnable {
+	// class constants
+	public static final int MAX_BATCH_SIZE = 256;
+
 	// member variables
 	private final Server server;
-	private final Selector selector;
 	private final SelectionKey selection_key;
+	private final WinMessage message;
 
 
 	// constructor
-	public WorkerTask(Server server, Selector selector, SelectionKey selection_key) {
+	public WorkerTask(Server server, SelectionKey selection_key, WinMessage message) {
 		this.server = server;
-		this.selector = selector;
 		this.selection_key = selection_key;
+		this.message = message;
 	}
 
 	// methods
+
+	/**
+	 * is_read_only
+	 * the read-only requests of a connection can be served concurrently,
+	 * the other ones are served in the order they have been received
+	 *
+	 * @return true if the request does not modify the state of the server
+	 */
+	public boolean is_read_only() {
+		// (an empty message is not a valid request, the reactor answers it without running the task)
+		if (message.size() == 0 || message.getString(0) == null)
+			return false;
+		switch (message.getString(0)) {
+			case WinMessage.LIST_USERS_REQUEST:
+			case WinMessage.RECOMMEND_REQUEST:
+			case WinMessage.LIST_FOLLOWING_REQUEST:
+			case WinMessage.LIST_FOLLOWERS_REQUEST:
+			case WinMessage.BLOG_REQUEST:
+			case WinMessage.SHOW_FEED_REQUEST:
+			case WinMessage.SHOW_POST_REQUEST:
+			case WinMessage.WALLET_REQUEST:
+			case WinMessage.WALLET_BTC_REQUEST:
+				return true;
+			default:
+				return false;
+		}
+	}
+
 	@Override
 	public void run() {
 		/*
 		 * This method is called when a new thread is created or a thread is reused
 		 *
-		 * The method will read the message from the client and process it
-		 * After the message is processed, the method will put the answer back into the buffer of the key
+		 * The message has already been received by the selector thread
+		 * After the message is processed, the method will queue the answer into the CChannel of the key
 		 * and register the key to the selector as writable
 		 *
-		 * 1. read the message from the client
-		 * 2. process the message
-		 * 3. put the answer into the buffer
-		 * 4. register the key as writable
+		 * 1. process the message
+		 * 2. queue the answer into the CChannel
+		 * 3. register the key as writable
+		 *
+		 * The HELLO request is handled here because the protocol belongs to the connection
+		 * A request that cannot be served (e.g. a field that is not a string) is answered with an error,
+		 * so the channel never waits forever for its response
 		 */
 
-		/* 1. read the message from the client
-		 * the first message from the client is an array of strings
-		 */
-		SocketChannel socket_channel = (SocketChannel) selection_key.channel();
+		Session session = (Session) selection_key.attachment();
+		boolean answered = false;
 
 		try {
-			WinMessage message = WinMessage.receive(socket_channel);
-
 			// DEBUG
 			System.out.println("Received message: " + message);
 
-			// 2. process the message
-			if (message.getString(0).equals(WinMessage.EXIT)) {
+			// 1. process the message
+			if (WinMessage.EXIT.equals(message.getString(0))) {
 				// the client has closed the connection
 				// close the connection
-				socket_channel.close();
-				selection_key.cancel();
+				session.close();
 				return;
 			}
-			WinMessage response = process_message(
-					message.getStringsArray(),
-					socket_channel.getRemoteAddress().toString()
-			);
+			if (WinMessage.HANDSHAKE_REQUEST.equals(message.getString(0))) {
+				handshake(session);
+				return;
+			}
+			WinMessage response = process_message(message.getStringsArray(), session);
+			session.request_served(response.size() > 0 && WinMessage.ERROR.equals(response.getString(0)));
 
-			// 3. put the answer into the buffer + // 4. register the key as writable
-			socket_channel.register(selector, SelectionKey.OP_WRITE, response);
+			// 2. queue the answer into the CChannel + // 3. register the key as writable
+			// (the response is tagged with the id of the request, if any)
+			response.setId(message.getId());
+			session.enqueue(response);
+			answered = true;
 
-		} catch (IOException e) {
+		} catch (CancelledKeyException e) {
+			e.printStackTrace();
+		} catch (RuntimeException e) {
+			System.err.println("Error while serving the request " + message);
 			e.printStackTrace();
+			if (!answered) {
+				WinMessage response = new WinMessage();
+				response.addString(WinMessage.ERROR);
+				response.addString("Invalid request");
+				response.setId(message.getId());
+				session.enqueue(response);
+			}
+		}
+	}
+
+	private void handshake(Session session) {
+		/*
+		 * This method negotiates the protocol of the connection
+		 *
+		 * 1. choose the first protocol proposed by the client that is supported
+		 *    (and check if the client asks for the NOTIFY frames)
+		 * 2. answer with the name of the protocol (encoded with the current protocol) and NOTIFY if requested
+		 * 3. use the chosen protocol for the next responses
+		 */
+
+		// 1. choose the first protocol proposed by the client that is supported
+		// (and check if the client asks for the NOTIFY frames)
+		WinProtocol chosen = null;
+		boolean push = false;
+		for (int i = 1; i < message.size(); i++) {
+			if (WinMessage.NOTIFY.equals(message.getString(i)))
+				push = true;
+			else if (chosen == null)
+				chosen = WinProtocol.by_name(message.getString(i));
+		}
+
+		// 2. answer with the name of the protocol (encoded with the current protocol)
+		WinMessage response = new WinMessage();
+		response.setId(message.getId());
+		if (chosen == null) {
+			response.addString(WinMessage.ERROR);
+			response.addString("No supported protocol");
+			session.enqueue(response);
+			return;
 		}
+		response.addString(WinMessage.SUCCESS);
+		response.addString(chosen.get_name());
+		if (push)
+			response.addString(WinMessage.NOTIFY);
+		session.enqueue(response);
+		session.set_push_enabled(push);
+
+		// 3. use the chosen protocol for the next responses
+		// (the client does not send other requests until it receives the answer)
+		session.set_protocol(chosen);
 	}
 
-	public WinMessage process_message(String[] request, String address) {
+	public WinMessage process_message(String[] request, Session session) {
 		/*
 		 * This method will process the request and return the response
 		 *
@@ -98,6 +185,9 @@ public class WorkerTask implements Runnable {
 		 * 14. list_following
 		 * 15. wallet
 		 * 16. wallet_btc
+		 * 17. batch
+		 * 18. recommend
+		 * 19. list_followers
 		 *
 		 * If the type is not one of the above, an error message will be returned
 		 */
@@ -126,22 +216,71 @@ public class WorkerTask implements Runnable {
 					break;
 				}
 
-				response = this.server.login_request(parameters[0], parameters[1], address);
+				response = this.server.login_request(parameters[0], parameters[1], session);
 				break;
 			// 2.2 logout
 			case WinMessage.LOGOUT_REQUEST:
 				// the request is a logout request
 				// no parameters are provided by the client
 				// the response will be a string "success" or "error, reason"
-				response = this.server.logout_request(address);
+				response = this.server.logout_request(session);
 				break;
 
 			// 2.3 list_users
 			case WinMessage.LIST_USERS_REQUEST:
 				// the request is a list_users request
-				// no parameters are provided by the client
+				// the optional parameters are the username after which the page starts and the size of the page
 				// the response will be a string "success" or "error, reason"
-				response = this.server.list_users_request(address);
+
+				// parameters[0] is the last username of the previous page (empty for the first page)
+				// parameters[1] is the maximum number of users in the page
+				if (parameters.length > 2) {
+					// the request is not valid
+					response.addString(WinMessage.ERROR);
+					response.addString("Invalid request");
+					break;
+				}
+
+				int limit = Winsome_DB_Interface.SIMILAR_USERS_MAX_LIMIT;
+				if (parameters.length == 2) {
+					try {
+						limit = Integer.parseInt(parameters[1]);
+					} catch (NumberFormatException e) {
+						limit = -1;
+					}
+					if (limit <= 0) {
+						// the request is not valid
+						response.addString(WinMessage.ERROR);
+						response.addString("Invalid request");
+						break;
+					}
+				}
+
+				response = this.server.list_users_request(session, parameters.length > 0 ? parameters[0] : null, limit);
+				break;
+			// 2.18 recommend
+			case WinMessage.RECOMMEND_REQUEST:
+				// the request is a recommend request
+				// the optional parameter is the maximum number of users to recommend
+				// the response will be a string "success" or "error, reason"
+
+				// parameters[0] is the maximum number of users to recommend
+				int k = Winsome_DB_Interface.RECOMMEND_MAX_K;
+				if (parameters.length == 1) {
+					try {
+						k = Integer.parseInt(parameters[0]);
+					} catch (NumberFormatException e) {
+						k = -1;
+					}
+				}
+				if (parameters.length > 1 || k <= 0) {
+					// the request is not valid
+					response.addString(WinMessage.ERROR);
+					response.addString("Invalid request");
+					break;
+				}
+
+				response = this.server.recommend_request(session, k);
 				break;
 			// 2.4 follow
 			case WinMessage.FOLLOW_REQUEST:
@@ -158,7 +297,7 @@ public class WorkerTask implements Runnable {
 					break;
 				}
 
-				response = this.server.follow_request(parameters[0], address);
+				response = this.server.follow_request(parameters[0], session);
 				break;
 			// 2.5 unfollow
 			case WinMessage.UNFOLLOW_REQUEST:
@@ -175,7 +314,7 @@ public class WorkerTask implements Runnable {
 					break;
 				}
 
-				response = this.server.unfollow_request(parameters[0], address);
+				response = this.server.unfollow_request(parameters[0], session);
 				break;
 			// 2.6 post
 			case WinMessage.POST_REQUEST:
@@ -193,14 +332,23 @@ public class WorkerTask implements Runnable {
 					break;
 				}
 
-				response = this.server.create_post_request(address, parameters[0], parameters[1]);
+				response = this.server.create_post_request(session, parameters[0], parameters[1]);
 				break;
 			// 2.7 blog
 			case WinMessage.BLOG_REQUEST:
 				// the request is a blog request
+				// the optional parameters are the size of the page, max_id and since_id (see page_limit)
 				// the response will be a string "success" or "error, reason"
 
-				response = this.server.blog_request(address);
+				int blog_limit = page_limit(parameters);
+				if (blog_limit <= 0) {
+					// the request is not valid
+					response.addString(WinMessage.ERROR);
+					response.addString("Invalid request");
+					break;
+				}
+
+				response = this.server.blog_request(session, page_parameter(parameters, 2), page_parameter(parameters, 1), blog_limit);
 				break;
 			// 2.8 show_post
 			case WinMessage.SHOW_POST_REQUEST:
@@ -217,14 +365,23 @@ public class WorkerTask implements Runnable {
 					break;
 				}
 
-				response = this.server.show_post_request(address, parameters[0]);
+				response = this.server.show_post_request(session, parameters[0]);
 				break;
 			// 2.9 show_feed
 			case WinMessage.SHOW_FEED_REQUEST:
 				// the request is a show_feed request
+				// the optional parameters are the size of the page, max_id and since_id (see page_limit)
 				// the response will be a string "success" or "error, reason"
 
-				response = this.server.show_feed_request(address);
+				int feed_limit = page_limit(parameters);
+				if (feed_limit <= 0) {
+					// the request is not valid
+					response.addString(WinMessage.ERROR);
+					response.addString("Invalid request");
+					break;
+				}
+
+				response = this.server.show_feed_request(session, page_parameter(parameters, 2), page_parameter(parameters, 1), feed_limit);
 				break;
 			// 2.10 delete_post
 			case WinMessage.DELETE_REQUEST:
@@ -241,7 +398,7 @@ public class WorkerTask implements Runnable {
 					break;
 				}
 
-				response = this.server.delete_post_request(address, parameters[0]);
+				response = this.server.delete_post_request(session, parameters[0]);
 				break;
 			// 2.11 rewin_post
 			case WinMessage.REWIN_REQUEST:
@@ -258,7 +415,7 @@ public class WorkerTask implements Runnable {
 					break;
 				}
 
-				response = this.server.rewin_post_request(address, parameters[0]);
+				response = this.server.rewin_post_request(session, parameters[0]);
 				break;
 			// 2.12 comment
 			case WinMessage.COMMENT_REQUEST:
@@ -276,7 +433,7 @@ public class WorkerTask implements Runnable {
 					break;
 				}
 
-				response = this.server.comment_request(address, parameters[0], parameters[1]);
+				response = this.server.comment_request(session, parameters[0], parameters[1]);
 				break;
 			// 2.13 rate
 			case WinMessage.RATE_REQUEST:
@@ -294,28 +451,43 @@ public class WorkerTask implements Runnable {
 					break;
 				}
 
-				response = this.server.rate_request(address, parameters[0], parameters[1]);
+				response = this.server.rate_request(session, parameters[0], parameters[1]);
 				break;
 			// 2.14 list_following
 			case WinMessage.LIST_FOLLOWING_REQUEST:
 				// the request is a list_followings request
 				// the response will be a string "success" or "error, reason"
 
-				response = this.server.list_followings_request(address);
+				response = this.server.list_followings_request(session);
+				break;
+			// 2.19 list_followers
+			case WinMessage.LIST_FOLLOWERS_REQUEST:
+				// the request is a list_followers request
+				// the response will be a string "success" or "error, reason"
+
+				response = this.server.list_followers_request(session);
 				break;
 			// 2.15 wallet
 			case WinMessage.WALLET_REQUEST:
 				// the request is a wallet request
 				// the response will be a string "success" or "error, reason"
 
-				response = this.server.wallet_request(address);
+				response = this.server.wallet_request(session);
 				break;
 			// 2.16 wallet_btc
 			case WinMessage.WALLET_BTC_REQUEST:
 				// the request is a wallet_btc request
 				// the response will be a string "success" or "error, reason"
 
-				response = this.server.wallet_btc_request(address);
+				response = this.server.wallet_btc_request(session);
+				break;
+			// 2.17 batch
+			case WinMessage.BATCH_REQUEST:
+				// the request is a batch request
+				// the parameters are the sub-requests (each one is a whole message)
+				// the response will be "success" followed by the response of each sub-request
+
+				response = batch(parameters, session);
 				break;
 			default:
 				// the request is not valid
@@ -328,4 +500,117 @@ public class WorkerTask implements Runnable {
 		// 3. return the response
 		return response;
 	}
+
+	private static int page_limit(String[] parameters) {
+		/*
+		 * the size of the page asked by a BLOG or SHOW_FEED request, -1 if the parameters are not valid
+		 * the parameters are all optional:
+		 * parameters[0] is the maximum number of posts in the page (FEED_MAX_LIMIT if missing)
+		 * parameters[1] is max_id, the last post of the previous page (empty for the newest posts)
+		 * parameters[2] is since_id, the newest post already known (empty for no limit)
+		 */
+		if (parameters.length > 3)
+			return -1;
+		if (parameters.length == 0 || parameters[0].isEmpty())
+			return Winsome_DB_Interface.FEED_MAX_LIMIT;
+		try {
+			return Integer.parseInt(parameters[0]);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static String page_parameter(String[] parameters, int index) {
+		return index < parameters.length ? parameters[index] : null;
+	}
+
+	private WinMessage batch(String[] parameters, Session session) {
+		/*
+		 * This method serves the sub-requests of a batch request
+		 *
+		 * 1. decode the sub-requests (a sub-request that cannot be decoded or has a null field is not valid)
+		 * 2. serve each run of consecutive SHOW_POST, RATE or FOLLOW sub-requests with a single batch call
+		 *    (the database takes its locks once for the whole run)
+		 * 3. serve the other sub-requests one at a time
+		 * 4. return "success" followed by the response of each sub-request (in the same order)
+		 */
+		WinMessage response = new WinMessage();
+		if (parameters.length > MAX_BATCH_SIZE) {
+			response.addString(WinMessage.ERROR);
+			response.addString("Too many requests in the batch (max " + MAX_BATCH_SIZE + ")");
+			return response;
+		}
+
+		// 1. decode the sub-requests (a sub-request that cannot be decoded or has a null field is not valid)
+		WinMessage envelope = new WinMessage(parameters);
+		String[][] requests = new String[parameters.length][];
+		for (int i = 0; i < parameters.length; i++) {
+			try {
+				requests[i] = parameters[i] == null ? new String[0] : envelope.getMessage(i).getStringsArray();
+			} catch (IOException e) {
+				requests[i] = new String[0];
+			}
+			if (Arrays.asList(requests[i]).contains(null))
+				requests[i] = new String[0];
+		}
+
+		WinMessage[] results = new WinMessage[requests.length];
+		int i = 0;
+		while (i < requests.length) {
+			String type = batch_type(requests[i]);
+
+			// 2. serve each run of consecutive SHOW_POST, RATE or FOLLOW sub-requests with a single batch call
+			if (type != null) {
+				int end = i;
+				while (end < requests.length && type.equals(batch_type(requests[end])))
+					end++;
+				String[] first = new String[end - i];
+				String[] second = new String[end - i];
+				for (int j = i; j < end; j++) {
+					first[j - i] = requests[j][1];
+					second[j - i] = requests[j].length > 2 ? requests[j][2] : null;
+				}
+
+				WinMessage[] run;
+				if (type.equals(WinMessage.SHOW_POST_REQUEST))
+					run = this.server.show_posts_request(session, first);
+				else if (type.equals(WinMessage.RATE_REQUEST))
+					run = this.server.rate_posts_request(session, first, second);
+				else
+					run = this.server.follow_users_request(session, first);
+				System.arraycopy(run, 0, results, i, run.length);
+				i = end;
+				continue;
+			}
+
+			// 3. serve the other sub-requests one at a time
+			if (requests[i].length == 0 || WinMessage.BATCH_REQUEST.equals(requests[i][0])) {
+				results[i] = new WinMessage();
+				results[i].addString(WinMessage.ERROR);
+				results[i].addString("Invalid request");
+			} else {
+				results[i] = process_message(requests[i], session);
+			}
+			i++;
+		}
+
+		// 4. return "success" followed by the response of each sub-request (in the same order)
+		response.addString(WinMessage.SUCCESS);
+		for (WinMessage result : results)
+			response.addMessage(result);
+		return response;
+	}
+
+	private static String batch_type(String[] request) {
+		/*
+		 * the type of the sub-request if it can be served with a batch call, null otherwise
+		 */
+		if (request.length == 2 && WinMessage.SHOW_POST_REQUEST.equals(request[0]))
+			return WinMessage.SHOW_POST_REQUEST;
+		if (request.length == 3 && WinMessage.RATE_REQUEST.equals(request[0]))
+			return WinMessage.RATE_REQUEST;
+		if (request.length == 2 && WinMessage.FOLLOW_REQUEST.equals(request[0]))
+			return WinMessage.FOLLOW_REQUEST;
+		return null;
+	}
 }